@@ -0,0 +1,147 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+
+import java.util.List;
+
+/**
+ * An analytic query on the {@link ColumnarProjection}, built from the query parameters:
+ * <ul>
+ * <li>`groupBy`: comma-separated dimensions among `symbol`, `action` and one of the time buckets `minute`, `hour`
+ * and `day`, no grouping by default</li>
+ * <li>`symbol`, `action`: only the operations on the given symbol, of the given action (`BUY` or `SELL`)</li>
+ * <li>`from`, `to`: only the operations executed in this time range (epoch ms, both inclusive)</li>
+ * </ul>
+ * Each group reports the number of operations, the volume, the notional, the min and max price and the
+ * volume-weighted average price.
+ */
+class AnalyticQuery {
+
+    private static final int SYMBOL_BITS = 24;
+    private static final int ACTION_SHIFT = SYMBOL_BITS;
+    private static final int TIME_SHIFT = SYMBOL_BITS + 1;
+
+    private String symbol;
+    private String action;
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private boolean bySymbol;
+    private boolean byAction;
+    // The time bucket, 0 if not grouped by time
+    private long bucket;
+
+    /**
+     * Creates the query from the parameters of the given request.
+     *
+     * @param request the HTTP request
+     * @return the query
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    static AnalyticQuery fromRequest(HttpServerRequest request) {
+        AnalyticQuery query = new AnalyticQuery();
+        String symbol = request.getParam("symbol");
+        query.symbol = symbol == null || symbol.isEmpty() ? null : symbol;
+        String action = request.getParam("action");
+        if (action != null && !action.isEmpty()) {
+            if (!action.equals("BUY") && !action.equals("SELL")) {
+                throw new IllegalArgumentException("Invalid value for 'action': " + action);
+            }
+            query.action = action;
+        }
+        query.from = parseLong(request, "from", Long.MIN_VALUE);
+        query.to = parseLong(request, "to", Long.MAX_VALUE);
+        if (query.from > query.to) {
+            throw new IllegalArgumentException("'from' is after 'to': " + query.from + " > " + query.to);
+        }
+        String groupBy = request.getParam("groupBy");
+        if (groupBy != null && !groupBy.isEmpty()) {
+            for (String dimension : groupBy.split(",")) {
+                switch (dimension.trim()) {
+                    case "symbol":
+                        query.bySymbol = true;
+                        break;
+                    case "action":
+                        query.byAction = true;
+                        break;
+                    case "minute":
+                        query.bucket = 60_000L;
+                        break;
+                    case "hour":
+                        query.bucket = 3_600_000L;
+                        break;
+                    case "day":
+                        query.bucket = 86_400_000L;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid dimension in 'groupBy': " + dimension);
+                }
+            }
+        }
+        return query;
+    }
+
+    String symbol() {
+        return symbol;
+    }
+
+    String action() {
+        return action;
+    }
+
+    long from() {
+        return from;
+    }
+
+    long to() {
+        return to;
+    }
+
+    /**
+     * @param ts     the operation timestamp
+     * @param symbol the operation symbol code
+     * @param action the operation action code
+     * @return the key of the group of the operation
+     */
+    long key(long ts, int symbol, int action) {
+        long key = bySymbol ? symbol : 0;
+        if (byAction) {
+            key |= (long) action << ACTION_SHIFT;
+        }
+        if (bucket > 0) {
+            key |= Math.floorDiv(ts, bucket) << TIME_SHIFT;
+        }
+        return key;
+    }
+
+    /**
+     * @param key     a group key returned by {@link #key(long, int, int)}
+     * @param symbols the symbols, indexed by code
+     * @return the dimensions of the group
+     */
+    JsonObject describe(long key, List<String> symbols) {
+        JsonObject group = new JsonObject();
+        if (bySymbol) {
+            group.put("symbol", symbols.get((int) (key & ((1 << SYMBOL_BITS) - 1))));
+        }
+        if (byAction) {
+            group.put("action", ((key >> ACTION_SHIFT) & 1) == 0 ? "BUY" : "SELL");
+        }
+        if (bucket > 0) {
+            group.put("time", (key >> TIME_SHIFT) * bucket);
+        }
+        return group;
+    }
+
+    private static long parseLong(HttpServerRequest request, String name, long defaultValue) {
+        String value = request.getParam(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for '" + name + "': " + value);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import rx.Single;
+
+import java.util.List;
+
+/**
+ * The storage of the audit operations.
+ * <p>
+ * Operations are appended as the insertion parameters returned by {@link Operations#toParams(JsonObject)} and read
+ * back as rows ordered as {@link Operations#COLUMNS}, the most recent first. The implementation is selected with the
+ * `storage` configuration entry: `jdbc` (default) or `log`.
+ */
+interface AuditStore {
+
+    /**
+     * Creates the store configured in the given configuration.
+     *
+     * @param vertx  the vert.x instance
+     * @param config the verticle configuration
+     * @return the store
+     */
+    static AuditStore create(Vertx vertx, JsonObject config) {
+        String storage = config.getString("storage", "jdbc");
+        switch (storage) {
+            case "jdbc":
+                return new JdbcAuditStore(vertx, config);
+            case "log":
+                return new SegmentedLogStore(vertx, config);
+            default:
+                throw new IllegalArgumentException("Unknown audit storage: " + storage);
+        }
+    }
+
+    /**
+     * Opens the store, creating it if needed.
+     *
+     * @param drop whether the existing operations must be deleted
+     * @return a single completed when the store is ready
+     */
+    Single<Void> open(boolean drop);
+
+    /**
+     * Appends an operation. The write may be deferred, but the operations are stored in the append order.
+     *
+     * @param params the insertion parameters
+     * @return the id assigned to the operation, {@code -1} if it cannot be stored
+     */
+    long append(JsonArray params);
+
+    /**
+     * @return the number of appended operations not written yet
+     */
+    int backlog();
+
+    /**
+     * Sets the handler called when deferred writes complete, i.e. when the {@link #backlog()} decreases.
+     *
+     * @param handler the handler
+     */
+    void drainHandler(Handler<Void> handler);
+
+    /**
+     * @return the id of the last appended operation, {@code -1} if none
+     */
+    long lastId();
+
+    /**
+     * @param query the query
+     * @return the matching rows, the most recent first
+     */
+    Single<List<JsonArray>> query(OperationQuery query);
+
+    /**
+     * @param query the query
+     * @return a stream of the matching rows, the most recent first
+     */
+    Single<RowStream> stream(OperationQuery query);
+
+    /**
+     * @param name the checkpoint name
+     * @return the last state saved under this name, {@code null} if none
+     */
+    Single<JsonObject> loadCheckpoint(String name);
+
+    /**
+     * Saves a state, replacing the one previously saved under the same name.
+     *
+     * @param name  the checkpoint name
+     * @param state the state
+     * @return a single completed when the state is saved
+     */
+    Single<Void> saveCheckpoint(String name, JsonObject state);
+
+    /**
+     * @return the write metrics of the store
+     */
+    JsonObject metrics();
+
+    /**
+     * Writes the pending operations and closes the store.
+     *
+     * @return a single completed when the store is closed
+     */
+    Single<Void> close();
+}
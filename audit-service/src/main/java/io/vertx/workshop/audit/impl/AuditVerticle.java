@@ -3,30 +3,78 @@ package io.vertx.workshop.audit.impl;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.sql.UpdateResult;
+import io.vertx.rxjava.core.buffer.Buffer;
 import io.vertx.rxjava.core.eventbus.MessageConsumer;
 import io.vertx.rxjava.core.http.HttpServer;
-import io.vertx.rxjava.ext.jdbc.JDBCClient;
-import io.vertx.rxjava.ext.sql.SQLConnection;
+import io.vertx.rxjava.core.http.HttpServerResponse;
+import io.vertx.rxjava.core.shareddata.Lock;
+import io.vertx.rxjava.ext.web.Router;
 import io.vertx.rxjava.ext.web.RoutingContext;
 import io.vertx.rxjava.servicediscovery.types.MessageSource;
+import io.vertx.servicediscovery.Record;
 import io.vertx.workshop.common.RxMicroServiceVerticle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import rx.Single;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * A verticle storing operations in a database (hsql) and providing access to the operations.
+ * A verticle storing operations and providing access to the operations.
+ * <p>
+ * Operations are stored in an {@link AuditStore}: a database (hsql) by default, or an embedded segmented log when the
+ * `storage` configuration entry is set to `log`. The REST endpoint filters them by symbol and time range.
  */
 public class AuditVerticle extends RxMicroServiceVerticle {
 
-    private static final String DROP_STATEMENT = "DROP TABLE IF EXISTS AUDIT";
-    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS AUDIT (id INTEGER IDENTITY, operation varchar(250))";
-    private static final String INSERT_STATEMENT = "INSERT INTO AUDIT (operation) VALUES ?";
-    private static final String SELECT_STATEMENT = "SELECT * FROM AUDIT ORDER BY ID DESC LIMIT 10";
+    /**
+     * The address on which the audit metrics are periodically sent.
+     */
+    private static final String METRICS_ADDRESS = "audit.metrics";
+
+    /**
+     * The name of the aggregates checkpoint, suffixed by the partition in partitioned mode.
+     */
+    private static final String AGGREGATES_CHECKPOINT = "aggregates";
+
+    /**
+     * The name of the portfolio checkpoints, suffixed by the partition in partitioned mode.
+     */
+    private static final String PORTFOLIO_CHECKPOINT = "portfolio";
+
+    /**
+     * The time to wait for the lock of a partition before trying the next one, in ms.
+     */
+    private static final long PARTITION_LOCK_TIMEOUT = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(AuditVerticle.class);
 
-    private JDBCClient jdbc;
+    private AuditStore store;
+    private RecentOperations recent;
+    private OperationAggregates aggregates;
+    private SpillFile overflow;
+    private IngestionWindow window;
+    private ColumnarProjection projection;
+    private PortfolioHistory history;
+    private ForkJoinPool analyticsPool;
+    private JsonObject lastScan = new JsonObject();
+    private final SequenceTracker sequences = new SequenceTracker();
+    private long checkpointedId = -1;
+    // The operations the store failed to append
+    private long unstored;
+
+    // The partition of the events consumed by this instance, -1 if all the events are consumed
+    private int partition = -1;
+    private int partitions;
+    private String eventsAddress;
+    // The partitions consumed (or being claimed) by this instance, the adopted ones included, and their locks
+    private final Set<Integer> consumed = new HashSet<>();
+    private final List<Lock> partitionLocks = new ArrayList<>();
 
     /**
      * Starts the verticle asynchronously. The the initialization is completed, it calls
@@ -39,22 +87,51 @@ public class AuditVerticle extends RxMicroServiceVerticle {
     public void start(Future<Void> future) {
         super.start();
 
-        // creates the jdbc client.
-        jdbc = JDBCClient.createNonShared(vertx, config());
+        recent = new RecentOperations(config().getInteger("recent.size", 100));
+        aggregates = createAggregates();
+        projection = new ColumnarProjection(config().getLong("analytics.partition", 3600000L));
+        analyticsPool = new ForkJoinPool(config().getInteger("analytics.parallelism",
+                Runtime.getRuntime().availableProcessors()));
+        String overflowFile = config().getString("overflow.file");
+        overflow = overflowFile == null ? null : new SpillFile(vertx, new File(overflowFile));
 
-        Single<Void> databaseReady = initializeDatabase(config().getBoolean("drop", false));
+        // In partitioned mode, the store is opened once the partition is known
+        Single<MessageConsumer<JsonObject>> messageConsumerReady = config().getBoolean("partitioned", false)
+                ? claimAPartition() : retrieveThePortfolioMessageSource();
+        Single<MessageConsumer<JsonObject>> databaseReady = messageConsumerReady
+                .flatMap(consumer -> openTheStore().map(v -> consumer));
         Single<Void> httpEndpointReady = configureTheHTTPServer()
                 .flatMap(server -> rxPublishHttpEndpoint("audit", "localhost", server.actualPort()));
-        Single<MessageConsumer<JsonObject>> messageConsumerReady = retrieveThePortfolioMessageSource();
         Single<MessageConsumer<JsonObject>> readySingle = Single.zip(
                 databaseReady,
                 httpEndpointReady,
-                messageConsumerReady,
-                (db, http, consumer) -> consumer);
+                (consumer, http) -> consumer);
 
         readySingle.doOnSuccess(consumer -> {
-            // on success we set the handler that will store message in the database
-            consumer.handler(message -> storeInDatabase(message.body()));
+            // on success we start storing the messages, pausing when the store falls behind
+            int high = config().getInteger("backpressure.high", 1000);
+            window = new IngestionWindow(store, consumer, overflow, high,
+                    config().getInteger("backpressure.low", high / 2), sequences::accept, this::storeOperation);
+            window.start();
+            // and periodically report the write metrics
+            vertx.setPeriodic(config().getLong("metrics.interval", 5000L),
+                    l -> vertx.eventBus().publish(METRICS_ADDRESS, store.metrics().put("unstored", unstored)
+                            .put("ingestion", window.metrics())
+                            .put("analytics", lastScan.copy().put("rows", projection.size()))
+                            .put("sequence", sequences.metrics().put("partition", partition)
+                                    .put("partitions", new JsonArray(new ArrayList<>(consumed))))));
+            // and the aggregates checkpoint
+            vertx.setPeriodic(config().getLong("aggregates.checkpoint.interval", 10000L),
+                    l -> checkpointAggregates().subscribe(v -> {
+                    }, err -> log.error("Failed to checkpoint the aggregates", err)));
+            // and drop the operations leaving the analytic retention
+            vertx.setPeriodic(config().getLong("analytics.partition", 3600000L),
+                    l -> projection.evict(System.currentTimeMillis() - analyticsRetention()));
+            if (partition >= 0) {
+                // and consume the partitions left without instance
+                vertx.setPeriodic(config().getLong("partition.adopt.interval", 10000L),
+                        l -> adoptOrphanedPartitions());
+            }
         }).subscribe(consumer -> {
             // complete the verticle start with a success
             future.complete();
@@ -66,98 +143,395 @@ public class AuditVerticle extends RxMicroServiceVerticle {
 
     @Override
     public void stop(Future<Void> future) throws Exception {
-        jdbc.close();
-        super.stop(future);
+        if (store == null) {
+            // The start failed before the store was created
+            release();
+            close(future);
+            return;
+        }
+        // Checkpoint the aggregates and flush the pending operations before closing the store. The portfolio history
+        // is not created when the store failed to open.
+        checkpointAggregates()
+                .doOnError(err -> log.error("Failed to checkpoint the aggregates", err))
+                .onErrorReturn(err -> null)
+                .flatMap(v -> history == null ? Single.<Void>just(null) : history.checkpoint())
+                .doOnError(err -> log.error("Failed to checkpoint the portfolio", err))
+                .onErrorReturn(err -> null)
+                .flatMap(v -> overflow == null ? Single.<Void>just(null) : overflow.close())
+                .flatMap(v -> store.close())
+                .doAfterTerminate(this::release)
+                .subscribe(v -> this.close(future), err -> {
+            log.error("Failed to flush the pending operations", err);
+            this.close(future);
+        });
+    }
+
+    private void release() {
+        if (analyticsPool != null) {
+            analyticsPool.shutdown();
+        }
+        partitionLocks.forEach(Lock::release);
+    }
+
+    private void close(Future<Void> future) {
+        try {
+            super.stop(future);
+        } catch (Exception e) {
+            future.tryFail(e);
+        }
     }
 
     private void retrieveOperations(RoutingContext context) {
         // We retrieve the operation using the following process:
-        // 1. Get the connection
-        // 2. When done, execute the query
-        // 3. When done, iterate over the result to build a list
-        // 4. close the connection
-        // 5. return this list in the response
+        // 1. Build the query from the request parameters
+        // 2. Execute the query on the store
+        // 3. When done, build the operations from the columns
+        // 4. return this list in the response
+        OperationQuery query;
+        try {
+            query = OperationQuery.fromRequest(context.request());
+        } catch (IllegalArgumentException e) {
+            context.response().setStatusCode(400).end(e.getMessage());
+            return;
+        }
 
-        //TODO
-        // ----
+        if (query.onlyRecent(recent.capacity())) {
+            // Served from memory, the default page is already encoded
+            HttpServerResponse response = context.response()
+                    .putHeader("content-type", "application/json")
+                    .setStatusCode(200);
+            Long nextBefore = recent.nextBefore(query.limit());
+            if (nextBefore != null) {
+                response.putHeader("X-Next-Before", String.valueOf(nextBefore));
+            }
+            response.end(query.limit() == OperationQuery.DEFAULT_LIMIT ? recent.encoded()
+                    : Buffer.buffer(recent.latest(query.limit()).encode()));
+            return;
+        }
 
-        // ----
+        if (query.format().streamed()) {
+            streamOperations(context, query);
+            return;
+        }
+
+        Single<JsonArray> result = store.query(query).map(rows -> {
+            JsonArray operations = new JsonArray();
+            rows.forEach(row -> operations.add(Operations.fromRow(row)));
+            return operations;
+        });
+
+        result.subscribe(operations -> {
+            HttpServerResponse response = context.response()
+                    .putHeader("content-type", "application/json")
+                    .setStatusCode(200);
+            if (!operations.isEmpty()) {
+                // The cursor of the next page: /?before=<id>
+                response.putHeader("X-Next-Before",
+                        String.valueOf(operations.getJsonObject(operations.size() - 1).getLong("id")));
+            }
+            response.end(operations.encode());
+        }, context::fail);
+    }
+
+    /**
+     * Streams the operations matching the query in the response, as NDJSON or CSV. The rows are written as they are
+     * read from the store: the row stream is paused while the response write queue is full, so the memory used
+     * does not depend on the number of exported rows.
+     */
+    private void streamOperations(RoutingContext context, OperationQuery query) {
+        HttpServerResponse response = context.response()
+                .putHeader("content-type", query.format().contentType)
+                .setChunked(true);
+
+        store.stream(query).subscribe(stream -> {
+            boolean[] ended = {false};
+            // The client went away before the end, release the stream
+            response.closeHandler(v -> {
+                if (!ended[0]) {
+                    ended[0] = true;
+                    stream.close();
+                }
+            });
+            response.drainHandler(v -> stream.resume());
+            if (query.format() == OperationQuery.Format.CSV) {
+                response.write(Operations.CSV_HEADER);
+            }
+            stream
+                    .exceptionHandler(err -> {
+                        log.error("Failed to stream the operations", err);
+                        ended[0] = true;
+                        response.close();
+                    })
+                    .endHandler(v -> {
+                        ended[0] = true;
+                        response.end();
+                    })
+                    .handler(row -> {
+                        response.write(query.format() == OperationQuery.Format.CSV
+                                ? Operations.toCsv(row)
+                                : Operations.fromRow(row).encode() + "\n");
+                        if (response.writeQueueFull()) {
+                            stream.pause();
+                        }
+                    });
+        }, context::fail);
+    }
+
+    /**
+     * Returns the aggregates of a symbol (`/aggregates/:symbol`) or of all the symbols (`/aggregates`) over the
+     * `window` (ms) ending now, the full span of the buckets by default. Served from memory.
+     */
+    private void retrieveAggregates(RoutingContext context) {
+        long window = aggregates.span();
+        String param = context.request().getParam("window");
+        if (param != null && !param.isEmpty()) {
+            try {
+                window = Long.parseLong(param);
+            } catch (NumberFormatException e) {
+                window = -1;
+            }
+            if (window <= 0 || window > aggregates.span()) {
+                context.response().setStatusCode(400)
+                        .end("The window must be in [1, " + aggregates.span() + "] ms");
+                return;
+            }
+        }
+        String symbol = context.request().getParam("symbol");
+        long now = System.currentTimeMillis();
+        context.response()
+                .putHeader("content-type", "application/json")
+                .setStatusCode(200)
+                .end((symbol == null ? aggregates.all(window, now) : aggregates.get(symbol, window, now)).encode());
+    }
+
+    /**
+     * Runs an {@link AnalyticQuery} on the columnar projection of the operations. The scan runs in parallel on the
+     * analytics fork-join pool, the event loop only waits for the result. The response reports the scan statistics:
+     * scanned operations, number of tasks, elapsed time (ms) and throughput (operations per second).
+     */
+    private void analyze(RoutingContext context) {
+        AnalyticQuery query;
+        try {
+            query = AnalyticQuery.fromRequest(context.request());
+        } catch (IllegalArgumentException e) {
+            context.response().setStatusCode(400).end(e.getMessage());
+            return;
+        }
+        vertx.<JsonObject>rxExecuteBlocking(future -> future.complete(projection.execute(query, analyticsPool)), false)
+                .subscribe(result -> {
+                    lastScan = result.getJsonObject("stats");
+                    context.response()
+                            .putHeader("content-type", "application/json")
+                            .setStatusCode(200)
+                            .end(result.encode());
+                }, context::fail);
+    }
+
+    /**
+     * Returns the portfolio (cash and owned shares) at the time given by the `at` query parameter (epoch ms), now by
+     * default. It is rebuilt from the nearest checkpoint, see {@link PortfolioHistory}.
+     */
+    private void retrievePortfolio(RoutingContext context) {
+        long at = System.currentTimeMillis();
+        String param = context.request().getParam("at");
+        if (param != null && !param.isEmpty()) {
+            try {
+                at = Long.parseLong(param);
+            } catch (NumberFormatException e) {
+                context.response().setStatusCode(400).end("Invalid value for 'at': " + param);
+                return;
+            }
+        }
+        history.at(at).subscribe(portfolio -> context.response()
+                .putHeader("content-type", "application/json")
+                .setStatusCode(200)
+                .end(portfolio.encode()), context::fail);
     }
 
     private Single<HttpServer> configureTheHTTPServer() {
+        // Use a Vert.x Web router for this REST API.
+        Router router = Router.router(vertx);
+        router.get("/").handler(this::retrieveOperations);
+        router.get("/aggregates").handler(this::retrieveAggregates);
+        router.get("/aggregates/:symbol").handler(this::retrieveAggregates);
+        router.get("/analytics").handler(this::analyze);
+        router.get("/portfolio").handler(this::retrievePortfolio);
+        HttpServer server = vertx.createHttpServer().requestHandler(router::accept);
+        return server.rxListen(config().getInteger("http.port", 0));
+    }
 
-        //TODO
-        //----
-        Single<HttpServer> httpServerSingle = Single.error(new UnsupportedOperationException("not yet implemented"));
-        //----
+    /**
+     * Claims one of the partitions of the portfolio events, holding a cluster-wide lock on it while the verticle is
+     * deployed. Each instance then stores a disjoint subset of the events.
+     */
+    private Single<MessageConsumer<JsonObject>> claimAPartition() {
+        return discovery.rxGetRecord(new JsonObject().put("name", "portfolio-events")).flatMap(record -> {
+            partitions = record == null ? 0 : record.getMetadata().getInteger("partitions", 0);
+            if (partitions == 0) {
+                return Single.error(new IllegalStateException("The portfolio events are not partitioned"));
+            }
+            eventsAddress = record.getLocation().getString(Record.ENDPOINT);
+            return claim(0);
+        });
+    }
 
-        return httpServerSingle;
+    private Single<MessageConsumer<JsonObject>> claim(int candidate) {
+        return lockPartition(candidate)
+                .map(consumer -> {
+                    partition = candidate;
+                    return consumer;
+                })
+                .onErrorResumeNext(err -> candidate + 1 < partitions ? claim(candidate + 1)
+                        : Single.error(new IllegalStateException(
+                                "All the " + partitions + " partitions of the portfolio events are claimed")));
     }
 
-    private Single<MessageConsumer<JsonObject>> retrieveThePortfolioMessageSource() {
-        return MessageSource.rxGetConsumer(discovery, new JsonObject().put("name", "portfolio-events"));
+    /**
+     * Adopts the partitions whose lock is free: there are fewer instances than partitions, or an instance stopped.
+     * The events of an adopted partition are stored with the ids of this instance, like the ones of its partition.
+     */
+    private void adoptOrphanedPartitions() {
+        for (int candidate = 0; candidate < partitions; candidate++) {
+            if (!consumed.contains(candidate)) {
+                int orphan = candidate;
+                lockPartition(orphan).subscribe(consumer -> {
+                    log.warn("The partition {} of {} has no instance, adopted by the instance of the partition {}",
+                            orphan, partitions, partition);
+                    window.consume(consumer);
+                }, err -> {
+                    // Consumed by another instance
+                });
+            }
+        }
     }
 
-    private void storeInDatabase(JsonObject operation) {
-        // Storing in the database is also a multi step process,
-        // 1. need to retrieve a connection
-        // 2. execute the insertion statement
-        // 3. close the connection
+    private Single<MessageConsumer<JsonObject>> lockPartition(int candidate) {
+        String partitionAddress = eventsAddress + ".p" + candidate;
+        consumed.add(candidate);
+        return vertx.sharedData().rxGetLockWithTimeout("audit." + partitionAddress, PARTITION_LOCK_TIMEOUT)
+                .doOnError(err -> consumed.remove(candidate))
+                .map(lock -> {
+                    partitionLocks.add(lock);
+                    log.info("Consuming the partition {} of {}, address[{}]", candidate, partitions, partitionAddress);
+                    return vertx.eventBus().<JsonObject>consumer(partitionAddress);
+                });
+    }
+
+    private Single<Void> openTheStore() {
+        // creates the store (jdbc or log). The instances consuming the partitions may share the database, each one
+        // uses its own ids, and its own log directory.
+        store = AuditStore.create(vertx, partition < 0 ? config() : config().copy()
+                .put("id.stride", partitions)
+                .put("id.offset", partition)
+                .put("log.directory", config().getString("log.directory", "audit-log") + ".p" + partition));
+        return store.open(config().getBoolean("drop", false))
+                .flatMap(v -> loadRecentOperations())
+                .flatMap(v -> loadAggregates())
+                .flatMap(v -> loadProjection())
+                .flatMap(v -> {
+                    history = new PortfolioHistory(store, partition < 0 ? PORTFOLIO_CHECKPOINT
+                            : PORTFOLIO_CHECKPOINT + ".p" + partition, config().getDouble("money", 10000.00),
+                            config().getInteger("portfolio.checkpoint.interval", 1000), this::owns);
+                    return history.open();
+                })
+                .flatMap(v -> overflow == null ? Single.just(null) : overflow.open().map(size -> null));
+    }
 
-        // Step 1 get the connection
-        Single<SQLConnection> connectionRetrieved = jdbc.rxGetConnection();
+    private Single<MessageConsumer<JsonObject>> retrieveThePortfolioMessageSource() {
+        return MessageSource.rxGetConsumer(discovery, new JsonObject().put("name", "portfolio-events"));
+    }
 
-        // Step 2, when the connection is retrieved (this may have failed), do the insertion (upon success)
-        Single<UpdateResult> update = connectionRetrieved.flatMap(connection -> connection
-                .rxUpdateWithParams(INSERT_STATEMENT, new JsonArray().add(operation.encode()))
+    private void storeOperation(JsonArray params) {
+        long id = store.append(params);
+        if (id < 0) {
+            // Not stored: kept out of the views, which must agree with the store
+            unstored++;
+            return;
+        }
+        recent.add(Operations.fromParams(id, params));
+        aggregates.add(id, params);
+        projection.add(params);
+        history.add(id, params);
+    }
 
-                // Step 3, when the insertion is done, close the connection.
-                .doAfterTerminate(connection::close));
+    private Single<Void> loadRecentOperations() {
+        // Fill the ring with the most recent operations already stored, the oldest first
+        return store.query(OperationQuery.latest(recent.capacity())).map(rows -> {
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                recent.add(Operations.fromRow(rows.get(i)));
+            }
+            return null;
+        });
+    }
 
-        update.subscribe(result -> {
-            // Ok
-        }, err -> {
-            System.err.println("Failed to insert operation in database: " + err);
+    private Single<Void> loadAggregates() {
+        // Restore the last checkpoint, unless it is ahead of the store (operations lost in a crash), and replay the
+        // operations stored after it
+        return store.loadCheckpoint(aggregatesCheckpoint()).flatMap(checkpoint -> {
+            if (checkpoint == null || !aggregates.restore(checkpoint) || aggregates.lastId() > store.lastId()) {
+                aggregates = createAggregates();
+            }
+            checkpointedId = aggregates.lastId();
+            long from = System.currentTimeMillis() - aggregates.span();
+            return store.query(OperationQuery.since(aggregates.lastId(), from));
+        }).map(rows -> {
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                long id = rows.get(i).getLong(0);
+                // Skip the operations of the other partitions when the database is shared
+                if (owns(id)) {
+                    aggregates.add(id, Operations.paramsFromRow(rows.get(i)));
+                }
+            }
+            log.info("Aggregates restored, {} operation(s) replayed", rows.size());
+            return null;
         });
     }
 
-    private Single<Void> initializeDatabase(boolean drop) {
-
-        // The database initialization is a multi-step process:
-        // 1. Retrieve the connection
-        // 2. Drop the table is exist
-        // 3. Create the table
-        // 4. Close the connection (in any case)
-        // To handle such a process, we are going to create an RxJava Single and compose it with the RxJava flatMap operation:
-        // retrieve the connection -> drop table -> create table -> close the connection
-        // For this we use `Func1<X, Single<R>>`that takes a parameter `X` and return a `Single<R>` object.
-
-        // This is the starting point of our Rx operations
-        // This single will be completed when the connection with the database is established.
-        // We are going to use this single as a reference on the connection to close it.
-        Single<SQLConnection> connectionRetrieved = jdbc.rxGetConnection();
-
-        // Ok, now it's time to chain all these actions:
-        Single<List<Integer>> resultSingle = connectionRetrieved
-                .flatMap(conn -> {
-                    // When the connection is retrieved
-
-                    // Prepare the batch
-                    List<String> batch = new ArrayList<>();
-                    if (drop) {
-                        // When the table is dropped, we recreate it
-                        batch.add(DROP_STATEMENT);
+    private Single<Void> loadProjection() {
+        // Stream the operations of the retention period, the memory used does not depend on their number
+        OperationQuery query = OperationQuery.since(-1, System.currentTimeMillis() - analyticsRetention());
+        return store.stream(query).flatMap(stream -> Single.<Void>create(subscriber -> stream
+                .exceptionHandler(subscriber::onError)
+                .endHandler(v -> {
+                    log.info("Analytic projection loaded, {} operation(s)", projection.size());
+                    subscriber.onSuccess(null);
+                })
+                .handler(row -> {
+                    if (owns(row.getLong(0))) {
+                        projection.add(Operations.paramsFromRow(row));
                     }
-                    // Just create the table
-                    batch.add(CREATE_TABLE_STATEMENT);
+                })));
+    }
 
-                    // We compose with a statement batch
-                    Single<List<Integer>> next = conn.rxBatch(batch);
+    /**
+     * @param id an operation id
+     * @return whether the operation was stored by this instance, when the database is shared by the partitions
+     */
+    private boolean owns(long id) {
+        return partition < 0 || Math.floorMod(id, (long) partitions) == partition;
+    }
 
-                    // Whatever the result, if the connection has been retrieved, close it
-                    return next.doAfterTerminate(conn::close);
-                });
+    private long analyticsRetention() {
+        return config().getLong("analytics.retention", 7 * 24 * 3600000L);
+    }
+
+    private Single<Void> checkpointAggregates() {
+        if (aggregates.lastId() == checkpointedId) {
+            return Single.just(null);
+        }
+        long id = aggregates.lastId();
+        return store.saveCheckpoint(aggregatesCheckpoint(), aggregates.toJson()).map(v -> {
+            checkpointedId = id;
+            return null;
+        });
+    }
+
+    private String aggregatesCheckpoint() {
+        return partition < 0 ? AGGREGATES_CHECKPOINT : AGGREGATES_CHECKPOINT + ".p" + partition;
+    }
 
-        return resultSingle.map(list -> null);
+    private OperationAggregates createAggregates() {
+        return new OperationAggregates(config().getLong("aggregates.bucket", 60000L),
+                config().getInteger("aggregates.buckets", 60));
     }
 }
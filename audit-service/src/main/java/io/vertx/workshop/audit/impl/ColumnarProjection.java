@@ -0,0 +1,285 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An in-memory columnar copy of the audit operations, for the analytic queries.
+ * <p>
+ * Operations are stored in primitive column arrays (timestamp, symbol code, action, amount, price), partitioned by
+ * time. A query scans the partitions overlapping its time range in parallel on a fork-join pool, large partitions being
+ * split in chunks, and merges the per-task group-by maps.
+ * <p>
+ * Operations are added from the verticle event loop only, scans can run concurrently: a partition publishes its rows
+ * through a volatile size, written after the row.
+ */
+class ColumnarProjection {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final byte BUY = 0;
+    private static final byte SELL = 1;
+
+    private final long partitionSize;
+    private final ConcurrentNavigableMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final List<String> symbols = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param partitionSize the time span of a partition, in ms
+     */
+    ColumnarProjection(long partitionSize) {
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Adds an operation.
+     *
+     * @param params the insertion parameters, as returned by {@link Operations#toParams(JsonObject)}
+     */
+    void add(JsonArray params) {
+        String symbol = params.getString(1);
+        Integer amount = params.getInteger(3);
+        Double price = params.getDouble(4);
+        long ts = params.getLong(6);
+        if (symbol == null || amount == null || price == null) {
+            return;
+        }
+        Integer code = codes.get(symbol);
+        if (code == null) {
+            code = symbols.size();
+            symbols.add(symbol);
+            codes.put(symbol, code);
+        }
+        long start = Math.floorDiv(ts, partitionSize) * partitionSize;
+        partitions.computeIfAbsent(start, k -> new Partition())
+                .add(ts, code, "SELL".equals(params.getString(0)) ? SELL : BUY, amount, price);
+    }
+
+    /**
+     * Drops the partitions ending before the given time.
+     *
+     * @param before the time
+     */
+    void evict(long before) {
+        partitions.headMap(before - partitionSize, true).clear();
+    }
+
+    /**
+     * @return the number of stored operations
+     */
+    long size() {
+        long size = 0;
+        for (Partition partition : partitions.values()) {
+            size += partition.size;
+        }
+        return size;
+    }
+
+    /**
+     * Runs a query. This method is blocking, it must be called from a worker thread.
+     *
+     * @param query the query
+     * @param pool  the pool running the scans
+     * @return the result rows and the scan statistics
+     */
+    JsonObject execute(AnalyticQuery query, ForkJoinPool pool) {
+        long begin = System.nanoTime();
+        Integer symbolCode = null;
+        if (query.symbol() != null) {
+            symbolCode = codes.get(query.symbol());
+            if (symbolCode == null) {
+                symbolCode = -1;
+            }
+        }
+
+        // One task per chunk of the partitions overlapping the range
+        List<ScanTask> tasks = new ArrayList<>();
+        long scanned = 0;
+        long first = Math.max(query.from(), Long.MIN_VALUE + partitionSize) - partitionSize;
+        // An empty range, subMap rejecting a first key after the last one
+        Collection<Partition> overlapping = first > query.to() ? Collections.emptyList()
+                : partitions.subMap(first, false, query.to(), true).values();
+        for (Partition partition : overlapping) {
+            int size = partition.size;
+            Columns columns = partition.columns;
+            for (int start = 0; start < size; start += CHUNK) {
+                tasks.add(new ScanTask(query, symbolCode, columns, start, Math.min(size, start + CHUNK)));
+            }
+            scanned += size;
+        }
+        Map<Long, Aggregate> groups = pool.invoke(new MergeTask(tasks));
+
+        JsonArray rows = new JsonArray();
+        groups.forEach((key, aggregate) -> rows.add(query.describe(key, symbols).mergeIn(aggregate.toJson())));
+        long elapsed = System.nanoTime() - begin;
+        return new JsonObject()
+                .put("rows", rows)
+                .put("stats", new JsonObject()
+                        .put("scanned", scanned)
+                        .put("tasks", tasks.size())
+                        .put("elapsed", elapsed / 1_000_000.0)
+                        .put("throughput", elapsed == 0 ? 0 : (long) (scanned * 1_000_000_000.0 / elapsed)));
+    }
+
+    /**
+     * The column arrays of a partition, replaced when they grow.
+     */
+    private static class Columns {
+        final long[] ts;
+        final int[] symbol;
+        final byte[] action;
+        final int[] amount;
+        final double[] price;
+
+        Columns(int capacity) {
+            ts = new long[capacity];
+            symbol = new int[capacity];
+            action = new byte[capacity];
+            amount = new int[capacity];
+            price = new double[capacity];
+        }
+
+        Columns grow(int size) {
+            Columns grown = new Columns(ts.length * 2);
+            System.arraycopy(ts, 0, grown.ts, 0, size);
+            System.arraycopy(symbol, 0, grown.symbol, 0, size);
+            System.arraycopy(action, 0, grown.action, 0, size);
+            System.arraycopy(amount, 0, grown.amount, 0, size);
+            System.arraycopy(price, 0, grown.price, 0, size);
+            return grown;
+        }
+    }
+
+    private static class Partition {
+        // Read by the scans: the columns first published, then the size
+        volatile Columns columns = new Columns(1024);
+        volatile int size;
+
+        void add(long ts, int symbol, byte action, int amount, double price) {
+            Columns c = columns;
+            if (size == c.ts.length) {
+                c = c.grow(size);
+                columns = c;
+            }
+            c.ts[size] = ts;
+            c.symbol[size] = symbol;
+            c.action[size] = action;
+            c.amount[size] = amount;
+            c.price[size] = price;
+            size = size + 1;
+        }
+    }
+
+    /**
+     * The aggregated values of a group.
+     */
+    static class Aggregate {
+        long count;
+        long volume;
+        double notional;
+        double minPrice = Double.MAX_VALUE;
+        double maxPrice = -Double.MAX_VALUE;
+
+        void merge(Aggregate other) {
+            count += other.count;
+            volume += other.volume;
+            notional += other.notional;
+            minPrice = Math.min(minPrice, other.minPrice);
+            maxPrice = Math.max(maxPrice, other.maxPrice);
+        }
+
+        JsonObject toJson() {
+            return new JsonObject()
+                    .put("count", count)
+                    .put("volume", volume)
+                    .put("notional", notional)
+                    .put("minPrice", minPrice)
+                    .put("maxPrice", maxPrice)
+                    .put("vwap", volume == 0 ? 0.0 : notional / volume);
+        }
+    }
+
+    /**
+     * Scans a range of rows of a partition.
+     */
+    private static class ScanTask extends RecursiveTask<Map<Long, Aggregate>> {
+        private final AnalyticQuery query;
+        private final Integer symbolCode;
+        private final Columns columns;
+        private final int start;
+        private final int end;
+
+        ScanTask(AnalyticQuery query, Integer symbolCode, Columns columns, int start, int end) {
+            this.query = query;
+            this.symbolCode = symbolCode;
+            this.columns = columns;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Map<Long, Aggregate> compute() {
+            Map<Long, Aggregate> groups = new HashMap<>();
+            long[] ts = columns.ts;
+            int[] symbol = columns.symbol;
+            byte[] action = columns.action;
+            int[] amount = columns.amount;
+            double[] price = columns.price;
+            long from = query.from();
+            long to = query.to();
+            int actionFilter = query.action() == null ? -1 : ("SELL".equals(query.action()) ? SELL : BUY);
+            for (int i = start; i < end; i++) {
+                if (ts[i] < from || ts[i] > to
+                        || (symbolCode != null && symbol[i] != symbolCode)
+                        || (actionFilter >= 0 && action[i] != actionFilter)) {
+                    continue;
+                }
+                Aggregate aggregate = groups.computeIfAbsent(query.key(ts[i], symbol[i], action[i]),
+                        k -> new Aggregate());
+                aggregate.count++;
+                aggregate.volume += amount[i];
+                aggregate.notional += amount[i] * price[i];
+                aggregate.minPrice = Math.min(aggregate.minPrice, price[i]);
+                aggregate.maxPrice = Math.max(aggregate.maxPrice, price[i]);
+            }
+            return groups;
+        }
+    }
+
+    /**
+     * Forks the scans and merges their groups.
+     */
+    private static class MergeTask extends RecursiveTask<Map<Long, Aggregate>> {
+        private final List<ScanTask> tasks;
+
+        MergeTask(List<ScanTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected Map<Long, Aggregate> compute() {
+            invokeAll(tasks);
+            Map<Long, Aggregate> groups = new HashMap<>();
+            for (ScanTask task : tasks) {
+                task.join().forEach((key, aggregate) -> groups.merge(key, aggregate, (a, b) -> {
+                    a.merge(b);
+                    return a;
+                }));
+            }
+            return groups;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.eventbus.MessageConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounds the operations received from the event bus and not written yet by the {@link AuditStore}.
+ * <p>
+ * When the store backlog reaches the `high` watermark, the consumer is paused (the event bus buffers the messages
+ * sent meanwhile, up to its limit). It is resumed when the backlog goes down to the `low` watermark. With a
+ * {@link SpillFile}, the consumer is not paused: the operations received while the store is behind are written in the
+ * overflow file, and moved to the store, in order, once the backlog has drained. Consumers can be added, all of them
+ * being paused and resumed together.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class IngestionWindow {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionWindow.class);
+
+    private final AuditStore store;
+    private final List<MessageConsumer<JsonObject>> consumers = new ArrayList<>();
+    private final SpillFile spill;
+    private final Predicate<JsonObject> filter;
+    private final Consumer<JsonArray> sink;
+    private final int high;
+    private final int low;
+
+    private boolean paused;
+    private boolean spilling;
+    private boolean replaying;
+
+    // Metrics
+    private long pauses;
+    private long pausedSince;
+    private long pausedTime;
+    private long lastLag;
+    private long maxLag;
+
+    /**
+     * @param store    the store
+     * @param consumer the consumer of the operations
+     * @param spill    the overflow, {@code null} to pause the consumer instead
+     * @param high     the backlog above which the operations are not sent to the store
+     * @param low      the backlog below which they are sent again
+     * @param filter   the predicate selecting the operations to store
+     * @param sink     the function appending the operations to the store
+     */
+    IngestionWindow(AuditStore store, MessageConsumer<JsonObject> consumer, SpillFile spill, int high, int low,
+                    Predicate<JsonObject> filter, Consumer<JsonArray> sink) {
+        this.store = store;
+        this.consumers.add(consumer);
+        this.spill = spill;
+        this.high = high;
+        this.low = low;
+        this.filter = filter;
+        this.sink = sink;
+        store.drainHandler(v -> drained());
+    }
+
+    /**
+     * Starts consuming the operations.
+     */
+    void start() {
+        spilling = spill != null && spill.size() > 0;
+        consumers.forEach(this::listen);
+        if (spilling) {
+            // Left by a previous run
+            replay();
+        }
+    }
+
+    /**
+     * Starts consuming the operations of another consumer.
+     *
+     * @param consumer the consumer
+     */
+    void consume(MessageConsumer<JsonObject> consumer) {
+        consumers.add(consumer);
+        listen(consumer);
+        if (paused) {
+            consumers.forEach(MessageConsumer::pause);
+        }
+    }
+
+    private void listen(MessageConsumer<JsonObject> consumer) {
+        consumer.handler(message -> {
+            if (filter.test(message.body())) {
+                handle(Operations.toParams(message.body()));
+            }
+        });
+    }
+
+    private void handle(JsonArray params) {
+        if (spill != null && (spilling || store.backlog() >= high)) {
+            // Keep the order: once spilling, everything goes through the overflow until it is empty
+            spilling = true;
+            spill.append(params);
+            return;
+        }
+        append(params);
+        if (spill == null && !paused && store.backlog() >= high) {
+            paused = true;
+            pauses++;
+            pausedSince = System.currentTimeMillis();
+            consumers.forEach(MessageConsumer::pause);
+        }
+    }
+
+    private void append(JsonArray params) {
+        lastLag = Math.max(0, System.currentTimeMillis() - params.getLong(6));
+        maxLag = Math.max(maxLag, lastLag);
+        sink.accept(params);
+    }
+
+    private void drained() {
+        if (store.backlog() > low) {
+            return;
+        }
+        if (paused) {
+            paused = false;
+            pausedTime += System.currentTimeMillis() - pausedSince;
+            consumers.forEach(MessageConsumer::resume);
+        }
+        if (spilling && !replaying) {
+            replay();
+        }
+    }
+
+    private void replay() {
+        replaying = true;
+        spill.read(high - store.backlog()).subscribe(rows -> {
+            replaying = false;
+            rows.forEach(this::append);
+            if (spill.size() == 0) {
+                spilling = false;
+            } else if (store.backlog() <= low) {
+                // The store is not deferring the writes
+                replay();
+            }
+        }, err -> {
+            replaying = false;
+            log.error("Failed to read the overflow file", err);
+        });
+    }
+
+    /**
+     * @return the metrics: paused state, number of pauses, paused time (ms), lag of the last and slowest operation
+     * (ms), operations in the overflow, written in the overflow and lost by a failed overflow write since the start
+     */
+    JsonObject metrics() {
+        return new JsonObject()
+                .put("paused", paused)
+                .put("pauses", pauses)
+                .put("pausedTime", pausedTime + (paused ? System.currentTimeMillis() - pausedSince : 0))
+                .put("lag", lastLag)
+                .put("maxLag", maxLag)
+                .put("backlog", store.backlog())
+                .put("overflow", spill == null ? 0 : spill.size())
+                .put("overflowTotal", spill == null ? 0 : spill.total())
+                .put("overflowLost", spill == null ? 0 : spill.lost());
+    }
+}
@@ -0,0 +1,277 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.ext.sql.SQLConnection;
+import io.vertx.rxjava.ext.sql.SQLRowStream;
+import rx.Single;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AuditStore} storing the operations in a database (hsql).
+ * <p>
+ * Operations are stored in typed columns (action, symbol, name, amount, price, owned and timestamp) indexed by
+ * (symbol, timestamp) and timestamp. The insertions are batched by a {@link WriteBehindBuffer}, the ids being assigned
+ * by the store when the operations are appended. Checkpoints are stored in the `AUDIT_CHECKPOINT` table.
+ * <p>
+ * When several instances share the database, each one uses the ids congruent to `id.offset` modulo `id.stride`.
+ */
+class JdbcAuditStore implements AuditStore {
+
+    private static final String TABLE = "AUDIT_OPERATION";
+    private static final String DROP_STATEMENT = "DROP TABLE IF EXISTS " + TABLE;
+    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+            + "ID BIGINT IDENTITY, ACTION VARCHAR(8), SYMBOL VARCHAR(32), NAME VARCHAR(128), "
+            + "AMOUNT INTEGER, PRICE DOUBLE, OWNED INTEGER, TS BIGINT)";
+    private static final String SELECT_INDEXES_STATEMENT = "SELECT DISTINCT INDEX_NAME "
+            + "FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO WHERE TABLE_NAME = '" + TABLE + "'";
+    private static final Map<String, String> INDEXES = new LinkedHashMap<>();
+    private static final String INSERT_STATEMENT = "INSERT INTO " + TABLE
+            + " (ID, ACTION, SYMBOL, NAME, AMOUNT, PRICE, OWNED, TS) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_LAST_ID_STATEMENT = "SELECT MAX(ID) FROM " + TABLE;
+
+    private static final String CHECKPOINT_TABLE = "AUDIT_CHECKPOINT";
+    private static final String DROP_CHECKPOINT_STATEMENT = "DROP TABLE IF EXISTS " + CHECKPOINT_TABLE;
+    private static final String CREATE_CHECKPOINT_STATEMENT = "CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE
+            + " (NAME VARCHAR(64) PRIMARY KEY, STATE LONGVARCHAR)";
+    private static final String SELECT_CHECKPOINT_STATEMENT = "SELECT STATE FROM " + CHECKPOINT_TABLE
+            + " WHERE NAME = ?";
+    private static final String MERGE_CHECKPOINT_STATEMENT = "MERGE INTO " + CHECKPOINT_TABLE
+            + " USING (VALUES(CAST(? AS VARCHAR(64)), CAST(? AS LONGVARCHAR))) AS V(NAME, STATE)"
+            + " ON " + CHECKPOINT_TABLE + ".NAME = V.NAME"
+            + " WHEN MATCHED THEN UPDATE SET " + CHECKPOINT_TABLE + ".STATE = V.STATE"
+            + " WHEN NOT MATCHED THEN INSERT VALUES V.NAME, V.STATE";
+
+    static {
+        // HSQLDB does not support `CREATE INDEX IF NOT EXISTS`, the missing ones are created at startup.
+        INDEXES.put(TABLE + "_SYMBOL_TS", "CREATE INDEX " + TABLE + "_SYMBOL_TS ON " + TABLE + " (SYMBOL, TS)");
+        INDEXES.put(TABLE + "_TS", "CREATE INDEX " + TABLE + "_TS ON " + TABLE + " (TS)");
+    }
+
+    private final JDBCClient jdbc;
+    private final WriteBehindBuffer writer;
+    private final long idStride;
+    private final long idOffset;
+    private long nextId;
+
+    JdbcAuditStore(Vertx vertx, JsonObject config) {
+        this.jdbc = JDBCClient.createNonShared(vertx, config);
+        this.writer = new WriteBehindBuffer(vertx, jdbc, INSERT_STATEMENT,
+                config.getInteger("batch.size", 100), config.getLong("batch.interval", 200L),
+                config.getInteger("batch.retries", 3));
+        this.idStride = config.getInteger("id.stride", 1);
+        this.idOffset = config.getInteger("id.offset", 0);
+    }
+
+    @Override
+    public Single<Void> open(boolean drop) {
+        return initializeDatabase(drop)
+                .flatMap(v -> jdbc.rxGetConnection())
+                .flatMap(conn -> conn.rxQuery(SELECT_LAST_ID_STATEMENT).doAfterTerminate(conn::close))
+                .flatMap(set -> {
+                    Long last = set.getResults().get(0).getLong(0);
+                    // The first id after the last one, congruent to the offset
+                    long first = last == null ? 0 : last + 1;
+                    nextId = first + Math.floorMod(idOffset - first, idStride);
+                    return writer.open();
+                });
+    }
+
+    @Override
+    public long append(JsonArray params) {
+        // The insertion is not executed immediately, the write-behind buffer batches the operations and inserts
+        // them over its own connection, in one transaction per batch. The id is assigned here so it is known before
+        // the insertion.
+        long id = nextId;
+        nextId += idStride;
+        writer.add(new JsonArray().add(id).addAll(params));
+        return id;
+    }
+
+    @Override
+    public int backlog() {
+        return writer.backlog();
+    }
+
+    @Override
+    public void drainHandler(Handler<Void> handler) {
+        writer.drainHandler(handler);
+    }
+
+    @Override
+    public long lastId() {
+        return nextId - idStride;
+    }
+
+    @Override
+    public Single<List<JsonArray>> query(OperationQuery query) {
+        // 1. Get the connection, 2. execute the query, 3. close the connection
+        return jdbc.rxGetConnection().flatMap(conn -> conn
+                .rxQueryWithParams(query.toSql(TABLE), query.params())
+                .map(set -> set.getResults())
+                .doAfterTerminate(conn::close));
+    }
+
+    @Override
+    public Single<RowStream> stream(OperationQuery query) {
+        return jdbc.rxGetConnection().flatMap(conn -> conn
+                .rxQueryStreamWithParams(query.toSql(TABLE), query.params())
+                .doOnError(err -> conn.close())
+                .map(stream -> new JdbcRowStream(conn, stream)));
+    }
+
+    @Override
+    public Single<JsonObject> loadCheckpoint(String name) {
+        return jdbc.rxGetConnection().flatMap(conn -> conn
+                .rxQueryWithParams(SELECT_CHECKPOINT_STATEMENT, new JsonArray().add(name))
+                .map(set -> set.getResults().isEmpty() ? (JsonObject) null
+                        : new JsonObject(set.getResults().get(0).getString(0)))
+                .doAfterTerminate(conn::close));
+    }
+
+    @Override
+    public Single<Void> saveCheckpoint(String name, JsonObject state) {
+        return jdbc.rxGetConnection().flatMap(conn -> conn
+                .rxUpdateWithParams(MERGE_CHECKPOINT_STATEMENT, new JsonArray().add(name).add(state.encode()))
+                .map(result -> (Void) null)
+                .doAfterTerminate(conn::close));
+    }
+
+    @Override
+    public JsonObject metrics() {
+        return writer.metrics();
+    }
+
+    @Override
+    public Single<Void> close() {
+        // Flush the pending operations before closing the database
+        return writer.close().doAfterTerminate(jdbc::close);
+    }
+
+    private Single<Void> initializeDatabase(boolean drop) {
+
+        // The database initialization is a multi-step process:
+        // 1. Retrieve the connection
+        // 2. Drop the table is exist
+        // 3. Create the table
+        // 4. Close the connection (in any case)
+        // To handle such a process, we are going to create an RxJava Single and compose it with the RxJava flatMap operation:
+        // retrieve the connection -> drop table -> create table -> close the connection
+        // For this we use `Func1<X, Single<R>>`that takes a parameter `X` and return a `Single<R>` object.
+
+        // This is the starting point of our Rx operations
+        // This single will be completed when the connection with the database is established.
+        // We are going to use this single as a reference on the connection to close it.
+        Single<SQLConnection> connectionRetrieved = jdbc.rxGetConnection();
+
+        // Ok, now it's time to chain all these actions:
+        Single<List<Integer>> resultSingle = connectionRetrieved
+                .flatMap(conn -> {
+                    // When the connection is retrieved
+
+                    // Prepare the batch
+                    List<String> batch = new ArrayList<>();
+                    if (drop) {
+                        // When the table is dropped, we recreate it
+                        batch.add(DROP_STATEMENT);
+                        batch.add(DROP_CHECKPOINT_STATEMENT);
+                    }
+                    // Just create the tables
+                    batch.add(CREATE_TABLE_STATEMENT);
+                    batch.add(CREATE_CHECKPOINT_STATEMENT);
+
+                    // We compose with a statement batch, then create the missing indexes
+                    Single<List<Integer>> next = conn.rxBatch(batch)
+                            .flatMap(v -> conn.rxQuery(SELECT_INDEXES_STATEMENT))
+                            .flatMap(set -> {
+                                List<String> indexes = new ArrayList<>();
+                                INDEXES.forEach((name, statement) -> {
+                                    if (set.getResults().stream().noneMatch(row -> name.equals(row.getString(0)))) {
+                                        indexes.add(statement);
+                                    }
+                                });
+                                return indexes.isEmpty() ? Single.just(Collections.<Integer>emptyList())
+                                        : conn.rxBatch(indexes);
+                            });
+
+                    // Whatever the result, if the connection has been retrieved, close it
+                    return next.doAfterTerminate(conn::close);
+                });
+
+        return resultSingle.map(list -> null);
+    }
+
+    /**
+     * A {@link RowStream} over a JDBC row stream, closing the connection at the end.
+     */
+    private static class JdbcRowStream implements RowStream {
+
+        private final SQLConnection connection;
+        private final SQLRowStream stream;
+        private boolean closed;
+
+        JdbcRowStream(SQLConnection connection, SQLRowStream stream) {
+            this.connection = connection;
+            this.stream = stream;
+        }
+
+        @Override
+        public RowStream exceptionHandler(Handler<Throwable> handler) {
+            stream.exceptionHandler(err -> {
+                release();
+                handler.handle(err);
+            });
+            return this;
+        }
+
+        @Override
+        public RowStream handler(Handler<JsonArray> handler) {
+            stream.handler(handler);
+            return this;
+        }
+
+        @Override
+        public RowStream pause() {
+            stream.pause();
+            return this;
+        }
+
+        @Override
+        public RowStream resume() {
+            stream.resume();
+            return this;
+        }
+
+        @Override
+        public RowStream endHandler(Handler<Void> endHandler) {
+            stream.endHandler(v -> {
+                release();
+                endHandler.handle(null);
+            });
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                stream.close(ar -> connection.close());
+            }
+        }
+
+        private void release() {
+            if (!closed) {
+                closed = true;
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A segment of the audit log, named after the id of its first operation.
+ * <p>
+ * A record is `[int length][long id][long timestamp][action][symbol][name][int amount][double price][int owned]`,
+ * strings being written as `[short length][UTF-8 bytes]`. The `.log` file is preallocated and memory-mapped while the
+ * segment is active, a zero length marks the end of the records. Records are grouped in blocks of about `blockSize`
+ * bytes keeping their id and timestamp ranges: this sparse index is used to skip the blocks that cannot match a query.
+ * <p>
+ * Once full, the segment is sealed: the blocks are deflated one by one in a `.zlog` file, so a block is read without
+ * inflating the whole segment, and the index is written in a `.index` file.
+ * <p>
+ * Records are appended from the verticle event loop only, blocks can be read concurrently from worker threads.
+ */
+class LogSegment {
+
+    static final String LOG = ".log";
+    static final String COMPRESSED = ".zlog";
+    static final String INDEX = ".index";
+
+    /**
+     * A block of records and its entry in the sparse index.
+     */
+    static class Block {
+        final int start;
+        final long firstId;
+        volatile long lastId;
+        volatile long minTs;
+        volatile long maxTs;
+        // Updated last, a reader reading it first sees complete records
+        volatile int end;
+        // Location of the block in the sealed file
+        long filePosition;
+        int fileLength;
+
+        Block(int start, long firstId, long ts) {
+            this.start = start;
+            this.end = start;
+            this.firstId = firstId;
+            this.lastId = firstId;
+            this.minTs = ts;
+            this.maxTs = ts;
+        }
+    }
+
+    private final File directory;
+    private final long baseId;
+    private final int blockSize;
+    private final List<Block> blocks = new CopyOnWriteArrayList<>();
+
+    // The mapped `.log` file, until the segment is sealed
+    private volatile MappedByteBuffer buffer;
+    private volatile File data;
+    private volatile boolean compressed;
+
+    // Used by the writer only
+    private ByteBuffer out;
+    private Block current;
+
+    private LogSegment(File directory, long baseId, int blockSize) {
+        this.directory = directory;
+        this.baseId = baseId;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Creates a new active segment.
+     *
+     * @param directory the log directory
+     * @param baseId    the id of the first operation of the segment
+     * @param size      the size of the segment file
+     * @param blockSize the size of the indexed blocks
+     * @return the segment
+     * @throws IOException if the file cannot be created
+     */
+    static LogSegment create(File directory, long baseId, int size, int blockSize) throws IOException {
+        LogSegment segment = new LogSegment(directory, baseId, blockSize);
+        segment.map(size);
+        return segment;
+    }
+
+    /**
+     * Reopens a segment that was not sealed, rebuilding its index by scanning the records.
+     *
+     * @param directory the log directory
+     * @param baseId    the id of the first operation of the segment
+     * @param blockSize the size of the indexed blocks
+     * @return the segment, ready to receive new records
+     * @throws IOException if the file cannot be read
+     */
+    static LogSegment recover(File directory, long baseId, int blockSize) throws IOException {
+        LogSegment segment = new LogSegment(directory, baseId, blockSize);
+        segment.map((int) file(directory, baseId, LOG).length());
+        ByteBuffer in = segment.out;
+        int position = 0;
+        while (position + 4 <= in.capacity()) {
+            int length = in.getInt(position);
+            if (length <= 0 || position + 4 + length > in.capacity()) {
+                break;
+            }
+            segment.index(position, 4 + length, in.getLong(position + 4), in.getLong(position + 12));
+            position += 4 + length;
+        }
+        in.position(position);
+        return segment;
+    }
+
+    /**
+     * Opens a sealed segment from its index.
+     *
+     * @param directory the log directory
+     * @param baseId    the id of the first operation of the segment
+     * @return the segment
+     * @throws IOException if the index cannot be read
+     */
+    static LogSegment load(File directory, long baseId) throws IOException {
+        LogSegment segment = new LogSegment(directory, baseId, 0);
+        File compressedFile = file(directory, baseId, COMPRESSED);
+        segment.compressed = compressedFile.exists();
+        segment.data = segment.compressed ? compressedFile : file(directory, baseId, LOG);
+        if (segment.compressed) {
+            // Left by a crash between the compression and the deletion
+            file(directory, baseId, LOG).delete();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file(directory, baseId, INDEX))))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long firstId = in.readLong();
+                long lastId = in.readLong();
+                long minTs = in.readLong();
+                long maxTs = in.readLong();
+                Block block = new Block(in.readInt(), firstId, minTs);
+                block.lastId = lastId;
+                block.maxTs = maxTs;
+                block.end = in.readInt();
+                block.filePosition = in.readLong();
+                block.fileLength = in.readInt();
+                segment.blocks.add(block);
+            }
+        }
+        return segment;
+    }
+
+    static File file(File directory, long baseId, String extension) {
+        return new File(directory, String.format("%020d", baseId) + extension);
+    }
+
+    /**
+     * @return the id of the first operation of the segment
+     */
+    long baseId() {
+        return baseId;
+    }
+
+    /**
+     * @return the id of the last operation of the segment, {@code baseId - 1} if empty
+     */
+    long lastId() {
+        return blocks.isEmpty() ? baseId - 1 : blocks.get(blocks.size() - 1).lastId;
+    }
+
+    /**
+     * @return the highest timestamp of the segment, {@link Long#MIN_VALUE} if empty
+     */
+    long maxTs() {
+        long max = Long.MIN_VALUE;
+        for (Block block : blocks) {
+            max = Math.max(max, block.maxTs);
+        }
+        return max;
+    }
+
+    /**
+     * @return a snapshot of the blocks, the oldest first
+     */
+    List<Block> blocks() {
+        return new ArrayList<>(blocks);
+    }
+
+    boolean sealed() {
+        return buffer == null;
+    }
+
+    /**
+     * @return the size of the data, compressed if the segment is sealed
+     */
+    long size() {
+        if (sealed() && compressed) {
+            return data.length();
+        }
+        return blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).end;
+    }
+
+    /**
+     * Appends a record. Must be called from the writer thread, and not once the segment is sealed.
+     *
+     * @param id     the operation id
+     * @param ts     the operation timestamp
+     * @param params the insertion parameters, as returned by {@link Operations#toParams}
+     * @return {@code false} if the segment is full
+     */
+    boolean append(long id, long ts, JsonArray params) {
+        byte[] action = bytes(params.getString(0));
+        byte[] symbol = bytes(params.getString(1));
+        byte[] name = bytes(params.getString(2));
+        int length = 8 + 8 + 6 + size(action) + size(symbol) + size(name) + 4 + 8 + 4;
+        int start = out.position();
+        if (out.remaining() < 4 + length) {
+            return false;
+        }
+        out.position(start + 4);
+        out.putLong(id).putLong(ts);
+        put(action);
+        put(symbol);
+        put(name);
+        Integer amount = params.getInteger(3);
+        Double price = params.getDouble(4);
+        Integer owned = params.getInteger(5);
+        out.putInt(amount == null ? 0 : amount)
+                .putDouble(price == null ? 0.0 : price)
+                .putInt(owned == null ? 0 : owned);
+        // The length is written last, a partially written record is not read back after a crash
+        out.putInt(start, length);
+        index(start, 4 + length, id, ts);
+        return true;
+    }
+
+    /**
+     * Reads a block. Can be called from any thread.
+     *
+     * @param block the block
+     * @param query the query filtering the records
+     * @return the matching rows, as described by {@link Operations#COLUMNS}, the most recent first
+     * @throws IOException if the block cannot be read
+     */
+    List<JsonArray> read(Block block, OperationQuery query) throws IOException {
+        int end = block.end;
+        ByteBuffer in;
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            in = mapped.duplicate();
+            in.limit(end);
+            in.position(block.start);
+        } else {
+            in = readSealed(block);
+        }
+
+        List<JsonArray> rows = new ArrayList<>();
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length <= 0) {
+                break;
+            }
+            rows.add(decode(in));
+        }
+        List<JsonArray> matching = new ArrayList<>(rows.size());
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            if (query.matches(rows.get(i))) {
+                matching.add(rows.get(i));
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Writes the mapped records to the disk.
+     */
+    void force() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * Seals the segment: compresses the blocks (if requested) and writes the index. This method is blocking, it must
+     * be called from a worker thread once the last record has been appended.
+     *
+     * @param compress whether the blocks are compressed
+     * @throws IOException if the files cannot be written
+     */
+    void seal(boolean compress) throws IOException {
+        MappedByteBuffer mapped = buffer;
+        File target = file(directory, baseId, compress ? COMPRESSED : LOG);
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            byte[] chunk = new byte[8192];
+            try (FileOutputStream os = new FileOutputStream(target)) {
+                long position = 0;
+                for (Block block : blocks) {
+                    byte[] raw = new byte[block.end - block.start];
+                    ByteBuffer in = mapped.duplicate();
+                    in.position(block.start);
+                    in.get(raw);
+                    deflater.reset();
+                    deflater.setInput(raw);
+                    deflater.finish();
+                    ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 2);
+                    while (!deflater.finished()) {
+                        deflated.write(chunk, 0, deflater.deflate(chunk));
+                    }
+                    block.filePosition = position;
+                    block.fileLength = deflated.size();
+                    deflated.writeTo(os);
+                    position += deflated.size();
+                }
+                os.getFD().sync();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            for (Block block : blocks) {
+                block.filePosition = block.start;
+                block.fileLength = block.end - block.start;
+            }
+            mapped.force();
+        }
+        writeIndex();
+
+        // Switch the readers to the sealed file
+        compressed = compress;
+        data = target;
+        buffer = null;
+        if (compress) {
+            file(directory, baseId, LOG).delete();
+        }
+    }
+
+    /**
+     * Deletes the files of the segment.
+     */
+    void delete() {
+        file(directory, baseId, LOG).delete();
+        file(directory, baseId, COMPRESSED).delete();
+        file(directory, baseId, INDEX).delete();
+    }
+
+    private void map(int size) throws IOException {
+        File file = file(directory, baseId, LOG);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // The mapping stays valid once the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        out = buffer.duplicate();
+        data = file;
+    }
+
+    private void index(int start, int length, long id, long ts) {
+        if (current == null || start - current.start >= blockSize) {
+            current = new Block(start, id, ts);
+            blocks.add(current);
+        } else {
+            current.lastId = id;
+            current.minTs = Math.min(current.minTs, ts);
+            current.maxTs = Math.max(current.maxTs, ts);
+        }
+        current.end = start + length;
+    }
+
+    private void writeIndex() throws IOException {
+        File tmp = new File(directory, String.format("%020d", baseId) + INDEX + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream os = new DataOutputStream(new BufferedOutputStream(fos))) {
+            os.writeInt(blocks.size());
+            for (Block block : blocks) {
+                os.writeLong(block.firstId);
+                os.writeLong(block.lastId);
+                os.writeLong(block.minTs);
+                os.writeLong(block.maxTs);
+                os.writeInt(block.start);
+                os.writeInt(block.end);
+                os.writeLong(block.filePosition);
+                os.writeInt(block.fileLength);
+            }
+            os.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file(directory, baseId, INDEX).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ByteBuffer readSealed(Block block) throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(block.fileLength);
+        try (FileChannel channel = FileChannel.open(data.toPath(), StandardOpenOption.READ)) {
+            while (raw.hasRemaining()) {
+                if (channel.read(raw, block.filePosition + raw.position()) < 0) {
+                    throw new EOFException("Truncated segment " + data);
+                }
+            }
+        }
+        if (!compressed) {
+            raw.flip();
+            return raw;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(raw.array());
+            byte[] inflated = new byte[block.end - block.start];
+            int length = 0;
+            while (length < inflated.length) {
+                int n = inflater.inflate(inflated, length, inflated.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Corrupted block in " + data);
+                }
+                length += n;
+            }
+            return ByteBuffer.wrap(inflated);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block in " + data, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void put(byte[] value) {
+        if (value == null) {
+            out.putShort((short) -1);
+        } else {
+            out.putShort((short) value.length).put(value);
+        }
+    }
+
+    private static JsonArray decode(ByteBuffer in) {
+        long id = in.getLong();
+        long ts = in.getLong();
+        String action = string(in);
+        String symbol = string(in);
+        String name = string(in);
+        return new JsonArray()
+                .add(id)
+                .add(action)
+                .add(symbol)
+                .add(name)
+                .add(in.getInt())
+                .add(in.getDouble())
+                .add(in.getInt())
+                .add(ts);
+    }
+
+    private static String string(ByteBuffer in) {
+        short length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Strings are limited to the short length prefix
+        return bytes.length > Short.MAX_VALUE ? Arrays.copyOf(bytes, Short.MAX_VALUE) : bytes;
+    }
+
+    private static int size(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+}
@@ -0,0 +1,193 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-symbol aggregates of the operations (count, volume and notional), maintained incrementally in rolling time
+ * buckets.
+ * <p>
+ * Each symbol has a ring of `buckets` buckets of `bucketSize` ms, indexed by the operation timestamp: an operation
+ * updates a single bucket, reusing it when it belongs to an elapsed period. A read sums at most `buckets` buckets,
+ * whatever the number of stored operations. Operations older than the covered span are ignored.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class OperationAggregates {
+
+    private final long bucketSize;
+    private final int buckets;
+    private final Map<String, Series> series = new HashMap<>();
+    private long lastId = -1;
+
+    OperationAggregates(long bucketSize, int buckets) {
+        this.bucketSize = bucketSize;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Replaces the aggregates with the content of a checkpoint.
+     *
+     * @param checkpoint the checkpoint returned by {@link #toJson()}
+     * @return {@code false} if the checkpoint was taken with another bucket configuration, and so ignored
+     */
+    boolean restore(JsonObject checkpoint) {
+        if (checkpoint.getLong("bucketSize") != bucketSize || checkpoint.getInteger("buckets") != buckets) {
+            return false;
+        }
+        series.clear();
+        lastId = checkpoint.getLong("lastId");
+        checkpoint.getJsonObject("symbols").forEach(entry -> {
+            JsonObject json = (JsonObject) entry.getValue();
+            Series s = new Series(buckets);
+            for (int i = 0; i < buckets; i++) {
+                s.start[i] = json.getJsonArray("start").getLong(i);
+                s.count[i] = json.getJsonArray("count").getLong(i);
+                s.volume[i] = json.getJsonArray("volume").getLong(i);
+                s.notional[i] = json.getJsonArray("notional").getDouble(i);
+            }
+            series.put(entry.getKey(), s);
+        });
+        return true;
+    }
+
+    /**
+     * @return the time span covered by the buckets, in ms
+     */
+    long span() {
+        return bucketSize * buckets;
+    }
+
+    /**
+     * @return the id of the last aggregated operation, {@code -1} if none
+     */
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * Aggregates an operation.
+     *
+     * @param id     the operation id
+     * @param params the insertion parameters, as returned by {@link Operations#toParams(JsonObject)}
+     */
+    void add(long id, JsonArray params) {
+        lastId = Math.max(lastId, id);
+        String symbol = params.getString(1);
+        Integer amount = params.getInteger(3);
+        Double price = params.getDouble(4);
+        if (symbol == null || amount == null) {
+            return;
+        }
+        long period = Math.floorDiv(params.getLong(6), bucketSize) * bucketSize;
+        int index = (int) Math.floorMod(period / bucketSize, (long) buckets);
+        Series s = series.computeIfAbsent(symbol, k -> new Series(buckets));
+        if (s.start[index] != period) {
+            if (s.start[index] > period) {
+                // Older than the span covered by the ring
+                return;
+            }
+            s.start[index] = period;
+            s.count[index] = 0;
+            s.volume[index] = 0;
+            s.notional[index] = 0;
+        }
+        s.count[index]++;
+        s.volume[index] += amount;
+        s.notional[index] += amount * (price == null ? 0.0 : price);
+    }
+
+    /**
+     * @param symbol the symbol
+     * @param window the time window, in ms, at most {@link #span()}
+     * @param now    the end of the window
+     * @return the count, volume, notional and volume-weighted average price of the operations on the symbol in the
+     * window
+     */
+    JsonObject get(String symbol, long window, long now) {
+        long count = 0;
+        long volume = 0;
+        double notional = 0;
+        Series s = series.get(symbol);
+        if (s != null) {
+            // Buckets overlapping (now - window, now]
+            long from = now - window;
+            for (int i = 0; i < buckets; i++) {
+                if (s.start[i] + bucketSize > from && s.start[i] <= now) {
+                    count += s.count[i];
+                    volume += s.volume[i];
+                    notional += s.notional[i];
+                }
+            }
+        }
+        return new JsonObject()
+                .put("symbol", symbol)
+                .put("window", window)
+                .put("count", count)
+                .put("volume", volume)
+                .put("notional", notional)
+                .put("vwap", volume == 0 ? 0.0 : notional / volume);
+    }
+
+    /**
+     * @param window the time window, in ms, at most {@link #span()}
+     * @param now    the end of the window
+     * @return the aggregates of all the symbols, by symbol
+     */
+    JsonObject all(long window, long now) {
+        JsonObject all = new JsonObject();
+        series.keySet().forEach(symbol -> all.put(symbol, get(symbol, window, now)));
+        return all;
+    }
+
+    /**
+     * @return the checkpoint of the aggregates
+     */
+    JsonObject toJson() {
+        JsonObject symbols = new JsonObject();
+        series.forEach((symbol, s) -> {
+            JsonArray start = new JsonArray();
+            JsonArray count = new JsonArray();
+            JsonArray volume = new JsonArray();
+            JsonArray notional = new JsonArray();
+            for (int i = 0; i < buckets; i++) {
+                start.add(s.start[i]);
+                count.add(s.count[i]);
+                volume.add(s.volume[i]);
+                notional.add(s.notional[i]);
+            }
+            symbols.put(symbol, new JsonObject()
+                    .put("start", start)
+                    .put("count", count)
+                    .put("volume", volume)
+                    .put("notional", notional));
+        });
+        return new JsonObject()
+                .put("bucketSize", bucketSize)
+                .put("buckets", buckets)
+                .put("lastId", lastId)
+                .put("symbols", symbols);
+    }
+
+    /**
+     * The buckets of a symbol.
+     */
+    private static class Series {
+        final long[] start;
+        final long[] count;
+        final long[] volume;
+        final double[] notional;
+
+        Series(int buckets) {
+            start = new long[buckets];
+            Arrays.fill(start, Long.MIN_VALUE);
+            count = new long[buckets];
+            volume = new long[buckets];
+            notional = new double[buckets];
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+
+/**
+ * The filter of the operations retrieved from the REST API, built from the query parameters:
+ * <ul>
+ * <li>`symbol`: only the operations on the given symbol</li>
+ * <li>`from`, `to`: only the operations executed in this time range (epoch ms, both inclusive)</li>
+ * <li>`before`: only the operations with an id lower than the given one (keyset pagination)</li>
+ * <li>`limit`: the maximum number of returned operations (10 by default)</li>
+ * <li>`format`: `json` (default), or `ndjson` / `csv` to stream all the matching operations, `limit` is then
+ * optional and not bounded</li>
+ * </ul>
+ * The operations are returned from the most recent to the oldest.
+ */
+class OperationQuery {
+
+    static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LIMIT = 1000;
+
+    /**
+     * The response formats.
+     */
+    enum Format {
+        JSON("application/json"),
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        boolean streamed() {
+            return this != JSON;
+        }
+    }
+
+    private String symbol;
+    private Long from;
+    private Long to;
+    private Long before;
+    private Long after;
+    private Integer limit;
+    private Format format = Format.JSON;
+
+    /**
+     * @param limit the number of operations
+     * @return a query selecting the most recent operations
+     */
+    static OperationQuery latest(int limit) {
+        OperationQuery query = new OperationQuery();
+        query.limit = limit;
+        return query;
+    }
+
+    /**
+     * @param afterId the id of the last known operation
+     * @param from    the lowest timestamp of the selected operations
+     * @return a query selecting all the operations stored after the given one, executed since {@code from}
+     */
+    static OperationQuery since(long afterId, long from) {
+        OperationQuery query = new OperationQuery();
+        query.after = afterId;
+        query.from = from;
+        return query;
+    }
+
+    /**
+     * @param afterId  the id of the last known operation
+     * @param beforeId the id of the first operation not selected
+     * @param to       the highest timestamp of the selected operations
+     * @return a query selecting all the operations stored between the given ones, executed until {@code to}
+     */
+    static OperationQuery between(long afterId, long beforeId, long to) {
+        OperationQuery query = new OperationQuery();
+        query.after = afterId;
+        query.before = beforeId;
+        query.to = to;
+        return query;
+    }
+
+    /**
+     * Creates the query from the parameters of the given request.
+     *
+     * @param request the HTTP request
+     * @return the query
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    static OperationQuery fromRequest(HttpServerRequest request) {
+        OperationQuery query = new OperationQuery();
+        query.symbol = request.getParam("symbol");
+        query.from = parseLong(request, "from");
+        query.to = parseLong(request, "to");
+        query.before = parseLong(request, "before");
+        String format = request.getParam("format");
+        if (format != null && !format.isEmpty()) {
+            try {
+                query.format = Format.valueOf(format.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value for 'format': " + format);
+            }
+        }
+        Long limit = parseLong(request, "limit");
+        if (limit != null) {
+            if (limit <= 0 || (!query.format.streamed() && limit > MAX_LIMIT)) {
+                throw new IllegalArgumentException("The limit must be in [1, " + MAX_LIMIT + "]");
+            }
+            query.limit = (int) Math.min(limit, Integer.MAX_VALUE);
+        } else if (!query.format.streamed()) {
+            query.limit = DEFAULT_LIMIT;
+        }
+        return query;
+    }
+
+    /**
+     * @return the maximum number of returned operations, {@code null} if not bounded
+     */
+    Integer limit() {
+        return limit;
+    }
+
+    /**
+     * @param capacity the number of operations kept in memory
+     * @return whether the query only asks for the most recent operations, which can be served from memory
+     */
+    boolean onlyRecent(int capacity) {
+        return format == Format.JSON && symbol == null && from == null && to == null && before == null
+                && after == null && limit != null && limit <= capacity;
+    }
+
+    /**
+     * @return the requested format
+     */
+    Format format() {
+        return format;
+    }
+
+    /**
+     * @param firstId the first id of a range of operations
+     * @param lastId the last id of the range
+     * @param minTs the lowest timestamp of the range
+     * @param maxTs the highest timestamp of the range
+     * @return whether the range may contain matching operations, used to skip it otherwise
+     */
+    boolean mayMatch(long firstId, long lastId, long minTs, long maxTs) {
+        return (before == null || firstId < before) && (after == null || lastId > after)
+                && (from == null || maxTs >= from) && (to == null || minTs <= to);
+    }
+
+    /**
+     * @param row a row, as described by {@link Operations#COLUMNS}
+     * @return whether the row matches the filters of this query
+     */
+    boolean matches(JsonArray row) {
+        return (before == null || row.getLong(0) < before)
+                && (after == null || row.getLong(0) > after)
+                && (symbol == null || symbol.equals(row.getString(2)))
+                && (from == null || row.getLong(7) >= from)
+                && (to == null || row.getLong(7) <= to);
+    }
+
+    /**
+     * @param table the table name
+     * @return the SQL statement selecting the operations, to execute with {@link #params()}
+     */
+    String toSql(String table) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(Operations.COLUMNS).append(" FROM ").append(table);
+        String separator = " WHERE ";
+        if (symbol != null) {
+            sql.append(separator).append("SYMBOL = ?");
+            separator = " AND ";
+        }
+        if (from != null) {
+            sql.append(separator).append("TS >= ?");
+            separator = " AND ";
+        }
+        if (to != null) {
+            sql.append(separator).append("TS <= ?");
+            separator = " AND ";
+        }
+        if (before != null) {
+            sql.append(separator).append("ID < ?");
+            separator = " AND ";
+        }
+        if (after != null) {
+            sql.append(separator).append("ID > ?");
+        }
+        sql.append(" ORDER BY ID DESC");
+        return limit == null ? sql.toString() : sql.append(" LIMIT ?").toString();
+    }
+
+    /**
+     * @return the parameters of the statement returned by {@link #toSql(String)}
+     */
+    JsonArray params() {
+        JsonArray params = new JsonArray();
+        if (symbol != null) {
+            params.add(symbol);
+        }
+        if (from != null) {
+            params.add(from);
+        }
+        if (to != null) {
+            params.add(to);
+        }
+        if (before != null) {
+            params.add(before);
+        }
+        if (after != null) {
+            params.add(after);
+        }
+        return limit == null ? params : params.add(limit);
+    }
+
+    private static Long parseLong(HttpServerRequest request, String name) {
+        String value = request.getParam(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for '" + name + "': " + value);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mapping between the operations received from the portfolio service and the columns of the `AUDIT_OPERATION`
+ * table.
+ */
+final class Operations {
+
+    /**
+     * The selected columns, in the order expected by {@link #fromRow(JsonArray)}.
+     */
+    static final String COLUMNS = "ID, ACTION, SYMBOL, NAME, AMOUNT, PRICE, OWNED, TS";
+
+    private Operations() {
+        // Avoid direct instantiation.
+    }
+
+    /**
+     * Extracts the insertion parameters (action, symbol, name, amount, price, owned, timestamp) of an operation. The
+     * price is the ask for a purchase and the bid for a sale, i.e. what the portfolio paid or received per share.
+     *
+     * @param operation the operation sent by the portfolio service
+     * @return the parameters of the insert statement
+     */
+    static JsonArray toParams(JsonObject operation) {
+        JsonObject quote = quote(operation);
+        String action = operation.getString("action");
+        Double price = quote.getDouble("SELL".equals(action) ? "bid" : "ask");
+        String name = quote.getString("name");
+        return new JsonArray()
+                .add(action)
+                .add(quote.getString("symbol", name))
+                .add(name)
+                .add(operation.getInteger("amount"))
+                .add(price)
+                .add(operation.getInteger("owned"))
+                .add(operation.getLong("date", System.currentTimeMillis()));
+    }
+
+    /**
+     * Rebuilds an operation from a row selected with {@link #COLUMNS}, without any JSON parsing.
+     *
+     * @param row the row
+     * @return the operation
+     */
+    static JsonObject fromRow(JsonArray row) {
+        return new JsonObject()
+                .put("id", row.getLong(0))
+                .put("action", row.getString(1))
+                .put("quote", new JsonObject()
+                        .put("symbol", row.getString(2))
+                        .put("name", row.getString(3)))
+                .put("amount", row.getInteger(4))
+                .put("price", row.getDouble(5))
+                .put("owned", row.getInteger(6))
+                .put("date", row.getLong(7));
+    }
+
+    /**
+     * Builds the operation returned by the REST API from the parameters returned by {@link #toParams(JsonObject)}.
+     *
+     * @param id     the id assigned by the store
+     * @param params the insertion parameters
+     * @return the operation
+     */
+    static JsonObject fromParams(long id, JsonArray params) {
+        return new JsonObject()
+                .put("id", id)
+                .put("action", params.getString(0))
+                .put("quote", new JsonObject()
+                        .put("symbol", params.getString(1))
+                        .put("name", params.getString(2)))
+                .put("amount", params.getInteger(3))
+                .put("price", params.getDouble(4))
+                .put("owned", params.getInteger(5))
+                .put("date", params.getLong(6));
+    }
+
+    /**
+     * Extracts the insertion parameters from a row selected with {@link #COLUMNS}.
+     *
+     * @param row the row
+     * @return the parameters, as returned by {@link #toParams(JsonObject)}
+     */
+    static JsonArray paramsFromRow(JsonArray row) {
+        List<Object> params = new ArrayList<>(row.size() - 1);
+        for (int i = 1; i < row.size(); i++) {
+            params.add(row.getValue(i));
+        }
+        return new JsonArray(params);
+    }
+
+    /**
+     * The header line of the CSV export.
+     */
+    static final String CSV_HEADER = "id,action,symbol,name,amount,price,owned,date\n";
+
+    /**
+     * Formats a row selected with {@link #COLUMNS} as a CSV line.
+     *
+     * @param row the row
+     * @return the CSV line, ending with a new line
+     */
+    static String toCsv(JsonArray row) {
+        StringBuilder line = new StringBuilder(64);
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = row.getValue(i);
+            if (value instanceof String) {
+                // Names are quoted, they may contain the separator
+                line.append('"').append(((String) value).replace("\"", "\"\"")).append('"');
+            } else if (value != null) {
+                line.append(value);
+            }
+        }
+        return line.append('\n').toString();
+    }
+
+    private static JsonObject quote(JsonObject operation) {
+        Object quote = operation.getValue("quote");
+        return quote instanceof JsonObject ? (JsonObject) quote : new JsonObject();
+    }
+}
@@ -0,0 +1,284 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Single;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Rebuilds the portfolio (cash and owned shares) at any point in time from the stored operations.
+ * <p>
+ * Every `interval` operations, the current portfolio is saved as a checkpoint of the {@link AuditStore}, named after
+ * the id of its last operation. The index of the checkpoints (operation id and timestamp, ordered by id) is saved in
+ * pages of {@link #INDEX_PAGE} entries, only the last page being rewritten when a checkpoint is added, and a header
+ * holding the number of entries. The portfolio at a time T is the checkpoint preceding T, on which the operations
+ * stored until the next checkpoint and executed before T are replayed: at most `interval` operations, whatever the
+ * length of the history.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class PortfolioHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioHistory.class);
+
+    /**
+     * The number of ids read at once when catching up with the store.
+     */
+    private static final long PAGE = 10000;
+
+    /**
+     * The number of checkpoints by page of the index.
+     */
+    static final int INDEX_PAGE = 100;
+
+    private final AuditStore store;
+    private final String name;
+    private final double initialCash;
+    private final int interval;
+    private final LongPredicate owns;
+
+    // The checkpoint ids and the timestamps of their last operation, both ascending
+    private final List<Long> ids = new ArrayList<>();
+    private final List<Long> timestamps = new ArrayList<>();
+    private State current;
+    private int pending;
+    private boolean saving;
+
+    /**
+     * @param store       the store
+     * @param name        the name of the checkpoints
+     * @param initialCash the cash before the first operation
+     * @param interval    the number of operations between two checkpoints
+     * @param owns        the predicate selecting the ids of the operations of this portfolio
+     */
+    PortfolioHistory(AuditStore store, String name, double initialCash, int interval, LongPredicate owns) {
+        this.store = store;
+        this.name = name;
+        this.initialCash = initialCash;
+        this.interval = interval;
+        this.owns = owns;
+    }
+
+    /**
+     * Loads the checkpoint index and the last checkpoint, and replays the operations stored after it.
+     *
+     * @return a single completed when the current portfolio is rebuilt
+     */
+    Single<Void> open() {
+        return store.loadCheckpoint(name + ".index").flatMap(index -> {
+            int size = index == null ? 0 : index.getInteger("size", 0);
+            int pages = (size + INDEX_PAGE - 1) / INDEX_PAGE;
+            return Observable.range(0, pages)
+                    .concatMap(page -> store.loadCheckpoint(name + ".index." + page).toObservable())
+                    .toList().toSingle()
+                    .map(loaded -> {
+                        for (JsonObject page : loaded) {
+                            for (Object entry : page == null ? new JsonArray() : page.getJsonArray("checkpoints")) {
+                                JsonArray checkpoint = (JsonArray) entry;
+                                // Ignore the entries not counted by the header (interrupted save) and the
+                                // checkpoints ahead of the store (operations lost in a crash)
+                                if (ids.size() < size && checkpoint.getLong(0) <= store.lastId()) {
+                                    ids.add(checkpoint.getLong(0));
+                                    timestamps.add(checkpoint.getLong(1));
+                                }
+                            }
+                        }
+                        return ids.size();
+                    });
+        }).flatMap(size -> size == 0 ? Single.just(initial()) : load(ids.get(size - 1))).flatMap(state -> {
+            current = state;
+            return catchUp(state.lastId);
+        }).map(v -> {
+            log.info("Portfolio rebuilt from {} checkpoint(s), last operation {}", ids.size(), current.lastId);
+            return null;
+        });
+    }
+
+    /**
+     * Applies an operation to the current portfolio.
+     *
+     * @param id     the operation id
+     * @param params the insertion parameters, as returned by {@link Operations#toParams(JsonObject)}
+     */
+    void add(long id, JsonArray params) {
+        current.apply(id, params);
+        if (++pending >= interval && !saving) {
+            checkpoint().subscribe(v -> {
+            }, err -> log.error("Failed to checkpoint the portfolio", err));
+        }
+    }
+
+    /**
+     * @param ts the time
+     * @return the portfolio at the given time, with the id of the checkpoint it was rebuilt from and the number of
+     * replayed operations
+     */
+    Single<JsonObject> at(long ts) {
+        // The last checkpoint at or before the time, and the next one
+        int next = firstAfter(ts);
+        Long base = next == 0 ? null : ids.get(next - 1);
+        long afterId = base == null ? Long.MIN_VALUE : base;
+        long beforeId = next == ids.size() ? Long.MAX_VALUE : ids.get(next) + 1;
+        Single<State> state = base == null ? Single.just(initial()) : load(base);
+        return state.flatMap(s -> store.query(OperationQuery.between(afterId, beforeId, ts)).map(rows -> {
+            replay(s, rows);
+            return s.toJson()
+                    .put("at", ts)
+                    .put("checkpoint", base)
+                    .put("replayed", rows.size());
+        }));
+    }
+
+    /**
+     * @return the number of checkpoints in the index
+     */
+    int checkpoints() {
+        return ids.size();
+    }
+
+    /**
+     * Saves a checkpoint of the current portfolio if operations were applied since the last one.
+     *
+     * @return a single completed when the checkpoint and the index are saved
+     */
+    Single<Void> checkpoint() {
+        if (pending == 0 || saving) {
+            return Single.just(null);
+        }
+        State state = current.copy();
+        pending = 0;
+        saving = true;
+        return store.saveCheckpoint(name + "." + state.lastId, state.toJson())
+                .flatMap(v -> {
+                    ids.add(state.lastId);
+                    timestamps.add(state.lastTs);
+                    // Rewrite the last page only, then count the new entry in the header
+                    int page = (ids.size() - 1) / INDEX_PAGE;
+                    JsonArray entries = new JsonArray();
+                    for (int i = page * INDEX_PAGE; i < ids.size(); i++) {
+                        entries.add(new JsonArray().add(ids.get(i)).add(timestamps.get(i)));
+                    }
+                    JsonObject header = new JsonObject().put("size", ids.size());
+                    return store.saveCheckpoint(name + ".index." + page, new JsonObject().put("checkpoints", entries))
+                            .flatMap(saved -> store.saveCheckpoint(name + ".index", header));
+                })
+                // Before the completion is emitted, so a checkpoint can be chained
+                .doOnSuccess(v -> saving = false)
+                .doOnError(err -> saving = false);
+    }
+
+    private int firstAfter(long ts) {
+        // The timestamps are ascending, as the last timestamp of a checkpoint is the maximum of its operations
+        int low = 0;
+        int high = timestamps.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps.get(middle) <= ts) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private Single<Void> catchUp(long afterId) {
+        if (afterId >= store.lastId()) {
+            return Single.just(null);
+        }
+        long beforeId = afterId < 0 ? PAGE : afterId + PAGE;
+        return store.query(OperationQuery.between(afterId, beforeId, Long.MAX_VALUE)).flatMap(rows -> {
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                if (owns.test(rows.get(i).getLong(0))) {
+                    add(rows.get(i).getLong(0), Operations.paramsFromRow(rows.get(i)));
+                }
+            }
+            return catchUp(beforeId - 1);
+        });
+    }
+
+    private void replay(State state, List<JsonArray> rows) {
+        // The rows are the most recent first
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            if (owns.test(rows.get(i).getLong(0))) {
+                state.apply(rows.get(i).getLong(0), Operations.paramsFromRow(rows.get(i)));
+            }
+        }
+    }
+
+    private Single<State> load(long id) {
+        return store.loadCheckpoint(name + "." + id).map(json -> json == null ? initial() : State.fromJson(json));
+    }
+
+    private State initial() {
+        State state = new State();
+        state.cash = initialCash;
+        return state;
+    }
+
+    /**
+     * The portfolio after an operation.
+     */
+    private static class State {
+        long lastId = -1;
+        long lastTs = Long.MIN_VALUE;
+        double cash;
+        final Map<String, Integer> shares = new HashMap<>();
+
+        void apply(long id, JsonArray params) {
+            lastId = Math.max(lastId, id);
+            lastTs = Math.max(lastTs, params.getLong(6));
+            String symbol = params.getString(1);
+            Integer amount = params.getInteger(3);
+            Double price = params.getDouble(4);
+            if (symbol == null || amount == null || price == null) {
+                return;
+            }
+            boolean sell = "SELL".equals(params.getString(0));
+            cash += sell ? amount * price : -amount * price;
+            Integer owned = params.getInteger(5);
+            int held = owned != null ? owned : shares.getOrDefault(symbol, 0) + (sell ? -amount : amount);
+            if (held == 0) {
+                shares.remove(symbol);
+            } else {
+                shares.put(symbol, held);
+            }
+        }
+
+        State copy() {
+            State copy = new State();
+            copy.lastId = lastId;
+            copy.lastTs = lastTs;
+            copy.cash = cash;
+            copy.shares.putAll(shares);
+            return copy;
+        }
+
+        JsonObject toJson() {
+            JsonObject owned = new JsonObject();
+            shares.forEach(owned::put);
+            return new JsonObject()
+                    .put("lastId", lastId)
+                    .put("lastTs", lastTs)
+                    .put("cash", cash)
+                    .put("shares", owned);
+        }
+
+        static State fromJson(JsonObject json) {
+            State state = new State();
+            state.lastId = json.getLong("lastId");
+            state.lastTs = json.getLong("lastTs");
+            state.cash = json.getDouble("cash");
+            json.getJsonObject("shares").forEach(entry -> state.shares.put(entry.getKey(), (Integer) entry.getValue()));
+            return state;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.buffer.Buffer;
+
+/**
+ * A bounded ring of the most recent operations, used to serve the unfiltered reads of the REST API without touching
+ * the database.
+ * <p>
+ * The response for the default page size is encoded once and reused until a new operation is added, so the polled
+ * `GET /` is a buffer write.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class RecentOperations {
+
+    private final JsonObject[] ring;
+    private int head;
+    private int size;
+
+    private Buffer encoded;
+
+    /**
+     * @param capacity the maximum number of kept operations
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    RecentOperations(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The number of recent operations must be greater than 0: " + capacity);
+        }
+        this.ring = new JsonObject[capacity];
+    }
+
+    /**
+     * @return the maximum number of kept operations
+     */
+    int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Adds an operation, evicting the oldest one if the ring is full.
+     *
+     * @param operation the operation, in the format returned by the REST API
+     */
+    void add(JsonObject operation) {
+        ring[(head + size) % ring.length] = operation;
+        if (size == ring.length) {
+            head = (head + 1) % ring.length;
+        } else {
+            size++;
+        }
+        encoded = null;
+    }
+
+    /**
+     * @param limit the maximum number of operations
+     * @return the most recent operations, the most recent first
+     */
+    JsonArray latest(int limit) {
+        JsonArray operations = new JsonArray();
+        for (int i = 1; i <= Math.min(limit, size); i++) {
+            operations.add(ring[(head + size - i) % ring.length]);
+        }
+        return operations;
+    }
+
+    /**
+     * @param limit the maximum number of operations
+     * @return the id of the oldest operation returned by {@link #latest(int)}, the cursor of the next page, or
+     * {@code null} if the ring is empty
+     */
+    Long nextBefore(int limit) {
+        if (size == 0) {
+            return null;
+        }
+        return ring[(head + size - Math.min(limit, size)) % ring.length].getLong("id");
+    }
+
+    /**
+     * @return the encoded response for the default page size
+     */
+    Buffer encoded() {
+        if (encoded == null) {
+            encoded = Buffer.buffer(latest(OperationQuery.DEFAULT_LIMIT).encode());
+        }
+        return encoded;
+    }
+}
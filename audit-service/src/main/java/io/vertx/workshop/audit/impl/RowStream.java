@@ -0,0 +1,32 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * A stream of rows read from an {@link AuditStore}. The resources are released when the end handler is called, or
+ * when the stream is closed before its end.
+ */
+interface RowStream extends ReadStream<JsonArray> {
+
+    @Override
+    RowStream exceptionHandler(Handler<Throwable> handler);
+
+    @Override
+    RowStream handler(Handler<JsonArray> handler);
+
+    @Override
+    RowStream pause();
+
+    @Override
+    RowStream resume();
+
+    @Override
+    RowStream endHandler(Handler<Void> endHandler);
+
+    /**
+     * Closes the stream before its end.
+     */
+    void close();
+}
@@ -0,0 +1,484 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Single;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An {@link AuditStore} appending the operations to an embedded, segmented log.
+ * <p>
+ * Operations are appended to the memory-mapped active {@link LogSegment}, without any system call. When it is full, a
+ * new segment is started and the previous one is sealed (compressed and indexed) on a worker thread. Sealed segments
+ * older than the retention period are deleted. Queries scan the segments and their blocks from the most recent,
+ * skipping the blocks excluded by the sparse index. Checkpoints are stored as `<name>.checkpoint` files next to the
+ * segments.
+ * <p>
+ * The store is configured with:
+ * <ul>
+ * <li>`log.directory`: the directory of the segments (`audit-log` by default)</li>
+ * <li>`log.segment.size`: the size of a segment, in bytes (16 MB by default)</li>
+ * <li>`log.block.size`: the size of the indexed blocks, in bytes (64 KB by default)</li>
+ * <li>`log.compress`: whether the sealed segments are compressed (true by default)</li>
+ * <li>`log.retention`: the age after which the sealed segments are deleted, in ms (0, i.e. never, by default)</li>
+ * <li>`log.flush.interval`: the interval between two writes of the active segment to the disk, in ms (1000 by
+ * default)</li>
+ * <li>`id.stride` and `id.offset`: the operation ids are congruent to the offset modulo the stride (1 and 0 by
+ * default), as in the {@link JdbcAuditStore}</li>
+ * </ul>
+ */
+class SegmentedLogStore implements AuditStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedLogStore.class);
+
+    private static final String CHECKPOINT = ".checkpoint";
+
+    private final Vertx vertx;
+    private final File directory;
+    private final int segmentSize;
+    private final int blockSize;
+    private final boolean compress;
+    private final long retention;
+    private final long flushInterval;
+    private final long idStride;
+    private final long idOffset;
+
+    // The segments, the oldest first. Read by the queries from worker threads.
+    private final List<LogSegment> segments = new CopyOnWriteArrayList<>();
+    private LogSegment active;
+    private long nextId;
+    private boolean dirty;
+    private long timer = -1;
+
+    // Metrics
+    private long appended;
+    private long rolled;
+    private long deleted;
+    private long failures;
+
+    SegmentedLogStore(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.directory = new File(config.getString("log.directory", "audit-log"));
+        this.segmentSize = config.getInteger("log.segment.size", 16 * 1024 * 1024);
+        this.blockSize = config.getInteger("log.block.size", 64 * 1024);
+        this.compress = config.getBoolean("log.compress", true);
+        this.retention = config.getLong("log.retention", 0L);
+        this.flushInterval = config.getLong("log.flush.interval", 1000L);
+        this.idStride = config.getInteger("id.stride", 1);
+        this.idOffset = config.getInteger("id.offset", 0);
+    }
+
+    @Override
+    public Single<Void> open(boolean drop) {
+        return vertx.<Void>rxExecuteBlocking(future -> {
+            try {
+                openSegments(drop);
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true).map(v -> {
+            timer = vertx.setPeriodic(flushInterval, l -> {
+                flush();
+                applyRetention();
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public long append(JsonArray params) {
+        long ts = params.getLong(6);
+        if (!active.append(nextId, ts, params)) {
+            try {
+                roll();
+            } catch (IOException e) {
+                log.error("Failed to create a new segment in {}", directory, e);
+                failures++;
+                return -1;
+            }
+            if (!active.append(nextId, ts, params)) {
+                log.error("The operation {} does not fit in a segment", params);
+                failures++;
+                return -1;
+            }
+        }
+        appended++;
+        dirty = true;
+        long id = nextId;
+        nextId += idStride;
+        return id;
+    }
+
+    @Override
+    public int backlog() {
+        // The operations are written in the mapped segment when appended
+        return 0;
+    }
+
+    @Override
+    public void drainHandler(Handler<Void> handler) {
+        // Never called, nothing is deferred
+    }
+
+    @Override
+    public long lastId() {
+        return nextId - idStride;
+    }
+
+    @Override
+    public Single<List<JsonArray>> query(OperationQuery query) {
+        BlockCursor cursor = new BlockCursor(new ArrayList<>(segments), query);
+        return vertx.<List<JsonArray>>rxExecuteBlocking(future -> {
+            Integer limit = query.limit();
+            List<JsonArray> rows = new ArrayList<>();
+            try {
+                List<JsonArray> block;
+                while ((limit == null || rows.size() < limit) && (block = cursor.next()) != null) {
+                    rows.addAll(limit == null ? block : block.subList(0, Math.min(block.size(), limit - rows.size())));
+                }
+                future.complete(rows);
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, false);
+    }
+
+    @Override
+    public Single<RowStream> stream(OperationQuery query) {
+        return Single.just(new LogRowStream(new BlockCursor(new ArrayList<>(segments), query), query.limit()));
+    }
+
+    @Override
+    public Single<JsonObject> loadCheckpoint(String name) {
+        File file = new File(directory, name + CHECKPOINT);
+        return vertx.<JsonObject>rxExecuteBlocking(future -> {
+            try {
+                future.complete(file.isFile() ? new JsonObject(new String(Files.readAllBytes(file.toPath()),
+                        StandardCharsets.UTF_8)) : null);
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true);
+    }
+
+    @Override
+    public Single<Void> saveCheckpoint(String name, JsonObject state) {
+        File file = new File(directory, name + CHECKPOINT);
+        File tmp = new File(directory, name + CHECKPOINT + ".tmp");
+        byte[] content = state.encode().getBytes(StandardCharsets.UTF_8);
+        return vertx.<Void>rxExecuteBlocking(future -> {
+            try {
+                Files.write(tmp.toPath(), content);
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true);
+    }
+
+    @Override
+    public JsonObject metrics() {
+        long bytes = 0;
+        int sealed = 0;
+        for (LogSegment segment : segments) {
+            bytes += segment.size();
+            sealed += segment.sealed() ? 1 : 0;
+        }
+        return new JsonObject()
+                .put("appended", appended)
+                .put("failures", failures)
+                .put("segments", segments.size())
+                .put("sealedSegments", sealed)
+                .put("rolledSegments", rolled)
+                .put("deletedSegments", deleted)
+                .put("bytes", bytes)
+                .put("lastId", lastId());
+    }
+
+    @Override
+    public Single<Void> close() {
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+        LogSegment last = active;
+        // Ordered, so executed after the pending seals
+        return vertx.<Void>rxExecuteBlocking(future -> {
+            if (last != null) {
+                last.force();
+            }
+            future.complete();
+        }, true);
+    }
+
+    private void openSegments(boolean drop) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the log directory " + directory);
+        }
+        TreeSet<Long> baseIds = new TreeSet<>();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            if (drop && (name.matches("\\d{20}\\..*") || name.contains(CHECKPOINT))) {
+                file.delete();
+            } else if (name.matches("\\d{20}\\.z?log")) {
+                baseIds.add(Long.parseLong(name.substring(0, name.indexOf('.'))));
+            }
+        }
+
+        for (Long baseId : baseIds) {
+            LogSegment segment;
+            if (LogSegment.file(directory, baseId, LogSegment.INDEX).exists()) {
+                segment = LogSegment.load(directory, baseId);
+            } else {
+                segment = LogSegment.recover(directory, baseId, blockSize);
+                if (!baseId.equals(baseIds.last())) {
+                    // Not sealed because of a crash
+                    segment.seal(compress);
+                }
+            }
+            segments.add(segment);
+            nextId = segment.lastId() + 1;
+        }
+        // The first id after the last one, congruent to the offset
+        nextId += Math.floorMod(idOffset - nextId, idStride);
+
+        if (segments.isEmpty() || segments.get(segments.size() - 1).sealed()) {
+            segments.add(LogSegment.create(directory, nextId, segmentSize, blockSize));
+        }
+        active = segments.get(segments.size() - 1);
+        log.info("Audit log opened in {} with {} segment(s), next operation id: {}",
+                directory, segments.size(), nextId);
+    }
+
+    private void roll() throws IOException {
+        LogSegment full = active;
+        // Mapping the new (sparse) file is cheap, only the sealing is moved to a worker
+        active = LogSegment.create(directory, nextId, segmentSize, blockSize);
+        segments.add(active);
+        rolled++;
+        vertx.<Void>rxExecuteBlocking(future -> {
+            try {
+                full.seal(compress);
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true).subscribe(v -> {
+        }, err -> log.error("Failed to seal the segment {}", full.baseId(), err));
+    }
+
+    private void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        LogSegment segment = active;
+        vertx.<Void>rxExecuteBlocking(future -> {
+            segment.force();
+            future.complete();
+        }, true).subscribe(v -> {
+        }, err -> log.error("Failed to write the segment {}", segment.baseId(), err));
+    }
+
+    private void applyRetention() {
+        if (retention <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retention;
+        for (LogSegment segment : segments) {
+            if (segment != active && segment.sealed() && segment.maxTs() < cutoff) {
+                // Removed first, so new queries do not read it
+                segments.remove(segment);
+                deleted++;
+                vertx.<Void>rxExecuteBlocking(future -> {
+                    segment.delete();
+                    future.complete();
+                }, true).subscribe(v -> log.info("Deleted the audit log segment {}", segment.baseId()),
+                        err -> log.error("Failed to delete the segment {}", segment.baseId(), err));
+            }
+        }
+    }
+
+    /**
+     * Iterates over the blocks of a snapshot of the segments, from the most recent, skipping the blocks that cannot
+     * match the query. Blocking, to use from a worker thread.
+     */
+    private static class BlockCursor {
+
+        private final List<LogSegment> segments;
+        private final OperationQuery query;
+        private int segment;
+        private List<LogSegment.Block> blocks;
+        private int block = -1;
+
+        BlockCursor(List<LogSegment> segments, OperationQuery query) {
+            this.segments = segments;
+            this.query = query;
+            this.segment = segments.size();
+        }
+
+        /**
+         * @return the matching rows of the next block containing any, the most recent first, {@code null} at the end
+         */
+        List<JsonArray> next() throws IOException {
+            while (true) {
+                while (block < 0) {
+                    if (--segment < 0) {
+                        return null;
+                    }
+                    blocks = segments.get(segment).blocks();
+                    block = blocks.size() - 1;
+                }
+                LogSegment.Block candidate = blocks.get(block--);
+                if (candidate.end == candidate.start || !query.mayMatch(
+                        candidate.firstId, candidate.lastId, candidate.minTs, candidate.maxTs)) {
+                    continue;
+                }
+                try {
+                    List<JsonArray> rows = segments.get(segment).read(candidate, query);
+                    if (!rows.isEmpty()) {
+                        return rows;
+                    }
+                } catch (NoSuchFileException e) {
+                    // Deleted by the retention meanwhile, skip the segment
+                    block = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link RowStream} reading the blocks one at a time on a worker thread, the next block being read when the
+     * rows of the previous one have been emitted.
+     */
+    private class LogRowStream implements RowStream {
+
+        private final BlockCursor cursor;
+        private final Deque<JsonArray> pending = new ArrayDeque<>();
+        private Integer remaining;
+        private Handler<JsonArray> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+        private boolean paused;
+        private boolean reading;
+        private boolean closed;
+
+        LogRowStream(BlockCursor cursor, Integer limit) {
+            this.cursor = cursor;
+            this.remaining = limit;
+        }
+
+        @Override
+        public RowStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public RowStream handler(Handler<JsonArray> handler) {
+            this.handler = handler;
+            if (handler != null) {
+                vertx.runOnContext(v -> emit());
+            }
+            return this;
+        }
+
+        @Override
+        public RowStream pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public RowStream resume() {
+            if (paused) {
+                paused = false;
+                emit();
+            }
+            return this;
+        }
+
+        @Override
+        public RowStream endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            pending.clear();
+        }
+
+        private void emit() {
+            while (!paused && !closed && !pending.isEmpty()) {
+                handler.handle(pending.poll());
+                if (remaining != null && --remaining == 0) {
+                    end();
+                    return;
+                }
+            }
+            if (!paused && !closed && !reading) {
+                read();
+            }
+        }
+
+        private void read() {
+            reading = true;
+            vertx.<List<JsonArray>>rxExecuteBlocking(future -> {
+                try {
+                    future.complete(cursor.next());
+                } catch (IOException e) {
+                    future.fail(e);
+                }
+            }, false).subscribe(rows -> {
+                reading = false;
+                if (closed) {
+                    return;
+                }
+                if (rows == null) {
+                    end();
+                } else {
+                    pending.addAll(rows);
+                    emit();
+                }
+            }, err -> {
+                reading = false;
+                if (!closed) {
+                    closed = true;
+                    if (exceptionHandler != null) {
+                        exceptionHandler.handle(err);
+                    }
+                }
+            });
+        }
+
+        private void end() {
+            closed = true;
+            pending.clear();
+            if (endHandler != null) {
+                endHandler.handle(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks the sequence numbers of the portfolio events (`source`, `partition` and `seq` entries) to drop the duplicated
+ * events and count the missing ones. Events without sequence number are accepted.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class SequenceTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(SequenceTracker.class);
+
+    // The next expected sequence number, by source and partition
+    private final Map<String, Long> expected = new HashMap<>();
+
+    private long duplicates;
+    private long gaps;
+    private long missed;
+
+    /**
+     * @param event the event
+     * @return {@code false} if the event has already been received
+     */
+    boolean accept(JsonObject event) {
+        Long seq = event.getLong("seq");
+        if (seq == null) {
+            return true;
+        }
+        String key = event.getString("source") + "/" + event.getInteger("partition");
+        Long next = expected.get(key);
+        if (next != null) {
+            if (seq < next) {
+                duplicates++;
+                return false;
+            }
+            if (seq > next) {
+                gaps++;
+                missed += seq - next;
+                log.warn("Missing events from {}: expected {}, received {}", key, next, seq);
+            }
+        }
+        expected.put(key, seq + 1);
+        return true;
+    }
+
+    /**
+     * @return the number of duplicated events, of gaps, and of missing events
+     */
+    JsonObject metrics() {
+        return new JsonObject()
+                .put("duplicates", duplicates)
+                .put("gaps", gaps)
+                .put("missed", missed);
+    }
+}
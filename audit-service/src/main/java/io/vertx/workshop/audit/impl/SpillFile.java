@@ -0,0 +1,237 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.rxjava.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Single;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A FIFO overflow of insertion parameters on the disk, one JSON array per line.
+ * <p>
+ * Appended operations are buffered in memory and written in batches, in segment files named after the given file
+ * ({@code <file>.<n>}). A segment is closed when it reaches {@link #SEGMENT_SIZE} bytes, or when a read reaches it, so
+ * the reads always consume closed segments, which are deleted once fully read. The file I/O runs in ordered blocking
+ * tasks, so reads see all the previous appends. The operations read from a segment not deleted yet when the process is
+ * killed are read again on the next start. The operations of a failed write are lost, they are counted in
+ * {@link #lost()}.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class SpillFile {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillFile.class);
+
+    private static final int WRITE_BATCH = 100;
+    private static final int READ_CHUNK = 1024 * 1024;
+    static final int SEGMENT_SIZE = 4 * READ_CHUNK;
+
+    private final Vertx vertx;
+    private final File file;
+
+    private List<String> unwritten = new ArrayList<>();
+    private long size;
+    private long total;
+    private long lost;
+
+    // Accessed from the ordered blocking tasks only: the segments, the oldest first, the last one being written
+    private final Deque<File> segments = new ArrayDeque<>();
+    private long sequence;
+    private long readPosition;
+
+    SpillFile(Vertx vertx, File file) {
+        this.vertx = vertx;
+        this.file = file;
+    }
+
+    /**
+     * Opens the overflow. The operations left by a previous run are kept, they are read before the new ones.
+     *
+     * @return the number of operations left by a previous run
+     */
+    Single<Long> open() {
+        return vertx.<Long>rxExecuteBlocking(future -> {
+            File directory = file.getAbsoluteFile().getParentFile();
+            File[] existing = directory.listFiles(f -> f.isFile() && segmentNumber(f) >= 0);
+            long lines = 0;
+            if (existing != null) {
+                Arrays.sort(existing, Comparator.comparingLong(this::segmentNumber));
+                for (File segment : existing) {
+                    try (InputStream in = new BufferedInputStream(new FileInputStream(segment))) {
+                        int b;
+                        while ((b = in.read()) != -1) {
+                            lines += b == '\n' ? 1 : 0;
+                        }
+                    } catch (IOException e) {
+                        future.fail(e);
+                        return;
+                    }
+                    segments.addLast(segment);
+                    sequence = segmentNumber(segment);
+                }
+            }
+            future.complete(lines);
+        }, true).map(lines -> {
+            size = lines;
+            return lines;
+        });
+    }
+
+    /**
+     * @return the number of operations in the overflow
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of operations written in the overflow since the start
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * @return the number of operations lost by a failed write since the start
+     */
+    long lost() {
+        return lost;
+    }
+
+    /**
+     * Appends an operation.
+     *
+     * @param params the insertion parameters
+     */
+    void append(JsonArray params) {
+        unwritten.add(params.encode());
+        size++;
+        total++;
+        if (unwritten.size() >= WRITE_BATCH) {
+            write();
+        }
+    }
+
+    /**
+     * Reads and removes the oldest operations.
+     *
+     * @param max the maximum number of operations
+     * @return the operations, the oldest first
+     */
+    Single<List<JsonArray>> read(int max) {
+        write();
+        return vertx.<List<JsonArray>>rxExecuteBlocking(future -> {
+            List<JsonArray> rows = new ArrayList<>();
+            if (segments.size() == 1) {
+                // The next appends go to a new segment, so the one read can be deleted once fully read
+                rotate();
+            }
+            while (segments.size() > 1 && !segments.peekFirst().isFile()) {
+                // Never written
+                segments.removeFirst();
+                readPosition = 0;
+            }
+            File head = segments.peekFirst();
+            if (head == null || !head.isFile()) {
+                future.complete(rows);
+                return;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(head, "r")) {
+                byte[] chunk = new byte[(int) Math.min(raf.length() - readPosition, READ_CHUNK)];
+                raf.seek(readPosition);
+                raf.readFully(chunk);
+                int start = 0;
+                for (int i = 0; i < chunk.length && rows.size() < max; i++) {
+                    if (chunk[i] == '\n') {
+                        rows.add(new JsonArray(new String(chunk, start, i - start, StandardCharsets.UTF_8)));
+                        start = i + 1;
+                    }
+                }
+                readPosition += start;
+                if (readPosition == raf.length()) {
+                    raf.close();
+                    delete(segments.removeFirst());
+                    readPosition = 0;
+                }
+                future.complete(rows);
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true).map(rows -> {
+            size -= rows.size();
+            return rows;
+        });
+    }
+
+    /**
+     * Writes the buffered operations.
+     *
+     * @return a single completed when they are written
+     */
+    Single<Void> close() {
+        write();
+        return vertx.<Void>rxExecuteBlocking(future -> future.complete(), true);
+    }
+
+    private void write() {
+        if (unwritten.isEmpty()) {
+            return;
+        }
+        List<String> lines = unwritten;
+        unwritten = new ArrayList<>();
+        vertx.<Void>rxExecuteBlocking(future -> {
+            if (segments.isEmpty() || segments.peekLast().length() >= SEGMENT_SIZE) {
+                rotate();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(segments.peekLast(), "rw")) {
+                StringBuilder content = new StringBuilder();
+                lines.forEach(line -> content.append(line).append('\n'));
+                raf.seek(raf.length());
+                raf.write(content.toString().getBytes(StandardCharsets.UTF_8));
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, true).subscribe(v -> {
+        }, err -> {
+            // Not in the file, they will not be read
+            size -= lines.size();
+            lost += lines.size();
+            log.error("Failed to write {} operation(s) in the overflow file {}", lines.size(), file, err);
+        });
+    }
+
+    private void rotate() {
+        segments.addLast(new File(file.getAbsoluteFile().getParentFile(), file.getName() + "." + (++sequence)));
+    }
+
+    private long segmentNumber(File segment) {
+        String prefix = file.getName() + ".";
+        String name = segment.getName();
+        if (!name.startsWith(prefix) || name.length() == prefix.length()
+                || !name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    private static void delete(File segment) {
+        if (!segment.delete() && segment.exists()) {
+            log.warn("Failed to delete the overflow segment {}", segment);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.ext.sql.SQLConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Single;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A write-behind buffer batching the insertion of the audit operations.
+ * <p>
+ * Rows are accumulated in memory and drained with a single `batchWithParams` call over a long-lived connection, one
+ * transaction per batch. A batch is flushed as soon as `batchSize` rows are pending, or every `flushInterval` ms
+ * otherwise. Only one batch is in flight at a time, rows received meanwhile wait for the next one.
+ * <p>
+ * The rows of a failed batch are put back in front of the queue, and retried one by one from the next flush, without
+ * waiting for the timer between them: a row still failing after `maxRetries` attempts (e.g. a value too long for its
+ * column) is logged and dropped as a dead letter, so it does not block the following ones. A failure to connect does not count as an attempt. When the buffer is closed, the rows are
+ * not dropped: the close fails if some of them cannot be written.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class WriteBehindBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private final Vertx vertx;
+    private final JDBCClient jdbc;
+    private final String statement;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxRetries;
+
+    private final Deque<Row> pending = new ArrayDeque<>();
+    private SQLConnection connection;
+    private boolean flushing;
+    private boolean closing;
+    private long timer = -1;
+    private Handler<Void> drainHandler;
+    // Called once the batch in flight completes
+    private final List<Runnable> flushWaiters = new ArrayList<>();
+
+    // Metrics
+    private long batches;
+    private long rows;
+    private long failures;
+    private long deadLetters;
+    private int lastBatchSize;
+    private long lastFlushLatency;
+    private long maxFlushLatency;
+    private long totalFlushLatency;
+    private int maxBacklog;
+
+    WriteBehindBuffer(Vertx vertx, JDBCClient jdbc, String statement, int batchSize, long flushInterval,
+                      int maxRetries) {
+        this.vertx = vertx;
+        this.jdbc = jdbc;
+        this.statement = statement;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Opens the connection used by the batches and starts the flush timer.
+     *
+     * @return a single completed when the buffer is ready
+     */
+    Single<Void> open() {
+        return connect().map(conn -> {
+            timer = vertx.setPeriodic(flushInterval, l -> flush());
+            return null;
+        });
+    }
+
+    /**
+     * Enqueues a row, flushing if a full batch is pending.
+     *
+     * @param params the parameters of the insert statement
+     */
+    void add(JsonArray params) {
+        pending.add(new Row(params));
+        maxBacklog = Math.max(maxBacklog, pending.size());
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * @return the number of rows not yet written in the database (pending or in flight).
+     */
+    int backlog() {
+        return pending.size() + (flushing ? lastBatchSize : 0);
+    }
+
+    /**
+     * Sets the handler called each time a batch has been written, i.e. when the backlog decreases.
+     *
+     * @param handler the handler
+     */
+    void drainHandler(Handler<Void> handler) {
+        this.drainHandler = handler;
+    }
+
+    /**
+     * Writes the next batch, unless one is already in flight or nothing is pending. The next batch is written right
+     * away if a full batch or retried rows are pending, unless the batch failed without dropping a row: the retry then
+     * waits for the next flush.
+     */
+    void flush() {
+        if (flushing || pending.isEmpty()) {
+            return;
+        }
+        long dropped = deadLetters;
+        write(succeeded -> {
+            if ((succeeded || deadLetters > dropped) && (pending.size() >= batchSize || retrying())) {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Waits for the batch in flight, writes the pending rows (reconnecting if needed) and closes the connection.
+     *
+     * @return a single completed when the buffer is closed, failed if rows could not be written
+     */
+    Single<Void> close() {
+        if (timer != -1) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+        closing = true;
+        return Single.create(subscriber -> drain(subscriber::onSuccess, subscriber::onError));
+    }
+
+    private void drain(Handler<Void> done, Handler<Throwable> failed) {
+        if (flushing) {
+            flushWaiters.add(() -> drain(done, failed));
+        } else if (pending.isEmpty()) {
+            closeConnection();
+            done.handle(null);
+        } else {
+            write(succeeded -> {
+                if (succeeded) {
+                    drain(done, failed);
+                } else {
+                    closeConnection();
+                    failed.handle(new IllegalStateException(pending.size() + " operations could not be written"));
+                }
+            });
+        }
+    }
+
+    private void write(Handler<Boolean> done) {
+        flushing = true;
+        List<Row> batch = nextBatch();
+        lastBatchSize = batch.size();
+        long begin = System.nanoTime();
+
+        Single<SQLConnection> connectionReady = connection != null ? Single.just(connection) : connect();
+        connectionReady.subscribe(conn -> {
+            List<JsonArray> params = new ArrayList<>(batch.size());
+            batch.forEach(row -> params.add(row.params));
+            conn.rxBatchWithParams(statement, params)
+                    .flatMap(result -> conn.rxCommit())
+                    .doOnError(err -> rollback(conn))
+                    .subscribe(v -> {
+                        long latency = (System.nanoTime() - begin) / 1_000_000;
+                        batches++;
+                        rows += batch.size();
+                        lastFlushLatency = latency;
+                        totalFlushLatency += latency;
+                        maxFlushLatency = Math.max(maxFlushLatency, latency);
+                        completed(done, true);
+                        if (drainHandler != null) {
+                            drainHandler.handle(null);
+                        }
+                    }, err -> {
+                        log.error("Failed to insert a batch of {} operations in database", batch.size(), err);
+                        requeue(batch, true);
+                        completed(done, false);
+                    });
+        }, err -> {
+            log.error("Failed to connect to the database", err);
+            requeue(batch, false);
+            completed(done, false);
+        });
+    }
+
+    private boolean retrying() {
+        return !pending.isEmpty() && pending.peek().attempts > 0;
+    }
+
+    private List<Row> nextBatch() {
+        // A row that failed is retried alone, to tell the faulty rows from the others
+        List<Row> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        if (pending.peek().attempts > 0) {
+            batch.add(pending.poll());
+            return batch;
+        }
+        while (batch.size() < batchSize && !pending.isEmpty() && pending.peek().attempts == 0) {
+            batch.add(pending.poll());
+        }
+        return batch;
+    }
+
+    private void requeue(List<Row> batch, boolean attempted) {
+        failures++;
+        // Put the batch back in front of the queue, it is retried on the next flush.
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Row row = batch.get(i);
+            if (attempted && ++row.attempts > maxRetries && batch.size() == 1 && !closing) {
+                deadLetters++;
+                log.error("Dropping the operation {} after {} failed insertions", row.params, row.attempts);
+            } else {
+                pending.addFirst(row);
+            }
+        }
+    }
+
+    private void completed(Handler<Boolean> done, boolean succeeded) {
+        flushing = false;
+        done.handle(succeeded);
+        List<Runnable> waiters = new ArrayList<>(flushWaiters);
+        flushWaiters.clear();
+        waiters.forEach(Runnable::run);
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    /**
+     * @return the metrics of the buffer: batches, rows, failures, dead letters, backlog, batch sizes and flush
+     * latencies (ms).
+     */
+    JsonObject metrics() {
+        return new JsonObject()
+                .put("batches", batches)
+                .put("rows", rows)
+                .put("failures", failures)
+                .put("deadLetters", deadLetters)
+                .put("backlog", backlog())
+                .put("maxBacklog", maxBacklog)
+                .put("lastBatchSize", lastBatchSize)
+                .put("avgBatchSize", batches == 0 ? 0.0 : (double) rows / batches)
+                .put("lastFlushLatency", lastFlushLatency)
+                .put("avgFlushLatency", batches == 0 ? 0.0 : (double) totalFlushLatency / batches)
+                .put("maxFlushLatency", maxFlushLatency);
+    }
+
+    private Single<SQLConnection> connect() {
+        return jdbc.rxGetConnection()
+                .flatMap(conn -> conn.rxSetAutoCommit(false)
+                        .doOnError(err -> conn.close())
+                        .map(v -> {
+                            connection = conn;
+                            return conn;
+                        }));
+    }
+
+    private void rollback(SQLConnection conn) {
+        // The connection may be broken, drop it and open a new one on the next flush.
+        conn.rxRollback().doAfterTerminate(conn::close).subscribe(v -> {
+        }, err -> log.warn("Failed to rollback the batch", err));
+        if (connection == conn) {
+            connection = null;
+        }
+    }
+
+    /**
+     * A pending row, with its number of failed insertions.
+     */
+    private static class Row {
+        final JsonArray params;
+        int attempts;
+
+        Row(JsonArray params) {
+            this.params = params;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.codec.BodyCodec;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.ServiceDiscoveryOptions;
+import io.vertx.servicediscovery.impl.DefaultServiceDiscoveryBackend;
+import io.vertx.servicediscovery.types.MessageSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class AuditVerticleTest {
+
+  private final static JsonObject CONFIGURATION = new JsonObject()
+      .put("url", "jdbc:hsqldb:mem:audit?shutdown=true")
+      .put("driverclass", "org.hsqldb.jdbcDriver")
+      .put("drop", true)
+      .put("backend-name", DefaultServiceDiscoveryBackend.class.getName())
+      .put("batch.interval", 10)
+      .put("http.port", 8081);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private WebClient client;
+
+  @Before
+  public void setUp(TestContext tc) {
+    Async async = tc.async();
+    vertx = Vertx.vertx();
+    client = WebClient.create(vertx);
+    Record record = MessageSource.createRecord("portfolio-events", "portfolio", JsonObject.class);
+    ServiceDiscovery.create(vertx, new ServiceDiscoveryOptions()
+        .setBackendConfiguration(new JsonObject().put("backend-name", DefaultServiceDiscoveryBackend.class.getName())))
+        .publish(record, r -> {
+          if (r.failed()) {
+            tc.fail(r.cause());
+          }
+          vertx.deployVerticle(AuditVerticle.class.getName(), new DeploymentOptions().setConfig(CONFIGURATION),
+              tc.asyncAssertSuccess(s -> async.complete()));
+        });
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testInsertion(TestContext tc) {
+    Async async = tc.async();
+    vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", 1000L));
+
+    vertx.setTimer(200, l -> get("/", tc, operations -> {
+      tc.assertEquals(operations.size(), 1);
+      JsonObject operation = operations.getJsonObject(0);
+      tc.assertEquals(operation.getString("action"), "BUY");
+      tc.assertEquals(operation.getInteger("amount"), 10);
+      tc.assertEquals(operation.getDouble("price"), 12.0);
+      tc.assertEquals(operation.getJsonObject("quote").getString("name"), "MacroHard");
+      async.complete();
+    }));
+  }
+
+  @Test
+  public void testMultipleInsertion(TestContext tc) {
+    Async async = tc.async();
+    for (int i = 0; i < 12; i++) {
+      vertx.eventBus().publish("portfolio", operation(i % 2 == 0 ? "BUY" : "SELL", "MacroHard", "MCH", i));
+    }
+
+    vertx.setTimer(200, l -> client.get(8081, "localhost", "/").as(BodyCodec.jsonArray())
+        .send(tc.asyncAssertSuccess(response -> {
+          JsonArray operations = response.body();
+          tc.assertEquals(operations.size(), 10);
+          // Most recent first
+          tc.assertEquals(operations.getJsonObject(0).getLong("date"), 11L);
+          // The cursor of the next page, served from memory too
+          String next = response.getHeader("X-Next-Before");
+          tc.assertEquals(next, String.valueOf(operations.getJsonObject(9).getLong("id")));
+          get("/?before=" + next, tc, page2 -> {
+            tc.assertEquals(page2.size(), 2);
+            tc.assertEquals(page2.getJsonObject(0).getLong("date"), 1L);
+            async.complete();
+          });
+        })));
+  }
+
+  @Test
+  public void testFilters(TestContext tc) {
+    Async async = tc.async();
+    for (int i = 0; i < 10; i++) {
+      vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", i));
+      vertx.eventBus().publish("portfolio", operation("SELL", "Divinator", "DVN", i));
+    }
+
+    vertx.setTimer(200, l -> get("/?symbol=DVN&limit=100", tc, bySymbol -> {
+      tc.assertEquals(bySymbol.size(), 10);
+      get("/?symbol=MCH&from=3&to=5", tc, byRange -> {
+        tc.assertEquals(byRange.size(), 3);
+        byRange.forEach(o -> tc.assertEquals(((JsonObject) o).getJsonObject("quote").getString("symbol"), "MCH"));
+        client.get(8081, "localhost", "/?from=yesterday").send(tc.asyncAssertSuccess(response -> {
+          tc.assertEquals(response.statusCode(), 400);
+          async.complete();
+        }));
+      });
+    }));
+  }
+
+  @Test
+  public void testPaginationAndStreaming(TestContext tc) {
+    Async async = tc.async();
+    for (int i = 0; i < 25; i++) {
+      vertx.eventBus().publish("portfolio", operation("BUY", "Black \"Coat\", Inc", "BCT", i));
+    }
+
+    vertx.setTimer(200, l -> get("/?symbol=BCT&limit=20", tc, page1 -> {
+      tc.assertEquals(page1.size(), 20);
+      long last = page1.getJsonObject(19).getLong("id");
+      get("/?symbol=BCT&limit=20&before=" + last, tc, page2 -> {
+        tc.assertEquals(page2.size(), 5);
+        tc.assertTrue(page2.getJsonObject(0).getLong("id") < last);
+        client.get(8081, "localhost", "/?format=ndjson").send(tc.asyncAssertSuccess(ndjson -> {
+          String[] lines = ndjson.bodyAsString().split("\n");
+          tc.assertEquals(lines.length, 25);
+          tc.assertEquals(new JsonObject(lines[24]).getLong("date"), 0L);
+          client.get(8081, "localhost", "/?format=csv&limit=2").send(tc.asyncAssertSuccess(csv -> {
+            String[] rows = csv.bodyAsString().split("\n");
+            tc.assertEquals(rows.length, 3);
+            tc.assertTrue(rows[1].contains("\"Black \"\"Coat\"\", Inc\""));
+            async.complete();
+          }));
+        }));
+      });
+    }));
+  }
+
+  @Test
+  public void testRecentOperationsAreReloaded(TestContext tc) {
+    Async async = tc.async();
+    for (int i = 0; i < 5; i++) {
+      vertx.eventBus().publish("portfolio", operation("SELL", "Divinator", "DVN", i));
+    }
+
+    // Served from memory, before the batch is written
+    get("/", tc, operations -> {
+      tc.assertEquals(operations.size(), 5);
+      tc.assertEquals(operations.getJsonObject(0).getLong("date"), 4L);
+
+      // Redeploy the verticle, the ring is filled from the database
+      vertx.setTimer(200, l -> vertx.undeploy(vertx.deploymentIDs().iterator().next(), tc.asyncAssertSuccess(v ->
+          vertx.deployVerticle(AuditVerticle.class.getName(),
+              new DeploymentOptions().setConfig(CONFIGURATION.copy().put("drop", false)),
+              tc.asyncAssertSuccess(id -> get("/?limit=3", tc, reloaded -> {
+                tc.assertEquals(reloaded.size(), 3);
+                tc.assertEquals(reloaded.getJsonObject(0).getLong("date"), 4L);
+                tc.assertNotNull(reloaded.getJsonObject(0).getLong("id"));
+                async.complete();
+              }))))));
+    });
+  }
+
+  @Test
+  public void testAggregates(TestContext tc) {
+    Async async = tc.async();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 4; i++) {
+      vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", now));
+    }
+    vertx.eventBus().publish("portfolio", operation("SELL", "Divinator", "DVN", now));
+    // Older than the default span, not aggregated
+    vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", now - 2 * 3600 * 1000));
+
+    vertx.setTimer(200, l -> getObject("/aggregates/MCH?window=60000", tc, mch -> {
+      tc.assertEquals(mch.getLong("count"), 4L);
+      tc.assertEquals(mch.getLong("volume"), 40L);
+      tc.assertEquals(mch.getDouble("notional"), 480.0);
+      client.get(8081, "localhost", "/aggregates?window=-1").send(tc.asyncAssertSuccess(response -> {
+        tc.assertEquals(response.statusCode(), 400);
+
+        // Redeploy the verticle, the aggregates are restored from the checkpoint
+        vertx.undeploy(vertx.deploymentIDs().iterator().next(), tc.asyncAssertSuccess(v ->
+            vertx.deployVerticle(AuditVerticle.class.getName(),
+                new DeploymentOptions().setConfig(CONFIGURATION.copy().put("drop", false)),
+                tc.asyncAssertSuccess(id -> getObject("/aggregates", tc, all -> {
+                  tc.assertEquals(all.getJsonObject("MCH").getLong("count"), 4L);
+                  tc.assertEquals(all.getJsonObject("DVN").getLong("volume"), 10L);
+                  async.complete();
+                })))));
+      }));
+    }));
+  }
+
+  @Test
+  public void testAnalytics(TestContext tc) {
+    Async async = tc.async();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 3; i++) {
+      vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", now - i * 3600 * 1000));
+    }
+    vertx.eventBus().publish("portfolio", operation("SELL", "MacroHard", "MCH", now));
+    vertx.eventBus().publish("portfolio", operation("SELL", "Divinator", "DVN", now));
+
+    vertx.setTimer(200, l -> getObject("/analytics?groupBy=symbol,action&symbol=MCH", tc, result -> {
+      JsonArray rows = result.getJsonArray("rows");
+      tc.assertEquals(rows.size(), 2);
+      for (int i = 0; i < rows.size(); i++) {
+        JsonObject row = rows.getJsonObject(i);
+        tc.assertEquals(row.getString("symbol"), "MCH");
+        tc.assertEquals(row.getLong("count"), row.getString("action").equals("BUY") ? 3L : 1L);
+      }
+      tc.assertEquals(result.getJsonObject("stats").getLong("scanned"), 5L);
+      client.get(8081, "localhost", "/analytics?groupBy=week").send(tc.asyncAssertSuccess(response -> {
+        tc.assertEquals(response.statusCode(), 400);
+        client.get(8081, "localhost", "/analytics?from=10000000&to=0").send(tc.asyncAssertSuccess(reversed -> {
+          tc.assertEquals(reversed.statusCode(), 400);
+
+          // Redeploy the verticle, the projection is loaded from the store
+          vertx.undeploy(vertx.deploymentIDs().iterator().next(), tc.asyncAssertSuccess(v ->
+              vertx.deployVerticle(AuditVerticle.class.getName(),
+                  new DeploymentOptions().setConfig(CONFIGURATION.copy().put("drop", false)),
+                  tc.asyncAssertSuccess(id -> getObject("/analytics?from=" + (now - 1000), tc, all -> {
+                    JsonObject total = all.getJsonArray("rows").getJsonObject(0);
+                    tc.assertEquals(total.getLong("count"), 3L);
+                    tc.assertEquals(total.getLong("volume"), 30L);
+                    async.complete();
+                  })))));
+        }));
+      }));
+    }));
+  }
+
+  @Test
+  public void testPortfolioAtAPointInTime(TestContext tc) {
+    Async async = tc.async();
+    JsonObject config = CONFIGURATION.copy().put("portfolio.checkpoint.interval", 2);
+    vertx.undeploy(vertx.deploymentIDs().iterator().next(), tc.asyncAssertSuccess(v ->
+        vertx.deployVerticle(AuditVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+            tc.asyncAssertSuccess(id -> {
+              for (int i = 1; i <= 6; i++) {
+                vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", i * 1000));
+              }
+              vertx.eventBus().publish("portfolio", operation("SELL", "Divinator", "DVN", 7000));
+
+              vertx.setTimer(300, l -> getObject("/portfolio?at=3500", tc, portfolio -> {
+                tc.assertEquals(portfolio.getDouble("cash"), 10000.0 - 3 * 120.0);
+                tc.assertEquals(portfolio.getJsonObject("shares").getInteger("MCH"), 10);
+                tc.assertNotNull(portfolio.getLong("checkpoint"));
+                tc.assertTrue(portfolio.getInteger("replayed") <= 2);
+                getObject("/portfolio", tc, now -> {
+                  tc.assertEquals(now.getDouble("cash"), 10000.0 - 6 * 120.0 + 110.0);
+                  tc.assertEquals(now.getJsonObject("shares").size(), 2);
+                  async.complete();
+                });
+              }));
+            }))));
+  }
+
+  @Test
+  public void testOverflow(TestContext tc) throws Exception {
+    Async async = tc.async();
+    JsonObject config = CONFIGURATION.copy()
+        .put("batch.interval", 200)
+        .put("backpressure.high", 5)
+        .put("overflow.file", folder.newFile().getAbsolutePath())
+        .put("metrics.interval", 100);
+    vertx.undeploy(vertx.deploymentIDs().iterator().next(), tc.asyncAssertSuccess(v ->
+        vertx.deployVerticle(AuditVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+            tc.asyncAssertSuccess(id -> {
+              for (int i = 0; i < 50; i++) {
+                vertx.eventBus().publish("portfolio", operation("BUY", "MacroHard", "MCH", i));
+              }
+              boolean[] done = {false};
+              vertx.eventBus().<JsonObject>consumer("audit.metrics", message -> {
+                JsonObject ingestion = message.body().getJsonObject("ingestion");
+                if (!done[0] && ingestion.getLong("overflowTotal") > 0 && ingestion.getLong("overflow") == 0
+                    && ingestion.getInteger("backlog") == 0) {
+                  done[0] = true;
+                  get("/?symbol=MCH&limit=100", tc, operations -> {
+                    tc.assertEquals(operations.size(), 50);
+                    // Stored in order
+                    tc.assertEquals(operations.getJsonObject(0).getLong("date"), 49L);
+                    tc.assertEquals(operations.getJsonObject(49).getLong("date"), 0L);
+                    async.complete();
+                  });
+                }
+              });
+            }))));
+  }
+
+  private void getObject(String uri, TestContext tc, io.vertx.core.Handler<JsonObject> handler) {
+    client.get(8081, "localhost", uri)
+        .as(BodyCodec.jsonObject())
+        .send(tc.asyncAssertSuccess(response -> {
+          tc.assertEquals(response.statusCode(), 200);
+          handler.handle(response.body());
+        }));
+  }
+
+  private void get(String uri, TestContext tc, io.vertx.core.Handler<JsonArray> handler) {
+    client.get(8081, "localhost", uri)
+        .as(BodyCodec.jsonArray())
+        .send(tc.asyncAssertSuccess(response -> {
+          tc.assertEquals(response.statusCode(), 200);
+          handler.handle(response.body());
+        }));
+  }
+
+  private JsonObject operation(String action, String name, String symbol, long date) {
+    return new JsonObject()
+        .put("action", action)
+        .put("quote", new JsonObject()
+            .put("name", name)
+            .put("symbol", symbol)
+            .put("ask", 12.0)
+            .put("bid", 11.0))
+        .put("date", date)
+        .put("amount", 10)
+        .put("owned", 10);
+  }
+
+}
@@ -0,0 +1,133 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.Record;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.ServiceDiscoveryOptions;
+import io.vertx.servicediscovery.impl.DefaultServiceDiscoveryBackend;
+import io.vertx.servicediscovery.types.MessageSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(VertxUnitRunner.class)
+public class PartitionedAuditTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+
+  @Before
+  public void setUp(TestContext tc) {
+    vertx = Vertx.vertx();
+    Record record = MessageSource.createRecord("portfolio-events", "portfolio", (String) null,
+        new JsonObject().put("partitions", 2));
+    ServiceDiscovery.create(vertx, new ServiceDiscoveryOptions()
+        .setBackendConfiguration(new JsonObject().put("backend-name", DefaultServiceDiscoveryBackend.class.getName())))
+        .publish(record, tc.asyncAssertSuccess());
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testEachInstanceConsumesItsPartition(TestContext tc) {
+    Async async = tc.async();
+    vertx.deployVerticle(AuditVerticle.class.getName(), options("p0"), tc.asyncAssertSuccess(first ->
+        vertx.deployVerticle(AuditVerticle.class.getName(), options("p1"), tc.asyncAssertSuccess(second ->
+            // No partition left
+            vertx.deployVerticle(AuditVerticle.class.getName(), options("p2"), tc.asyncAssertFailure(err -> {
+              for (int i = 0; i < 5; i++) {
+                vertx.eventBus().publish("portfolio.p0", operation("MCH", 0, i));
+                vertx.eventBus().publish("portfolio.p1", operation("DVN", 1, i));
+              }
+              // A duplicate and a gap on the partition 1
+              vertx.eventBus().publish("portfolio.p1", operation("DVN", 1, 4));
+              vertx.eventBus().publish("portfolio.p1", operation("DVN", 1, 7));
+
+              Map<Integer, JsonObject> metrics = new HashMap<>();
+              vertx.eventBus().<JsonObject>consumer("audit.metrics", message -> {
+                JsonObject sequence = message.body().getJsonObject("sequence");
+                metrics.put(sequence.getInteger("partition"), message.body());
+                if (metrics.size() == 2 && metrics.get(0).getLong("rows") == 5
+                    && metrics.get(1).getLong("rows") == 6 && !async.isCompleted()) {
+                  tc.assertEquals(metrics.get(0).getJsonObject("sequence").getLong("duplicates"), 0L);
+                  tc.assertEquals(metrics.get(1).getJsonObject("sequence").getLong("duplicates"), 1L);
+                  tc.assertEquals(metrics.get(1).getJsonObject("sequence").getLong("missed"), 2L);
+                  async.complete();
+                }
+              });
+            }))))));
+  }
+
+  @Test
+  public void testAnInstanceAdoptsThePartitionsWithoutInstance(TestContext tc) {
+    Async async = tc.async();
+    File directory = new File(folder.getRoot(), "log");
+    DeploymentOptions options = options("log");
+    options.getConfig()
+        .put("storage", "log")
+        .put("log.directory", directory.getAbsolutePath())
+        .put("partition.adopt.interval", 50);
+    vertx.deployVerticle(AuditVerticle.class.getName(), options, tc.asyncAssertSuccess(id -> {
+      tc.assertTrue(new File(folder.getRoot(), "log.p0").isDirectory());
+      boolean[] published = {false};
+      vertx.eventBus().<JsonObject>consumer("audit.metrics", message -> {
+        JsonObject sequence = message.body().getJsonObject("sequence");
+        if (!published[0] && sequence.getJsonArray("partitions").size() == 2) {
+          published[0] = true;
+          for (int i = 0; i < 3; i++) {
+            vertx.eventBus().publish("portfolio.p0", operation("MCH", 0, i));
+            vertx.eventBus().publish("portfolio.p1", operation("DVN", 1, i));
+          }
+        } else if (published[0] && message.body().getLong("appended") == 6 && !async.isCompleted()) {
+          // The ids of the instance: 0, 2, 4...
+          tc.assertEquals(message.body().getLong("lastId"), 10L);
+          async.complete();
+        }
+      });
+    }));
+  }
+
+  private DeploymentOptions options(String name) {
+    return new DeploymentOptions().setConfig(new JsonObject()
+        .put("url", "jdbc:hsqldb:mem:audit-" + name + "?shutdown=true")
+        .put("driverclass", "org.hsqldb.jdbcDriver")
+        .put("drop", true)
+        .put("backend-name", DefaultServiceDiscoveryBackend.class.getName())
+        .put("partitioned", true)
+        .put("batch.interval", 10)
+        .put("metrics.interval", 50));
+  }
+
+  private JsonObject operation(String symbol, int partition, long seq) {
+    return new JsonObject()
+        .put("action", "BUY")
+        .put("quote", new JsonObject()
+            .put("name", symbol)
+            .put("symbol", symbol)
+            .put("ask", 12.0)
+            .put("bid", 11.0))
+        .put("date", seq)
+        .put("amount", 10)
+        .put("owned", 10)
+        .put("source", "portfolio")
+        .put("partition", partition)
+        .put("seq", seq);
+  }
+}
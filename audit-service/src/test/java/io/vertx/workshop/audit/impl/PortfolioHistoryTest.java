@@ -0,0 +1,70 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import rx.Observable;
+
+@RunWith(VertxUnitRunner.class)
+public class PortfolioHistoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private SegmentedLogStore store;
+
+  @Before
+  public void setUp(TestContext tc) {
+    vertx = Vertx.vertx();
+    store = new SegmentedLogStore(vertx, new JsonObject().put("log.directory", folder.getRoot().getAbsolutePath()));
+    Async async = tc.async();
+    store.open(true).subscribe(v -> async.complete(), tc::fail);
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testCheckpointsWithTheSameTimestampAreKeptAcrossIndexPages(TestContext tc) {
+    Async async = tc.async();
+    int count = PortfolioHistory.INDEX_PAGE + PortfolioHistory.INDEX_PAGE / 2;
+    PortfolioHistory history = new PortfolioHistory(store, "portfolio", 10000.0, 1000, id -> true);
+    history.open()
+        .flatMapObservable(v -> Observable.range(0, count).concatMap(i -> {
+          // Two operations per timestamp, each one checkpointed
+          JsonArray params = params(i / 2);
+          history.add(store.append(params), params);
+          return history.checkpoint().toObservable();
+        }))
+        .toCompletable()
+        .subscribe(() -> {
+          PortfolioHistory reopened = new PortfolioHistory(store, "portfolio", 10000.0, 1000, id -> true);
+          reopened.open().flatMap(v -> {
+            tc.assertEquals(reopened.checkpoints(), count);
+            return reopened.at(10);
+          }).subscribe(portfolio -> {
+            // The operations 20 and 21 are executed at 10, the checkpoint of the second one is used
+            tc.assertEquals(portfolio.getLong("checkpoint"), 21L);
+            tc.assertEquals(portfolio.getInteger("replayed"), 0);
+            tc.assertEquals(portfolio.getDouble("cash"), 10000.0 - 22 * 125.0);
+            async.complete();
+          }, tc::fail);
+        }, tc::fail);
+  }
+
+  private static JsonArray params(long date) {
+    return new JsonArray().add("BUY").add("MCH").add("MacroHard").add(10).add(12.5).add(20).add(date);
+  }
+}
@@ -0,0 +1,142 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(VertxUnitRunner.class)
+public class SegmentedLogStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private JsonObject config;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    config = new JsonObject()
+        .put("log.directory", folder.getRoot().getAbsolutePath())
+        .put("log.segment.size", 4096)
+        .put("log.block.size", 512);
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testRollingAndQueries(TestContext tc) {
+    Async async = tc.async();
+    SegmentedLogStore store = new SegmentedLogStore(vertx, config);
+    store.open(true).subscribe(v -> {
+      for (int i = 0; i < 500; i++) {
+        store.append(params(i % 2 == 0 ? "MCH" : "DVN", i));
+      }
+      tc.assertTrue(store.metrics().getInteger("segments") > 1);
+
+      store.query(OperationQuery.latest(5)).subscribe(latest -> {
+        assertThat(ids(latest)).containsExactly(499L, 498L, 497L, 496L, 495L);
+        tc.assertEquals(latest.get(0).getString(2), "DVN");
+        tc.assertEquals(latest.get(0).getLong(7), 499L);
+
+        // Wait for the seals, then read through the compressed segments
+        vertx.setTimer(500, l -> store.query(OperationQuery.latest(1000)).subscribe(all -> {
+          tc.assertEquals(all.size(), 500);
+          tc.assertEquals(all.get(499).getLong(0), 0L);
+          tc.assertTrue(new File(folder.getRoot(), String.format("%020d", 0) + LogSegment.COMPRESSED).isFile());
+          async.complete();
+        }, tc::fail));
+      }, tc::fail);
+    }, tc::fail);
+  }
+
+  @Test
+  public void testReopen(TestContext tc) {
+    Async async = tc.async();
+    SegmentedLogStore store = new SegmentedLogStore(vertx, config);
+    store.open(true).subscribe(v -> {
+      for (int i = 0; i < 200; i++) {
+        store.append(params("MCH", i));
+      }
+      store.close().subscribe(c -> {
+        SegmentedLogStore reopened = new SegmentedLogStore(vertx, config);
+        reopened.open(false).subscribe(o -> {
+          reopened.append(params("MCH", 200));
+          reopened.query(OperationQuery.latest(1000)).subscribe(rows -> {
+            tc.assertEquals(rows.size(), 201);
+            tc.assertEquals(rows.get(0).getLong(0), 200L);
+            tc.assertEquals(rows.get(0).getLong(7), 200L);
+            async.complete();
+          }, tc::fail);
+        }, tc::fail);
+      }, tc::fail);
+    }, tc::fail);
+  }
+
+  @Test
+  public void testIdsFollowTheStrideAndOffset(TestContext tc) {
+    Async async = tc.async();
+    config.put("id.stride", 3).put("id.offset", 2);
+    SegmentedLogStore store = new SegmentedLogStore(vertx, config);
+    store.open(true).subscribe(v -> {
+      tc.assertEquals(store.append(params("MCH", 0)), 2L);
+      tc.assertEquals(store.append(params("MCH", 1)), 5L);
+      tc.assertEquals(store.lastId(), 5L);
+      store.close().subscribe(c -> {
+        SegmentedLogStore reopened = new SegmentedLogStore(vertx, config);
+        reopened.open(false).subscribe(o -> {
+          tc.assertEquals(reopened.append(params("MCH", 2)), 8L);
+          async.complete();
+        }, tc::fail);
+      }, tc::fail);
+    }, tc::fail);
+  }
+
+  @Test
+  public void testRetention(TestContext tc) {
+    Async async = tc.async();
+    SegmentedLogStore store = new SegmentedLogStore(vertx, config
+        .put("log.retention", 60000L)
+        .put("log.flush.interval", 100L));
+    store.open(true).subscribe(v -> {
+      // Old operations first, recent ones in the last segments
+      for (int i = 0; i < 300; i++) {
+        store.append(params("MCH", i < 200 ? i : System.currentTimeMillis()));
+      }
+      vertx.setTimer(500, l -> store.query(OperationQuery.latest(1000)).subscribe(rows -> {
+        tc.assertTrue(store.metrics().getLong("deletedSegments") > 0);
+        tc.assertTrue(rows.size() < 300);
+        tc.assertEquals(rows.get(0).getLong(0), 299L);
+        async.complete();
+      }, tc::fail));
+    }, tc::fail);
+  }
+
+  private static List<Long> ids(List<JsonArray> rows) {
+    List<Long> ids = new ArrayList<>();
+    rows.forEach(row -> ids.add(row.getLong(0)));
+    return ids;
+  }
+
+  private static JsonArray params(String symbol, long date) {
+    return new JsonArray().add("BUY").add(symbol).add("Company " + symbol).add(10).add(12.5).add(20).add(date);
+  }
+}
@@ -0,0 +1,96 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+@RunWith(VertxUnitRunner.class)
+public class SpillFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private File file;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    file = new File(folder.getRoot(), "overflow");
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  private static JsonArray row(long id) {
+    return new JsonArray().add(id);
+  }
+
+  @Test
+  public void testTheReplayedSegmentsAreDeleted(TestContext tc) {
+    Async async = tc.async();
+    SpillFile spill = new SpillFile(vertx, file);
+    spill.open().subscribe(left -> {
+      tc.assertEquals(left, 0L);
+      spill.append(row(1));
+      spill.append(row(2));
+      spill.read(1)
+          .doOnSuccess(rows -> {
+            tc.assertEquals(rows.size(), 1);
+            spill.append(row(3));
+          })
+          .flatMap(rows -> spill.read(10))
+          .doOnSuccess(rows -> {
+            tc.assertEquals(rows.size(), 1);
+            tc.assertEquals(rows.get(0).getLong(0), 2L);
+            // The first segment is fully read, the next appends went to the second one
+            tc.assertFalse(new File(folder.getRoot(), "overflow.1").exists());
+          })
+          .flatMap(rows -> spill.read(10))
+          .subscribe(rows -> {
+            tc.assertEquals(rows.size(), 1);
+            tc.assertEquals(rows.get(0).getLong(0), 3L);
+            tc.assertEquals(spill.size(), 0L);
+            tc.assertEquals(folder.getRoot().list().length, 0);
+            async.complete();
+          }, tc::fail);
+    }, tc::fail);
+  }
+
+  @Test
+  public void testTheOperationsOfAFailedWriteAreNotCounted(TestContext tc) {
+    Async async = tc.async();
+    // The first segment cannot be written
+    tc.assertTrue(new File(folder.getRoot(), "overflow.1").mkdir());
+    SpillFile spill = new SpillFile(vertx, file);
+    spill.open().subscribe(left -> {
+      spill.append(row(1));
+      spill.append(row(2));
+      spill.read(10)
+          .doOnSuccess(rows -> {
+            tc.assertTrue(rows.isEmpty());
+            tc.assertEquals(spill.size(), 0L);
+            tc.assertEquals(spill.lost(), 2L);
+            spill.append(row(3));
+          })
+          .flatMap(rows -> spill.read(10))
+          .subscribe(rows -> {
+            tc.assertEquals(rows.size(), 1);
+            tc.assertEquals(spill.size(), 0L);
+            async.complete();
+          }, tc::fail);
+    }, tc::fail);
+  }
+}
@@ -0,0 +1,149 @@
+package io.vertx.workshop.audit.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import rx.Single;
+
+@RunWith(VertxUnitRunner.class)
+public class WriteBehindBufferTest {
+
+  private static final String INSERT = "INSERT INTO T (ID, ACTION) VALUES (?, ?)";
+
+  private Vertx vertx;
+  private JDBCClient jdbc;
+
+  @Before
+  public void setUp(TestContext tc) {
+    vertx = Vertx.vertx();
+    jdbc = JDBCClient.createNonShared(vertx, new JsonObject()
+        .put("url", "jdbc:hsqldb:mem:buffer?shutdown=true")
+        .put("driver_class", "org.hsqldb.jdbcDriver"));
+    Async async = tc.async();
+    jdbc.rxGetConnection()
+        .flatMap(conn -> conn.rxExecute("DROP TABLE IF EXISTS T")
+            .flatMap(v -> conn.rxExecute("CREATE TABLE T (ID BIGINT, ACTION VARCHAR(8))"))
+            .doAfterTerminate(conn::close))
+        .subscribe(v -> async.complete(), tc::fail);
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  private Single<Long> count() {
+    return jdbc.rxGetConnection().flatMap(conn -> conn.rxQuery("SELECT COUNT(*) FROM T")
+        .map(set -> set.getResults().get(0).getLong(0))
+        .doAfterTerminate(conn::close));
+  }
+
+  private static JsonArray row(long id, String action) {
+    return new JsonArray().add(id).add(action);
+  }
+
+  @Test
+  public void testRowsAreFlushedByBatch(TestContext tc) {
+    Async async = tc.async();
+    WriteBehindBuffer buffer = new WriteBehindBuffer(vertx, jdbc, INSERT, 10, 60000, 3);
+    buffer.drainHandler(v -> count().subscribe(count -> {
+      tc.assertEquals(count, 10L);
+      tc.assertEquals(buffer.metrics().getLong("batches"), 1L);
+      tc.assertEquals(buffer.backlog(), 2);
+      async.complete();
+    }, tc::fail));
+    buffer.open().subscribe(v -> {
+      for (int i = 0; i < 12; i++) {
+        buffer.add(row(i, "BUY"));
+      }
+    }, tc::fail);
+  }
+
+  @Test
+  public void testAFailingRowIsRetriedAloneThenDropped(TestContext tc) {
+    Async async = tc.async();
+    WriteBehindBuffer buffer = new WriteBehindBuffer(vertx, jdbc, INSERT, 10, 20, 2);
+    buffer.open().subscribe(v -> {
+      buffer.add(row(0, "BUY"));
+      // Too long for the column
+      buffer.add(row(1, "NOT AN ACTION"));
+      buffer.add(row(2, "SELL"));
+      buffer.flush();
+      vertx.setPeriodic(20, l -> {
+        if (buffer.backlog() == 0) {
+          vertx.cancelTimer(l);
+          count().subscribe(count -> {
+            tc.assertEquals(count, 2L);
+            tc.assertEquals(buffer.metrics().getLong("deadLetters"), 1L);
+            async.complete();
+          }, tc::fail);
+        }
+      });
+    }, tc::fail);
+  }
+
+  @Test
+  public void testTheRetriedRowsDoNotWaitForTheTimer(TestContext tc) {
+    Async async = tc.async();
+    // The timer never fires during the test
+    WriteBehindBuffer buffer = new WriteBehindBuffer(vertx, jdbc, INSERT, 10, 60000, 0);
+    boolean[] flushed = {false};
+    buffer.open().subscribe(v -> {
+      for (int i = 0; i < 10; i++) {
+        buffer.add(row(i, i == 1 ? "NOT AN ACTION" : "BUY"));
+      }
+      vertx.setPeriodic(10, l -> {
+        if (!flushed[0] && buffer.metrics().getLong("failures") == 1L && buffer.backlog() == 10) {
+          // A single flush retries all the rows of the failed batch
+          flushed[0] = true;
+          buffer.flush();
+        } else if (flushed[0] && buffer.backlog() == 0) {
+          vertx.cancelTimer(l);
+          count().subscribe(count -> {
+            tc.assertEquals(count, 9L);
+            tc.assertEquals(buffer.metrics().getLong("deadLetters"), 1L);
+            async.complete();
+          }, tc::fail);
+        }
+      });
+    }, tc::fail);
+  }
+
+  @Test
+  public void testCloseWaitsForTheBatchInFlightAndWritesThePendingRows(TestContext tc) {
+    Async async = tc.async();
+    WriteBehindBuffer buffer = new WriteBehindBuffer(vertx, jdbc, INSERT, 5, 60000, 3);
+    buffer.open().subscribe(v -> {
+      for (int i = 0; i < 8; i++) {
+        buffer.add(row(i, "BUY"));
+      }
+      // A batch of 5 is in flight, 3 rows are pending
+      buffer.close().flatMap(c -> count()).subscribe(count -> {
+        tc.assertEquals(count, 8L);
+        async.complete();
+      }, tc::fail);
+    }, tc::fail);
+  }
+
+  @Test
+  public void testCloseFailsWhenRowsCannotBeWritten(TestContext tc) {
+    Async async = tc.async();
+    WriteBehindBuffer buffer = new WriteBehindBuffer(vertx, jdbc, INSERT, 10, 60000, 0);
+    buffer.open().subscribe(v -> {
+      buffer.add(row(0, "BUY"));
+      buffer.add(row(1, "NOT AN ACTION"));
+      buffer.close().subscribe(c -> tc.fail("The close should fail"), err -> {
+        tc.assertTrue(err.getMessage().startsWith("2 operations"));
+        async.complete();
+      });
+    }, tc::fail);
+  }
+}
@@ -0,0 +1,201 @@
+package io.vertx.workshop.trader.backtest;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.trader.strategy.Strategies;
+import io.vertx.workshop.trader.strategy.Strategy;
+import io.vertx.workshop.trader.strategy.Tick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs trading strategies on recorded quotes, offline, against a {@link SimulatedPortfolio}.
+ * <p>
+ * A backtest replays the ticks of a company to a strategy, as a compulsive trader buying or selling a fixed number of
+ * shares on each signal. A sweep runs many strategy configurations on the same {@link TickSeries}, in parallel on a
+ * fork-join pool, and reports the results from the most to the least profitable, with the backtest throughput.
+ */
+public class Backtest {
+
+    private static final Logger log = LoggerFactory.getLogger(Backtest.class);
+
+    private final TickSeries ticks;
+    private final String company;
+    private final int shares;
+    private final double cash;
+
+    /**
+     * @param ticks   the ticks
+     * @param company the traded company
+     * @param shares  the number of shares bought or sold on each signal
+     * @param cash    the initial cash
+     */
+    public Backtest(TickSeries ticks, String company, int shares, double cash) {
+        this.ticks = ticks;
+        this.company = company;
+        this.shares = shares;
+        this.cash = cash;
+    }
+
+    /**
+     * Runs a strategy.
+     *
+     * @param config the strategy configuration, see {@link Strategies#create(JsonObject)}
+     * @return the result: the configuration, the number of trades and rejected orders, the final cash, owned shares
+     * and value (the shares valued at the last bid price), and the return
+     */
+    public JsonObject run(JsonObject config) {
+        Strategy strategy = Strategies.create(config);
+        SimulatedPortfolio portfolio = new SimulatedPortfolio(cash);
+        int code = ticks.code(company);
+        double lastBid = 0;
+        Tick tick = new Tick();
+        for (int i = 0; i < ticks.size(); i++) {
+            if (ticks.company(i) != code) {
+                continue;
+            }
+            lastBid = ticks.bid(i);
+            switch (strategy.evaluate(ticks.read(i, tick))) {
+                case BUY:
+                    portfolio.buy(amount(strategy), ticks.ask(i), ticks.shares(i));
+                    break;
+                case SELL:
+                    portfolio.sell(amount(strategy), ticks.bid(i));
+                    break;
+                default:
+                    break;
+            }
+        }
+        double value = portfolio.cash() + portfolio.owned() * lastBid;
+        return new JsonObject()
+                .put("strategy", config)
+                .put("bought", portfolio.bought())
+                .put("sold", portfolio.sold())
+                .put("rejected", portfolio.rejected())
+                .put("cash", portfolio.cash())
+                .put("owned", portfolio.owned())
+                .put("value", value)
+                .put("return", (value - cash) / cash);
+    }
+
+    private int amount(Strategy strategy) {
+        // The strategy may give the amount of the order
+        return strategy.amount() > 0 ? strategy.amount() : shares;
+    }
+
+    /**
+     * Runs the given strategy configurations in parallel. This method is blocking.
+     *
+     * @param configs the strategy configurations
+     * @param pool    the pool running the backtests
+     * @return the results, the best first, and the statistics: number of backtests, replayed ticks, elapsed time (ms)
+     * and throughput (ticks per second)
+     */
+    public JsonObject sweep(List<JsonObject> configs, ForkJoinPool pool) {
+        long begin = System.nanoTime();
+        JsonObject[] results = new JsonObject[configs.size()];
+        pool.invoke(new Sweep(configs, results, 0, configs.size()));
+        long elapsed = System.nanoTime() - begin;
+
+        List<JsonObject> sorted = new ArrayList<>();
+        for (JsonObject result : results) {
+            sorted.add(result);
+        }
+        sorted.sort(Comparator.comparingDouble((JsonObject result) -> result.getDouble("value")).reversed());
+        long replayed = (long) ticks.size() * configs.size();
+        return new JsonObject()
+                .put("results", new JsonArray(sorted))
+                .put("stats", new JsonObject()
+                        .put("backtests", configs.size())
+                        .put("ticks", replayed)
+                        .put("elapsed", elapsed / 1_000_000.0)
+                        .put("throughput", elapsed == 0 ? 0 : (long) (replayed * 1_000_000_000.0 / elapsed)));
+    }
+
+    /**
+     * Expands a grid of parameters: each entry of {@code parameters} lists the values of a parameter, the returned
+     * configurations cover all the combinations.
+     *
+     * @param base       the configuration shared by all the combinations, such as the strategy `type`
+     * @param parameters the values of each parameter
+     * @return the configurations
+     */
+    public static List<JsonObject> grid(JsonObject base, JsonObject parameters) {
+        List<JsonObject> configs = new ArrayList<>();
+        configs.add(base.copy());
+        for (String name : parameters.fieldNames()) {
+            List<JsonObject> expanded = new ArrayList<>();
+            for (JsonObject config : configs) {
+                for (Object value : parameters.getJsonArray(name)) {
+                    expanded.add(config.copy().put(name, value));
+                }
+            }
+            configs = expanded;
+        }
+        return configs;
+    }
+
+    /**
+     * Runs a sweep described by a JSON file: `ticks` (the tick file), `company`, `shares` (5), `cash` (10000), and
+     * `strategies`, an array of grids ({`strategy`: the base configuration, `parameters`: the values of each
+     * parameter}). The results are printed on the standard output.
+     *
+     * @param args the path of the description
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: Backtest <sweep.json>");
+            System.exit(1);
+        }
+        JsonObject description = new JsonObject(new String(Files.readAllBytes(Paths.get(args[0])),
+                StandardCharsets.UTF_8));
+        TickSeries ticks = TickSeries.load(Paths.get(description.getString("ticks")));
+        List<JsonObject> configs = new ArrayList<>();
+        description.getJsonArray("strategies", new JsonArray()).forEach(grid -> configs.addAll(grid(
+                ((JsonObject) grid).getJsonObject("strategy", new JsonObject()),
+                ((JsonObject) grid).getJsonObject("parameters", new JsonObject()))));
+        log.info("Running {} backtest(s) on {} tick(s)", configs.size(), ticks.size());
+        JsonObject result = new Backtest(ticks, description.getString("company"),
+                description.getInteger("shares", 5), description.getDouble("cash", 10000.0))
+                .sweep(configs, ForkJoinPool.commonPool());
+        System.out.println(result.encodePrettily());
+    }
+
+    /**
+     * Splits the configurations until a single one is left.
+     */
+    private class Sweep extends RecursiveAction {
+        private final List<JsonObject> configs;
+        private final JsonObject[] results;
+        private final int start;
+        private final int end;
+
+        Sweep(List<JsonObject> configs, JsonObject[] results, int start, int end) {
+            this.configs = configs;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                results[start] = run(configs.get(start));
+            } else if (end > start) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new Sweep(configs, results, start, middle), new Sweep(configs, results, middle, end));
+            }
+        }
+    }
+}
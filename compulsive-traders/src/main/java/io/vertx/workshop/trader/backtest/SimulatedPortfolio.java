@@ -0,0 +1,72 @@
+package io.vertx.workshop.trader.backtest;
+
+/**
+ * An in-memory portfolio, trading a single company, with the rules of the portfolio service: a buy needs enough shares
+ * on the market and enough cash at the ask price, a sell needs enough owned shares and is paid at the bid price.
+ */
+class SimulatedPortfolio {
+
+    private double cash;
+    private int owned;
+    private long bought;
+    private long sold;
+    private long rejected;
+
+    SimulatedPortfolio(double cash) {
+        this.cash = cash;
+    }
+
+    /**
+     * @param amount    the number of shares
+     * @param ask       the ask price
+     * @param available the shares available on the market
+     * @return whether the shares were bought
+     */
+    boolean buy(int amount, double ask, int available) {
+        double price = amount * ask;
+        if (amount <= 0 || available < amount || cash < price) {
+            rejected++;
+            return false;
+        }
+        cash -= price;
+        owned += amount;
+        bought++;
+        return true;
+    }
+
+    /**
+     * @param amount the number of shares
+     * @param bid    the bid price
+     * @return whether the shares were sold
+     */
+    boolean sell(int amount, double bid) {
+        if (amount <= 0 || owned < amount) {
+            rejected++;
+            return false;
+        }
+        owned -= amount;
+        cash += amount * bid;
+        sold++;
+        return true;
+    }
+
+    double cash() {
+        return cash;
+    }
+
+    int owned() {
+        return owned;
+    }
+
+    long bought() {
+        return bought;
+    }
+
+    long sold() {
+        return sold;
+    }
+
+    long rejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,126 @@
+package io.vertx.workshop.trader.backtest;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.trader.strategy.Tick;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded quotes, kept in columns (company, bid, ask, shares) to be replayed by many backtests at once. The series is
+ * immutable once loaded.
+ */
+public class TickSeries {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private int[] company = new int[1024];
+    private double[] bid = new double[1024];
+    private double[] ask = new double[1024];
+    private int[] shares = new int[1024];
+    private int size;
+
+    /**
+     * Loads a tick file: one quote per line, as sent by the quote generator on the `market` address.
+     *
+     * @param file the file
+     * @return the series
+     * @throws IOException if the file cannot be read
+     */
+    public static TickSeries load(Path file) throws IOException {
+        TickSeries series = new TickSeries();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    series.add(new JsonObject(line));
+                }
+            }
+        }
+        return series;
+    }
+
+    /**
+     * @param quotes the quotes
+     * @return the series of the given quotes
+     */
+    public static TickSeries of(List<JsonObject> quotes) {
+        TickSeries series = new TickSeries();
+        quotes.forEach(series::add);
+        return series;
+    }
+
+    private void add(JsonObject quote) {
+        String name = quote.getString("name");
+        Integer code = codes.get(name);
+        if (code == null) {
+            code = names.size();
+            codes.put(name, code);
+            names.add(name);
+            symbols.add(quote.getString("symbol", name));
+        }
+        if (size == company.length) {
+            company = Arrays.copyOf(company, size * 2);
+            bid = Arrays.copyOf(bid, size * 2);
+            ask = Arrays.copyOf(ask, size * 2);
+            shares = Arrays.copyOf(shares, size * 2);
+        }
+        company[size] = code;
+        bid[size] = quote.getDouble("bid");
+        ask[size] = quote.getDouble("ask");
+        shares[size] = quote.getInteger("shares", 0);
+        size++;
+    }
+
+    /**
+     * @return the number of ticks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param name a company name
+     * @return the code of the company, -1 if the series has no tick of this company
+     */
+    int code(String name) {
+        return codes.getOrDefault(name, -1);
+    }
+
+    int company(int i) {
+        return company[i];
+    }
+
+    double bid(int i) {
+        return bid[i];
+    }
+
+    double ask(int i) {
+        return ask[i];
+    }
+
+    int shares(int i) {
+        return shares[i];
+    }
+
+    /**
+     * Reads a tick in the given flyweight.
+     *
+     * @param i    the tick index
+     * @param tick the tick to set
+     * @return the tick
+     */
+    Tick read(int i, Tick tick) {
+        int code = company[i];
+        return tick.set(symbols.get(code), names.get(code), bid[i], ask[i], shares[i]);
+    }
+}
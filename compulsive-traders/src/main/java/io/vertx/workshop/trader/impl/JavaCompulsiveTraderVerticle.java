@@ -1,16 +1,14 @@
 package io.vertx.workshop.trader.impl;
 
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
-import io.vertx.core.eventbus.MessageConsumer;
-import io.vertx.core.json.JsonObject;
 import io.vertx.servicediscovery.types.EventBusService;
-import io.vertx.servicediscovery.types.MessageSource;
 import io.vertx.workshop.common.MicroServiceVerticle;
 import io.vertx.workshop.portfolio.PortfolioService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+
 /**
  * A compulsive trader...
  */
@@ -27,21 +25,22 @@ public class JavaCompulsiveTraderVerticle extends MicroServiceVerticle {
         int numberOfShares = TraderUtils.pickANumber();
         log.info("Initialize company[{}] and numberOfShares[{}]", company, numberOfShares);
 
-        // 2. Retrieve the 2 services we use
-        Future<MessageConsumer<JsonObject>> marketFuture = Future.future();
-        MessageSource.getConsumer(discovery, new JsonObject().put("name", "market-data"), marketFuture.completer());
-
-        Future<PortfolioService> portfolioFuture = Future.future();
-        EventBusService.getProxy(discovery, PortfolioService.class, portfolioFuture.completer());
-
-        // 3. When both have been retrieve, apply the trading logic on every new market data.
-        CompositeFuture.all(marketFuture, portfolioFuture).setHandler(event -> {
-            if (event.failed()) {
-                future.fail(event.cause());
-            } else {
-                marketFuture.result().handler(message ->
-                        TraderUtils.dumbTradingLogic(company, numberOfShares, portfolioFuture.result(), message.body()));
+        // 2. Retrieve the portfolio service
+        EventBusService.getProxy(discovery, PortfolioService.class, ar -> {
+            if (ar.failed()) {
+                // The start is already completed
+                log.error("Failed to retrieve the portfolio service", ar.cause());
+                return;
             }
+            // 3. Then apply the trading logic on every new market data of the company, the other companies are not
+            // received
+            PortfolioService portfolio = ar.result();
+            subscribeToSymbols("market-data", Collections.singleton(company), message ->
+                    TraderUtils.dumbTradingLogic(company, numberOfShares, portfolio, message.body()), subscribed -> {
+                if (subscribed.failed()) {
+                    log.error("Failed to subscribe to the market data of {}", company, subscribed.cause());
+                }
+            });
         });
 
         future.complete();
@@ -4,7 +4,9 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.DeploymentOptions;
 
 /**
- * The main verticle creating compulsive traders.
+ * The main verticle creating compulsive traders. The traders run in a single {@link TraderPopulationVerticle}, or in a
+ * {@link SequentialTraderVerticle} when the `runtime` configuration entry is `sequential`, the `traders` configuration
+ * entry setting their number.
  */
 public class MainVerticle extends AbstractVerticle {
 
@@ -12,7 +14,9 @@ public class MainVerticle extends AbstractVerticle {
     public void start() throws Exception {
 
         // Java traders
-        vertx.deployVerticle(JavaCompulsiveTraderVerticle.class.getName(), new DeploymentOptions().setInstances(2));
+        String verticle = "sequential".equals(config().getString("runtime")) ? SequentialTraderVerticle.class.getName()
+                : TraderPopulationVerticle.class.getName();
+        vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config()));
 
         // Groovy traders...
         // vertx.deployVerticle("GroovyCompulsiveTraderVerticle.groovy");
@@ -0,0 +1,54 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The market data as a stream of futures: {@link #next(String)} returns the next quote of a company. The waiting
+ * futures are kept by company, so a quote only completes the futures of its company.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class MarketStream {
+
+    private final Map<String, List<Future<JsonObject>>> waiting = new HashMap<>();
+
+    /**
+     * @param company the company name
+     * @return a future completed with the next quote of the company
+     */
+    Future<JsonObject> next(String company) {
+        Future<JsonObject> quote = Future.future();
+        waiting.computeIfAbsent(company, c -> new ArrayList<>()).add(quote);
+        return quote;
+    }
+
+    /**
+     * Completes the futures waiting for the company of a quote.
+     *
+     * @param quote the quote, as sent on the `market` address
+     */
+    void dispatch(JsonObject quote) {
+        List<Future<JsonObject>> futures = waiting.remove(quote.getString("name"));
+        if (futures != null) {
+            // The futures of the cancelled traders are completed too, nobody waits for them anymore
+            futures.forEach(future -> future.tryComplete(quote));
+        }
+    }
+
+    /**
+     * @return the number of futures waiting for a quote
+     */
+    int waiting() {
+        int count = 0;
+        for (List<Future<JsonObject>> futures : waiting.values()) {
+            count += futures.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,199 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Nets the orders of a population of traders per company before sending them to the portfolio service.
+ * <p>
+ * The orders received on a company during `window` ms are aggregated into a single net buy or sell, sent with the last
+ * quote of the company. The buys and sells crossing each other are filled without any call to the portfolio service;
+ * the orders on the side of the net order are filled first from the crossed volume, in arrival order, and the rest
+ * depends on the outcome of the net order. A company has at most one net order in flight: the orders received
+ * meanwhile are netted once the reply is received.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class OrderNetting {
+
+    private final Vertx vertx;
+    private final PortfolioService portfolio;
+    private final long window;
+    private final Map<String, Book> books = new HashMap<>();
+
+    // By trader
+    private final int[] position;
+    private final long[] fills;
+    private final long[] rejections;
+
+    private long received;
+    private long sent;
+    private long crossed;
+
+    /**
+     * @param vertx     the vert.x instance
+     * @param portfolio the portfolio service
+     * @param traders   the number of traders
+     * @param window    the netting window, in ms
+     */
+    OrderNetting(Vertx vertx, PortfolioService portfolio, int traders, long window) {
+        this.vertx = vertx;
+        this.portfolio = portfolio;
+        this.window = window;
+        position = new int[traders];
+        fills = new long[traders];
+        rejections = new long[traders];
+    }
+
+    /**
+     * Submits an order.
+     *
+     * @param trader the trader
+     * @param buy    {@code true} to buy, {@code false} to sell
+     * @param amount the number of shares
+     * @param quote  the quote
+     */
+    void submit(int trader, boolean buy, int amount, JsonObject quote) {
+        received++;
+        Book book = books.computeIfAbsent(quote.getString("name"), k -> new Book());
+        book.pending.add(trader, buy ? amount : -amount);
+        book.quote = quote;
+        schedule(book);
+    }
+
+    /**
+     * @param trader the trader
+     * @return the shares bought minus the shares sold by the trader
+     */
+    int position(int trader) {
+        return position[trader];
+    }
+
+    /**
+     * @return the received orders, the net orders sent to the portfolio service, the crossed shares, and the filled
+     * and rejected orders
+     */
+    JsonObject metrics() {
+        long filled = 0;
+        long rejected = 0;
+        for (int i = 0; i < fills.length; i++) {
+            filled += fills[i];
+            rejected += rejections[i];
+        }
+        return new JsonObject()
+                .put("received", received)
+                .put("sent", sent)
+                .put("crossed", crossed)
+                .put("filled", filled)
+                .put("rejected", rejected);
+    }
+
+    private void schedule(Book book) {
+        if (!book.scheduled && !book.inFlight && book.pending.count > 0) {
+            book.scheduled = true;
+            vertx.setTimer(window, l -> flush(book));
+        }
+    }
+
+    private void flush(Book book) {
+        book.scheduled = false;
+        Batch batch = book.pending;
+        book.pending = book.flushing;
+        book.flushing = batch;
+
+        int net = batch.bought - batch.sold;
+        crossed += Math.min(batch.bought, batch.sold);
+        if (net == 0) {
+            settle(batch, true);
+            return;
+        }
+        book.inFlight = true;
+        sent++;
+        if (net > 0) {
+            portfolio.buy(net, book.quote, ar -> replied(book, ar));
+        } else {
+            portfolio.sell(-net, book.quote, ar -> replied(book, ar));
+        }
+    }
+
+    private void replied(Book book, AsyncResult<Portfolio> ar) {
+        book.inFlight = false;
+        settle(book.flushing, ar.succeeded());
+        schedule(book);
+    }
+
+    private void settle(Batch batch, boolean succeeded) {
+        int net = batch.bought - batch.sold;
+        // The volume of the net side filled by the other side
+        int crossing = Math.min(batch.bought, batch.sold);
+        for (int i = 0; i < batch.count; i++) {
+            int trader = batch.traders[i];
+            int amount = batch.amounts[i];
+            int volume = Math.abs(amount);
+            int filled = volume;
+            if (net != 0 && Integer.signum(amount) == Integer.signum(net)) {
+                int fromCrossing = Math.min(volume, crossing);
+                crossing -= fromCrossing;
+                filled = succeeded ? volume : fromCrossing;
+            }
+            position[trader] += Integer.signum(amount) * filled;
+            if (filled > 0) {
+                fills[trader]++;
+            }
+            if (filled < volume) {
+                rejections[trader]++;
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * The orders of a company.
+     */
+    private static class Book {
+        Batch pending = new Batch();
+        Batch flushing = new Batch();
+        JsonObject quote;
+        boolean scheduled;
+        boolean inFlight;
+    }
+
+    /**
+     * The orders received during a window, amounts being negative for the sells.
+     */
+    private static class Batch {
+        int[] traders = new int[16];
+        int[] amounts = new int[16];
+        int count;
+        int bought;
+        int sold;
+
+        void add(int trader, int amount) {
+            if (count == traders.length) {
+                traders = Arrays.copyOf(traders, count * 2);
+                amounts = Arrays.copyOf(amounts, count * 2);
+            }
+            traders[count] = trader;
+            amounts[count] = amount;
+            count++;
+            if (amount > 0) {
+                bought += amount;
+            } else {
+                sold -= amount;
+            }
+        }
+
+        void clear() {
+            count = 0;
+            bought = 0;
+            sold = 0;
+        }
+    }
+}
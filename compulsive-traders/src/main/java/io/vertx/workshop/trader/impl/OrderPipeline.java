@@ -0,0 +1,169 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.PortfolioService;
+
+/**
+ * Sends the orders of a population of traders to the portfolio service, bounding the orders in flight of each trader.
+ * <p>
+ * A trader has at most `window` orders waiting for the portfolio service reply. When its window is full, a new order
+ * is either dropped ({@link Policy#DROP}), or kept as the pending order of the trader, replacing the previous pending
+ * one, and sent when a reply is received ({@link Policy#COALESCE}). The metrics (orders, rejections, latency) are kept
+ * per trader in arrays.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class OrderPipeline {
+
+    /**
+     * What to do with an order when the window of the trader is full.
+     */
+    enum Policy {
+        DROP,
+        COALESCE
+    }
+
+    private static final byte NONE = 0;
+    private static final byte BUY = 1;
+    private static final byte SELL = 2;
+
+    private final PortfolioService portfolio;
+    private final int window;
+    private final Policy policy;
+    private final long start = System.nanoTime();
+
+    // By trader
+    private final int[] inFlight;
+    private final byte[] pendingSide;
+    private final int[] pendingAmount;
+    private final JsonObject[] pendingQuote;
+    private final long[] sent;
+    private final long[] rejected;
+    private final long[] dropped;
+    private final long[] coalesced;
+    private final long[] latency;
+    private final long[] maxLatency;
+
+    /**
+     * @param portfolio the portfolio service
+     * @param traders   the number of traders
+     * @param window    the maximum number of orders in flight per trader
+     * @param policy    the policy applied when the window is full
+     */
+    OrderPipeline(PortfolioService portfolio, int traders, int window, Policy policy) {
+        this.portfolio = portfolio;
+        this.window = window;
+        this.policy = policy;
+        inFlight = new int[traders];
+        pendingSide = new byte[traders];
+        pendingAmount = new int[traders];
+        pendingQuote = new JsonObject[traders];
+        sent = new long[traders];
+        rejected = new long[traders];
+        dropped = new long[traders];
+        coalesced = new long[traders];
+        latency = new long[traders];
+        maxLatency = new long[traders];
+    }
+
+    /**
+     * Submits an order.
+     *
+     * @param trader the trader
+     * @param buy    {@code true} to buy, {@code false} to sell
+     * @param amount the number of shares
+     * @param quote  the quote
+     */
+    void submit(int trader, boolean buy, int amount, JsonObject quote) {
+        if (inFlight[trader] < window) {
+            send(trader, buy ? BUY : SELL, amount, quote);
+        } else if (policy == Policy.DROP) {
+            dropped[trader]++;
+        } else {
+            if (pendingSide[trader] != NONE) {
+                coalesced[trader]++;
+            }
+            pendingSide[trader] = buy ? BUY : SELL;
+            pendingAmount[trader] = amount;
+            pendingQuote[trader] = quote;
+        }
+    }
+
+    private void send(int trader, byte side, int amount, JsonObject quote) {
+        inFlight[trader]++;
+        sent[trader]++;
+        long begin = System.nanoTime();
+        if (side == BUY) {
+            portfolio.buy(amount, quote, ar -> completed(trader, begin, ar.succeeded()));
+        } else {
+            portfolio.sell(amount, quote, ar -> completed(trader, begin, ar.succeeded()));
+        }
+    }
+
+    private void completed(int trader, long begin, boolean succeeded) {
+        long elapsed = System.nanoTime() - begin;
+        inFlight[trader]--;
+        latency[trader] += elapsed;
+        maxLatency[trader] = Math.max(maxLatency[trader], elapsed);
+        if (!succeeded) {
+            rejected[trader]++;
+        }
+        if (pendingSide[trader] != NONE) {
+            byte side = pendingSide[trader];
+            JsonObject quote = pendingQuote[trader];
+            pendingSide[trader] = NONE;
+            pendingQuote[trader] = null;
+            send(trader, side, pendingAmount[trader], quote);
+        }
+    }
+
+    /**
+     * @param trader the trader
+     * @return the metrics of the trader
+     */
+    JsonObject metrics(int trader) {
+        return metrics(trader, trader + 1);
+    }
+
+    /**
+     * @return the metrics of all the traders
+     */
+    JsonObject metrics() {
+        return metrics(0, inFlight.length);
+    }
+
+    /**
+     * @return the orders sent, rejected by the portfolio service, dropped and coalesced, the orders in flight, the
+     * average and max latency (ms) and the order rate (orders sent per second)
+     */
+    private JsonObject metrics(int from, int to) {
+        long sentTotal = 0;
+        long completedTotal = 0;
+        long rejectedTotal = 0;
+        long droppedTotal = 0;
+        long coalescedTotal = 0;
+        long latencyTotal = 0;
+        long latencyMax = 0;
+        long inFlightTotal = 0;
+        for (int i = from; i < to; i++) {
+            sentTotal += sent[i];
+            completedTotal += sent[i] - inFlight[i];
+            rejectedTotal += rejected[i];
+            droppedTotal += dropped[i];
+            coalescedTotal += coalesced[i];
+            latencyTotal += latency[i];
+            latencyMax = Math.max(latencyMax, maxLatency[i]);
+            inFlightTotal += inFlight[i];
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return new JsonObject()
+                .put("sent", sentTotal)
+                .put("rejected", rejectedTotal)
+                .put("dropped", droppedTotal)
+                .put("coalesced", coalescedTotal)
+                .put("inFlight", inFlightTotal)
+                .put("latency", completedTotal == 0 ? 0.0 : latencyTotal / 1_000_000.0 / completedTotal)
+                .put("maxLatency", latencyMax / 1_000_000.0)
+                .put("rate", seconds == 0 ? 0.0 : sentTotal / seconds);
+    }
+}
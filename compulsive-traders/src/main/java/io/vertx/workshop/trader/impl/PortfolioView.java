@@ -0,0 +1,230 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local copy of the portfolio, so the traders check their positions without calling the portfolio service.
+ * <p>
+ * The view starts from a {@link PortfolioService#getPortfolio(Handler)} snapshot, and applies the events published
+ * on the {@code portfolio} address. The events are numbered by the version of the portfolio they lead to: the events
+ * already contained in the snapshot are ignored, and a missing version (an event lost, or received out of order)
+ * makes the view take a new snapshot. The versions start again when the portfolio service restarts: an event of
+ * another epoch than the snapshot also makes the view take a new snapshot. The events received while a snapshot is
+ * retrieved are kept, and applied on it, except the ones of another epoch.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class PortfolioView {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioView.class);
+
+    private final PortfolioService portfolio;
+
+    private final Map<String, Integer> shares = new HashMap<>();
+    private double cash;
+    private long version = -1;
+    private String epoch;
+    private boolean synced;
+    private boolean syncing;
+    private final List<JsonObject> buffered = new ArrayList<>();
+
+    private long applied;
+    private long stale;
+    private long gaps;
+    private long restarts;
+    private long snapshots;
+    private long skipped;
+
+    /**
+     * @param portfolio the portfolio service
+     */
+    PortfolioView(PortfolioService portfolio) {
+        this.portfolio = portfolio;
+    }
+
+    /**
+     * Takes the initial snapshot. The events must be passed to {@link #onEvent(JsonObject)} from now on.
+     *
+     * @param done called when the snapshot has been retrieved
+     */
+    void open(Handler<AsyncResult<Void>> done) {
+        resync(done);
+    }
+
+    /**
+     * Applies an event published by the portfolio service.
+     *
+     * @param event the event
+     */
+    void onEvent(JsonObject event) {
+        Long v = event.getLong("version");
+        if (v == null) {
+            return;
+        }
+        if (syncing) {
+            buffered.add(event);
+        } else if (!synced) {
+            // The last snapshot failed
+            buffered.add(event);
+            resync(null);
+        } else if (!sameEpoch(event)) {
+            log.debug("The portfolio service restarted, resynchronizing");
+            restarts++;
+            buffered.add(event);
+            resync(null);
+        } else if (v <= version) {
+            stale++;
+        } else if (v == version + 1) {
+            apply(event);
+        } else {
+            log.debug("Missed the portfolio events {} to {}, resynchronizing", version + 1, v - 1);
+            gaps++;
+            buffered.add(event);
+            resync(null);
+        }
+    }
+
+    /**
+     * Checks an order against the view, counting it as skipped when the portfolio service would reject it. The order
+     * is accepted when the view is not synchronized.
+     *
+     * @param buy    {@code true} to buy, {@code false} to sell
+     * @param amount the number of shares
+     * @param quote  the quote
+     * @return whether the order may be sent
+     */
+    boolean accepts(boolean buy, int amount, JsonObject quote) {
+        if (!synced) {
+            return true;
+        }
+        boolean accepted = buy ? cash >= amount * quote.getDouble("ask") : owned(quote.getString("name")) >= amount;
+        if (!accepted) {
+            skipped++;
+        }
+        return accepted;
+    }
+
+    /**
+     * @return whether the view reflects the portfolio, i.e. a snapshot has been retrieved and no event is missing
+     */
+    boolean synced() {
+        return synced;
+    }
+
+    /**
+     * @return the version of the portfolio, {@code -1} before the first snapshot
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * @return the available cash
+     */
+    double cash() {
+        return cash;
+    }
+
+    /**
+     * @param company the company name
+     * @return the number of owned shares of the company
+     */
+    int owned(String company) {
+        return shares.getOrDefault(company, 0);
+    }
+
+    /**
+     * @return the version, the events applied, ignored as already in the snapshot, the detected gaps and restarts of
+     * the portfolio service, the snapshots taken and the orders skipped by {@link #accepts(boolean, int, JsonObject)}
+     */
+    JsonObject metrics() {
+        return new JsonObject()
+                .put("version", version)
+                .put("synced", synced)
+                .put("applied", applied)
+                .put("stale", stale)
+                .put("gaps", gaps)
+                .put("restarts", restarts)
+                .put("snapshots", snapshots)
+                .put("skipped", skipped);
+    }
+
+    private void resync(Handler<AsyncResult<Void>> done) {
+        syncing = true;
+        synced = false;
+        portfolio.getPortfolio(ar -> {
+            syncing = false;
+            if (ar.failed()) {
+                log.error("Failed to retrieve the portfolio", ar.cause());
+                if (done != null) {
+                    done.handle(Future.failedFuture(ar.cause()));
+                }
+                return;
+            }
+            snapshot(ar.result());
+            if (done != null) {
+                done.handle(Future.succeededFuture());
+            }
+        });
+    }
+
+    private void snapshot(Portfolio snapshot) {
+        snapshots++;
+        shares.clear();
+        shares.putAll(snapshot.getShares());
+        cash = snapshot.getCash();
+        version = snapshot.getVersion();
+        epoch = snapshot.getEpoch();
+        synced = true;
+        // Replay the events received meanwhile, a gap among them resynchronizing again. The events of another epoch
+        // are dropped: older than the snapshot, or newer and the next one of their epoch resynchronizes again.
+        List<JsonObject> events = new ArrayList<>(buffered);
+        buffered.clear();
+        events.sort(Comparator.comparingLong(e -> e.getLong("version")));
+        for (JsonObject event : events) {
+            if (sameEpoch(event)) {
+                onEvent(event);
+            } else {
+                stale++;
+            }
+        }
+    }
+
+    private boolean sameEpoch(JsonObject event) {
+        // Without epoch, from a service not sending it
+        String e = event.getString("epoch");
+        return e == null || epoch == null || e.equals(epoch);
+    }
+
+    private void apply(JsonObject event) {
+        JsonObject quote = event.getJsonObject("quote");
+        String name = quote.getString("name");
+        int amount = event.getInteger("amount");
+        if ("BUY".equals(event.getString("action"))) {
+            cash -= amount * quote.getDouble("ask");
+        } else {
+            cash += amount * quote.getDouble("bid");
+        }
+        int owned = event.getInteger("owned");
+        if (owned == 0) {
+            shares.remove(name);
+        } else {
+            shares.put(name, owned);
+        }
+        version = event.getLong("version");
+        applied++;
+    }
+}
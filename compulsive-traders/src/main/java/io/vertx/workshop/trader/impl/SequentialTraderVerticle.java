@@ -0,0 +1,96 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.types.EventBusService;
+import io.vertx.servicediscovery.types.MessageSource;
+import io.vertx.workshop.common.MicroServiceVerticle;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A population of compulsive traders written as sequential programs, in a {@link TraderScope}: each trader waits for
+ * the next quote of its company, then buys or sells, and starts again. A waiting trader only holds a pending future,
+ * so the `traders` configuration entry (1000 by default) can be set to hundreds of thousands.
+ * <p>
+ * The traders are cancelled when the verticle is undeployed, the verticle stops once they have all ended.
+ */
+public class SequentialTraderVerticle extends MicroServiceVerticle {
+
+    /**
+     * The address on which the trader metrics are periodically sent.
+     */
+    private static final String METRICS_ADDRESS = "traders.metrics";
+
+    private static final Logger log = LoggerFactory.getLogger(SequentialTraderVerticle.class);
+
+    private final TraderScope scope = new TraderScope();
+    private final MarketStream market = new MarketStream();
+    private PortfolioService portfolio;
+
+    @Override
+    public void start(Future<Void> future) {
+        super.start();
+
+        // 1. Retrieve the 2 services we use, once for all the traders
+        Future<MessageConsumer<JsonObject>> marketFuture = Future.future();
+        MessageSource.getConsumer(discovery, new JsonObject().put("name", "market-data"), marketFuture.completer());
+
+        Future<PortfolioService> portfolioFuture = Future.future();
+        EventBusService.getProxy(discovery, PortfolioService.class, portfolioFuture.completer());
+
+        // 2. When both have been retrieved, launch the traders
+        CompositeFuture.all(marketFuture, portfolioFuture).setHandler(event -> {
+            if (event.failed()) {
+                future.fail(event.cause());
+                return;
+            }
+            portfolio = portfolioFuture.result();
+            marketFuture.result().handler(message -> market.dispatch(message.body()));
+            int traders = config().getInteger("traders", 1000);
+            for (int i = 0; i < traders; i++) {
+                String company = TraderUtils.pickACompany();
+                int shares = TraderUtils.pickANumber();
+                scope.launch(() -> trade(company, shares));
+            }
+            log.info("{} sequential traders launched", traders);
+            vertx.setPeriodic(config().getLong("metrics.interval", 10000L), l ->
+                    vertx.eventBus().publish(METRICS_ADDRESS, scope.metrics().put("waiting", market.waiting())));
+            future.complete();
+        });
+    }
+
+    @Override
+    public void stop(Future<Void> future) throws Exception {
+        scope.cancel().setHandler(ar -> {
+            try {
+                super.stop(future);
+            } catch (Exception e) {
+                future.tryFail(e);
+            }
+        });
+    }
+
+    /**
+     * The trader: the next quote of the company, an order, and again.
+     */
+    private Future<Void> trade(String company, int shares) {
+        return scope.repeat(() -> scope.await(market.next(company))
+                .compose(quote -> order(TraderUtils.timeToSell(), shares, quote)));
+    }
+
+    private Future<Void> order(boolean sell, int shares, JsonObject quote) {
+        Future<Portfolio> done = Future.future();
+        if (sell) {
+            portfolio.sell(shares, quote, done.completer());
+        } else {
+            portfolio.buy(shares, quote, done.completer());
+        }
+        // A refused order does not stop the trader, a cancellation stops it at the next step
+        return scope.await(done).otherwiseEmpty().mapEmpty();
+    }
+}
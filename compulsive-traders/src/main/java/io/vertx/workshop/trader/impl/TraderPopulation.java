@@ -0,0 +1,114 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.workshop.trader.strategy.Strategy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The state of a population of compulsive traders, kept in arrays indexed by trader instead of one object (or one
+ * verticle) per trader.
+ * <p>
+ * Each trader has a company and a number of shares to buy or sell, picked with {@link TraderUtils}, and a
+ * {@link Strategy}. The traders are also indexed by company, so a quote is only dispatched to the traders of its
+ * company.
+ */
+class TraderPopulation {
+
+    private static final int[] NONE = new int[0];
+
+    // Company code -> company name
+    private final String[] companies;
+    // Trader -> company code, number of shares
+    private final int[] company;
+    private final int[] shares;
+    private final Strategy[] strategies;
+    // Company name -> traders
+    private final Map<String, int[]> traders = new HashMap<>();
+
+    /**
+     * @param size       the number of traders
+     * @param strategies creates the strategy of each trader
+     */
+    TraderPopulation(int size, Supplier<Strategy> strategies) {
+        company = new int[size];
+        shares = new int[size];
+        this.strategies = new Strategy[size];
+        Map<String, Integer> codes = new HashMap<>();
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            String name = TraderUtils.pickACompany();
+            Integer code = codes.get(name);
+            if (code == null) {
+                code = codes.size();
+                codes.put(name, code);
+            }
+            company[i] = code;
+            shares[i] = TraderUtils.pickANumber();
+            this.strategies[i] = strategies.get();
+            counts[code]++;
+        }
+
+        companies = new String[codes.size()];
+        codes.forEach((name, code) -> companies[code] = name);
+        int[][] index = new int[companies.length][];
+        for (int code = 0; code < companies.length; code++) {
+            index[code] = new int[counts[code]];
+            traders.put(companies[code], index[code]);
+        }
+        int[] filled = new int[companies.length];
+        for (int i = 0; i < size; i++) {
+            index[company[i]][filled[company[i]]++] = i;
+        }
+    }
+
+    /**
+     * @return the number of traders
+     */
+    int size() {
+        return company.length;
+    }
+
+    /**
+     * @param trader the trader
+     * @return the company of the trader
+     */
+    String company(int trader) {
+        return companies[company[trader]];
+    }
+
+    /**
+     * @param trader the trader
+     * @return the number of shares the trader buys or sells
+     */
+    int shares(int trader) {
+        return shares[trader];
+    }
+
+    /**
+     * @param trader the trader
+     * @return the strategy of the trader
+     */
+    Strategy strategy(int trader) {
+        return strategies[trader];
+    }
+
+    /**
+     * @param name the company name
+     * @return the traders of the company, to not modify
+     */
+    int[] tradersOf(String name) {
+        int[] result = traders.get(name);
+        return result == null ? NONE : result;
+    }
+
+    /**
+     * @return the number of traders by company
+     */
+    Map<String, Integer> distribution() {
+        Map<String, Integer> distribution = new HashMap<>();
+        traders.forEach((name, list) -> distribution.put(name, list.length));
+        return distribution;
+    }
+}
@@ -0,0 +1,152 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.servicediscovery.types.EventBusService;
+import io.vertx.servicediscovery.types.MessageSource;
+import io.vertx.workshop.common.MicroServiceVerticle;
+import io.vertx.workshop.portfolio.PortfolioService;
+import io.vertx.workshop.trader.strategy.Strategies;
+import io.vertx.workshop.trader.strategy.Strategy;
+import io.vertx.workshop.trader.strategy.Tick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A population of compulsive traders running in a single verticle.
+ * <p>
+ * Unlike {@link JavaCompulsiveTraderVerticle}, the services are retrieved once for all the traders, and the market
+ * data is consumed once, only for the companies having traders (see {@code subscribeToSymbols}): each quote is
+ * dispatched to the traders of its company only (see {@link TraderPopulation}).
+ * The number of traders is set by the `traders` configuration entry, and their strategy by the `strategy` entry (see
+ * {@link Strategies#create(JsonObject)}), buying or selling at random by default.
+ * <p>
+ * The orders go through an {@link OrderPipeline}: each trader has at most `orders.window` (1) orders in flight, the
+ * orders emitted while the window is full being dropped or coalesced (`orders.policy`: `DROP` or `COALESCE`). The
+ * order metrics are periodically published on the `traders.metrics` address. With `orders.netting` (ms), the orders
+ * are netted per company instead, see {@link OrderNetting}.
+ * <p>
+ * With `portfolio.view` set to {@code true}, the positions are checked on a local copy of the portfolio kept from the
+ * portfolio events (see {@link PortfolioView}), and the orders the portfolio service would reject are not sent.
+ */
+public class TraderPopulationVerticle extends MicroServiceVerticle {
+
+    /**
+     * The address on which the order metrics are periodically sent.
+     */
+    private static final String METRICS_ADDRESS = "traders.metrics";
+
+    private static final Logger log = LoggerFactory.getLogger(TraderPopulationVerticle.class);
+
+    private TraderPopulation population;
+    private OrderPipeline orders;
+    private OrderNetting netting;
+    private PortfolioView view;
+    private final Tick tick = new Tick();
+
+    @Override
+    public void start(Future<Void> future) {
+        super.start();
+
+        // 1. Initialize the traders
+        JsonObject strategy = config().getJsonObject("strategy", new JsonObject());
+        population = new TraderPopulation(config().getInteger("traders", 2), Strategies.factory(strategy));
+        log.info("Initialize {} traders, by company {}", population.size(), population.distribution());
+
+        // 2. Retrieve the 2 services we use, once for all the traders, the quotes being dispatched once the portfolio
+        // service is retrieved
+        Future<List<MessageConsumer<JsonObject>>> marketFuture = Future.future();
+        subscribeToSymbols("market-data", population.distribution().keySet(), message -> dispatch(message.body()),
+                marketFuture.completer());
+
+        Future<PortfolioService> portfolioFuture = Future.future();
+        EventBusService.getProxy(discovery, PortfolioService.class, portfolioFuture.completer());
+
+        Future<MessageConsumer<JsonObject>> eventsFuture = Future.future();
+        if (config().getBoolean("portfolio.view", false)) {
+            MessageSource.getConsumer(discovery, new JsonObject().put("name", "portfolio-events"),
+                    eventsFuture.completer());
+        } else {
+            eventsFuture.complete();
+        }
+
+        // 3. When all have been retrieved, dispatch every new market data to the traders of the company
+        CompositeFuture.all(marketFuture, portfolioFuture, eventsFuture).setHandler(event -> {
+            if (event.failed()) {
+                future.fail(event.cause());
+                return;
+            }
+            PortfolioService portfolio = portfolioFuture.result();
+            if (eventsFuture.result() != null) {
+                view = new PortfolioView(portfolio);
+                eventsFuture.result().handler(message -> view.onEvent(message.body()));
+                view.open(ar -> {
+                    if (ar.succeeded()) {
+                        log.info("Portfolio view synchronized at version {}", view.version());
+                    }
+                });
+            }
+            orders = new OrderPipeline(portfolio, population.size(), config().getInteger("orders.window", 1),
+                    OrderPipeline.Policy.valueOf(config().getString("orders.policy", "DROP")));
+            long nettingWindow = config().getLong("orders.netting", 0L);
+            if (nettingWindow > 0) {
+                netting = new OrderNetting(vertx, portfolio, population.size(), nettingWindow);
+            }
+            vertx.setPeriodic(config().getLong("metrics.interval", 10000L), l ->
+                    vertx.eventBus().publish(METRICS_ADDRESS, metrics()));
+            future.complete();
+        });
+    }
+
+    private void dispatch(JsonObject quote) {
+        if (orders == null) {
+            // The portfolio service is not retrieved yet
+            return;
+        }
+        tick.wrap(quote);
+        for (int trader : population.tradersOf(tick.name())) {
+            Strategy strategy = population.strategy(trader);
+            switch (strategy.evaluate(tick)) {
+                case BUY:
+                    submit(trader, true, amount(trader, strategy), quote);
+                    break;
+                case SELL:
+                    submit(trader, false, amount(trader, strategy), quote);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private int amount(int trader, Strategy strategy) {
+        // The strategy may give the amount of the order
+        return strategy.amount() > 0 ? strategy.amount() : population.shares(trader);
+    }
+
+    private void submit(int trader, boolean buy, int amount, JsonObject quote) {
+        if (view != null && !view.accepts(buy, amount, quote)) {
+            return;
+        }
+        if (netting != null) {
+            netting.submit(trader, buy, amount, quote);
+        } else {
+            orders.submit(trader, buy, amount, quote);
+        }
+    }
+
+    private JsonObject metrics() {
+        JsonObject metrics = orders.metrics();
+        if (netting != null) {
+            metrics.put("netting", netting.metrics());
+        }
+        if (view != null) {
+            metrics.put("view", view.metrics());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,153 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Runs traders written as sequential programs: a trader is a chain of futures, each step waiting for the previous one
+ * (the next quote, then the order, then the next quote...). A waiting trader holds no thread, only its pending future,
+ * so a scope can run a very large number of traders on one event loop.
+ * <p>
+ * The traders are bound to the scope: the futures awaited through {@link #await(Future)} are failed with a
+ * {@link CancellationException} when the scope is cancelled, {@link #repeat(Supplier)} stops, and the future returned
+ * by {@link #cancel()} completes once all the traders have ended.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class TraderScope {
+
+    private final Set<Future<?>> suspended = new HashSet<>();
+    private final Future<Void> ended = Future.future();
+    private boolean cancelled;
+    private int active;
+
+    // Metrics
+    private long launched;
+    private long failed;
+
+    /**
+     * Launches a trader.
+     *
+     * @param trader the trader, returning a future completed when it ends
+     */
+    void launch(Supplier<Future<Void>> trader) {
+        if (cancelled) {
+            return;
+        }
+        active++;
+        launched++;
+        Future<Void> end;
+        try {
+            end = trader.get();
+        } catch (RuntimeException e) {
+            end = Future.failedFuture(e);
+        }
+        end.setHandler(ar -> {
+            active--;
+            if (ar.failed() && !(ar.cause() instanceof CancellationException)) {
+                failed++;
+            }
+            if (cancelled && active == 0) {
+                ended.tryComplete();
+            }
+        });
+    }
+
+    /**
+     * Waits for an operation, unless the scope is cancelled meanwhile.
+     *
+     * @param operation the operation
+     * @param <T>       the type of the result
+     * @return a future completed with the result of the operation, or failed with a {@link CancellationException}
+     */
+    <T> Future<T> await(Future<T> operation) {
+        if (cancelled) {
+            return Future.failedFuture(new CancellationException());
+        }
+        if (operation.isComplete()) {
+            return operation;
+        }
+        Future<T> result = Future.future();
+        suspended.add(result);
+        operation.setHandler(ar -> {
+            suspended.remove(result);
+            if (ar.succeeded()) {
+                result.tryComplete(ar.result());
+            } else {
+                result.tryFail(ar.cause());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a step again and again, until it fails or the scope is cancelled. The steps completed synchronously run in
+     * a loop, not recursively.
+     *
+     * @param step the step
+     * @return a future failed with the failure of the step or a {@link CancellationException}
+     */
+    Future<Void> repeat(Supplier<Future<Void>> step) {
+        Future<Void> done = Future.future();
+        iterate(step, done);
+        return done;
+    }
+
+    /**
+     * Cancels the traders.
+     *
+     * @return a future completed when all the traders have ended
+     */
+    Future<Void> cancel() {
+        cancelled = true;
+        new ArrayList<>(suspended).forEach(future -> future.tryFail(new CancellationException()));
+        suspended.clear();
+        if (active == 0) {
+            ended.tryComplete();
+        }
+        return ended;
+    }
+
+    /**
+     * @return the number of running traders, of traders waiting for an operation, of launched and failed traders
+     */
+    JsonObject metrics() {
+        return new JsonObject()
+                .put("active", active)
+                .put("suspended", suspended.size())
+                .put("launched", launched)
+                .put("failed", failed);
+    }
+
+    private void iterate(Supplier<Future<Void>> step, Future<Void> done) {
+        while (!cancelled) {
+            Future<Void> next;
+            try {
+                next = step.get();
+            } catch (RuntimeException e) {
+                next = Future.failedFuture(e);
+            }
+            if (!next.isComplete()) {
+                next.setHandler(ar -> {
+                    if (ar.failed()) {
+                        done.tryFail(ar.cause());
+                    } else {
+                        iterate(step, done);
+                    }
+                });
+                return;
+            }
+            if (next.failed()) {
+                done.tryFail(next.cause());
+                return;
+            }
+        }
+        done.tryFail(new CancellationException());
+    }
+}
@@ -2,6 +2,11 @@ package io.vertx.workshop.trader.impl;
 
 import io.vertx.core.json.JsonObject;
 import io.vertx.workshop.portfolio.PortfolioService;
+import io.vertx.workshop.trader.strategy.Signal;
+import io.vertx.workshop.trader.strategy.Strategy;
+import io.vertx.workshop.trader.strategy.Tick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.Random;
@@ -11,6 +16,8 @@ import java.util.Random;
  */
 public class TraderUtils {
 
+    private static final Logger log = LoggerFactory.getLogger(TraderUtils.class);
+
     private final static Random RANDOM = new Random();
 
     public static String pickACompany() {
@@ -36,23 +43,51 @@ public class TraderUtils {
     public static void dumbTradingLogic(
             String company, int numberOfShares, PortfolioService portfolio, JsonObject quote) {
         if (quote.getString("name").equals(company)) {
-            if (TraderUtils.timeToSell()) {
-                portfolio.sell(numberOfShares, quote, p -> {
-                    if (p.succeeded()) {
-                        System.out.println("Sold " + numberOfShares + " of " + company + "!");
-                    } else {
-                        System.out.println("D'oh, failed to sell " + numberOfShares + " of " + company + " : " + p.cause());
-                    }
-                });
-            } else {
-                portfolio.buy(numberOfShares, quote, p -> {
-                    if (p.succeeded()) {
-                        System.out.println("Bought " + numberOfShares + " of " + company + " !");
-                    } else {
-                        System.out.println("D'oh, failed to buy " + numberOfShares + " of " + company + " : " + p.cause());
-                    }
-                });
-            }
+            order(TraderUtils.timeToSell(), company, numberOfShares, portfolio, quote);
+        }
+    }
+
+    /**
+     * Evaluates a strategy on a quote of the company, and sends the order of its signal.
+     *
+     * @param company        the company
+     * @param numberOfShares the number of share to buy or sell, unless the strategy gives it
+     * @param strategy       the strategy
+     * @param tick           the tick wrapping the quotes, reused
+     * @param portfolio      the portfolio service
+     * @param quote          the quote
+     */
+    public static void strategyTradingLogic(String company, int numberOfShares, Strategy strategy, Tick tick,
+                                            PortfolioService portfolio, JsonObject quote) {
+        if (!quote.getString("name").equals(company)) {
+            return;
+        }
+        Signal signal = strategy.evaluate(tick.wrap(quote));
+        if (signal != Signal.HOLD) {
+            order(signal == Signal.SELL, company, strategy.amount() > 0 ? strategy.amount() : numberOfShares,
+                    portfolio, quote);
+        }
+    }
+
+    private static void order(boolean sell, String company, int numberOfShares, PortfolioService portfolio,
+                              JsonObject quote) {
+        if (sell) {
+            portfolio.sell(numberOfShares, quote, p -> {
+                if (p.succeeded()) {
+                    log.debug("Sold {} of {}", numberOfShares, company);
+                } else {
+                    log.debug("D'oh, failed to sell {} of {} : {}", numberOfShares, company,
+                            p.cause().getMessage());
+                }
+            });
+        } else {
+            portfolio.buy(numberOfShares, quote, p -> {
+                if (p.succeeded()) {
+                    log.debug("Bought {} of {}", numberOfShares, company);
+                } else {
+                    log.debug("D'oh, failed to buy {} of {} : {}", numberOfShares, company, p.cause().getMessage());
+                }
+            });
         }
     }
 
@@ -69,4 +104,19 @@ public class TraderUtils {
         JsonObject json = new JsonObject(quote);
         dumbTradingLogic(company, numberOfShares, portfolio, json);
     }
+
+    /**
+     * Version called from Groovy where json are maps. The map is wrapped, not copied.
+     *
+     * @param company        the company
+     * @param numberOfShares the number of share to buy or sell, unless the strategy gives it
+     * @param strategy       the strategy
+     * @param tick           the tick wrapping the quotes, reused
+     * @param portfolio      the portfolio service
+     * @param quote          the quote
+     */
+    public static void strategyTradingLogic(String company, int numberOfShares, Strategy strategy, Tick tick,
+                                            PortfolioService portfolio, Map<String, Object> quote) {
+        strategyTradingLogic(company, numberOfShares, strategy, tick, portfolio, new JsonObject(quote));
+    }
 }
@@ -0,0 +1,55 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * The Bollinger bands of the price: the moving average of the last `period` ticks ({@link #value()}), plus or minus
+ * `k` standard deviations.
+ */
+public class BollingerBands implements Indicator {
+
+    private final DoubleRing prices;
+    private final double k;
+    private double sum;
+    private double sumOfSquares;
+
+    public BollingerBands(int period, double k) {
+        this.prices = new DoubleRing(period);
+        this.k = k;
+    }
+
+    @Override
+    public void update(Tick tick) {
+        double price = tick.price();
+        double evicted = prices.push(price);
+        sum += price - evicted;
+        sumOfSquares += price * price - evicted * evicted;
+    }
+
+    @Override
+    public boolean ready() {
+        return prices.full();
+    }
+
+    @Override
+    public double value() {
+        return prices.size() == 0 ? 0 : sum / prices.size();
+    }
+
+    /**
+     * @return the standard deviation of the price
+     */
+    public double deviation() {
+        if (prices.size() == 0) {
+            return 0;
+        }
+        double mean = value();
+        return Math.sqrt(Math.max(0, sumOfSquares / prices.size() - mean * mean));
+    }
+
+    public double upper() {
+        return value() + k * deviation();
+    }
+
+    public double lower() {
+        return value() - k * deviation();
+    }
+}
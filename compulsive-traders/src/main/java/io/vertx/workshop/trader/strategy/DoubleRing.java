@@ -0,0 +1,43 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * A fixed-size ring of doubles, keeping the last values of a series.
+ */
+class DoubleRing {
+
+    private final double[] values;
+    private int next;
+    private int size;
+
+    DoubleRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The period must be positive: " + capacity);
+        }
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds a value, evicting the oldest one when full.
+     *
+     * @param value the value
+     * @return the evicted value, 0 if none
+     */
+    double push(double value) {
+        double evicted = values[next];
+        values[next] = value;
+        next = (next + 1) % values.length;
+        if (size < values.length) {
+            size++;
+            return 0;
+        }
+        return evicted;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean full() {
+        return size == values.length;
+    }
+}
@@ -0,0 +1,36 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * The exponential moving average of the price, with a smoothing factor of `2 / (period + 1)`.
+ */
+public class ExponentialMovingAverage implements Indicator {
+
+    private final int period;
+    private final double alpha;
+    private double value;
+    private int count;
+
+    public ExponentialMovingAverage(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("The period must be positive: " + period);
+        }
+        this.period = period;
+        this.alpha = 2.0 / (period + 1);
+    }
+
+    @Override
+    public void update(Tick tick) {
+        value = count == 0 ? tick.price() : value + alpha * (tick.price() - value);
+        count++;
+    }
+
+    @Override
+    public boolean ready() {
+        return count >= period;
+    }
+
+    @Override
+    public double value() {
+        return value;
+    }
+}
@@ -0,0 +1,24 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * A technical indicator, updated incrementally: {@link #update(Tick)} runs in constant time and does not allocate.
+ */
+public interface Indicator {
+
+    /**
+     * Updates the indicator with a new tick.
+     *
+     * @param tick the tick
+     */
+    void update(Tick tick);
+
+    /**
+     * @return whether enough ticks were received for the value to be meaningful
+     */
+    boolean ready();
+
+    /**
+     * @return the current value
+     */
+    double value();
+}
@@ -0,0 +1,48 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * The relative strength index of the price, between 0 and 100, with the Wilder smoothing of the average gains and
+ * losses.
+ */
+public class RelativeStrengthIndex implements Indicator {
+
+    private final int period;
+    private double previous = Double.NaN;
+    private double gain;
+    private double loss;
+    private int count;
+
+    public RelativeStrengthIndex(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("The period must be positive: " + period);
+        }
+        this.period = period;
+    }
+
+    @Override
+    public void update(Tick tick) {
+        double price = tick.price();
+        if (!Double.isNaN(previous)) {
+            double change = price - previous;
+            count++;
+            // Simple average of the first changes, then smoothed
+            int weight = Math.min(count, period);
+            gain += (Math.max(change, 0) - gain) / weight;
+            loss += (Math.max(-change, 0) - loss) / weight;
+        }
+        previous = price;
+    }
+
+    @Override
+    public boolean ready() {
+        return count >= period;
+    }
+
+    @Override
+    public double value() {
+        if (loss == 0) {
+            return gain == 0 ? 50 : 100;
+        }
+        return 100 - 100 / (1 + gain / loss);
+    }
+}
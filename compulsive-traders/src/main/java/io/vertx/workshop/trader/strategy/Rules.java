@@ -0,0 +1,465 @@
+package io.vertx.workshop.trader.strategy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Trading rules written in a small expression language, such as:
+ * <pre>
+ * when price &lt; lower(20, 2) and rsi(14) &lt; 30 buy 5;
+ * when price &gt; sma(20) * 1.05 sell
+ * </pre>
+ * A rule is `when &lt;condition&gt; buy|sell [amount]`, the rules being separated by `;` or new lines. Conditions
+ * compare arithmetic expressions (`+ - * /`, parentheses) with `&lt; &lt;= &gt; &gt;= == !=`, combined with `and`,
+ * `or` and `not`. The expressions use numbers, the tick values (`bid`, `ask`, `price`, `volume`) and the indicators
+ * `sma(n)`, `ema(n)`, `rsi(n)`, `vwap(n)`, `upper(n, k)` and `lower(n, k)` (Bollinger bands). The amounts and the
+ * periods are positive integers, checked when the text is parsed.
+ * <p>
+ * The text is parsed once, into a tree of lambdas over the {@link Tick}. Each {@link #newStrategy()} call creates a
+ * strategy with its own indicators, evaluating the rules in order and returning the signal of the first matching one.
+ */
+public final class Rules {
+
+    private final List<Rule> rules;
+
+    private Rules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @param text the rules
+     * @return the parsed rules
+     * @throws IllegalArgumentException if the text is not valid
+     */
+    public static Rules parse(String text) {
+        return new Parser(text).rules();
+    }
+
+    /**
+     * @return a new strategy applying the rules, with its own indicators
+     */
+    public RuleStrategy newStrategy() {
+        Map<String, Indicator> indicators = new LinkedHashMap<>();
+        Compiled[] compiled = new Compiled[rules.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            Rule rule = rules.get(i);
+            compiled[i] = new Compiled(rule.condition.compile(indicators), rule.signal, rule.amount);
+        }
+        return new RuleStrategy(indicators.values().toArray(new Indicator[0]), compiled);
+    }
+
+    /**
+     * A strategy compiled from {@link Rules}.
+     */
+    public static final class RuleStrategy implements Strategy {
+        private final Indicator[] indicators;
+        private final Compiled[] rules;
+        private int amount;
+
+        private RuleStrategy(Indicator[] indicators, Compiled[] rules) {
+            this.indicators = indicators;
+            this.rules = rules;
+        }
+
+        @Override
+        public Signal evaluate(Tick tick) {
+            for (Indicator indicator : indicators) {
+                indicator.update(tick);
+            }
+            for (Indicator indicator : indicators) {
+                if (!indicator.ready()) {
+                    return Signal.HOLD;
+                }
+            }
+            for (Compiled rule : rules) {
+                if (rule.condition.test(tick)) {
+                    amount = rule.amount;
+                    return rule.signal;
+                }
+            }
+            return Signal.HOLD;
+        }
+
+        /**
+         * @return the amount of the last matching rule, 0 if the rule has no amount
+         */
+        @Override
+        public int amount() {
+            return amount;
+        }
+    }
+
+    // The compiled trees
+
+    private interface Expression {
+        double eval(Tick tick);
+    }
+
+    private interface Condition {
+        boolean test(Tick tick);
+    }
+
+    private static final class Compiled {
+        final Condition condition;
+        final Signal signal;
+        final int amount;
+
+        Compiled(Condition condition, Signal signal, int amount) {
+            this.condition = condition;
+            this.signal = signal;
+            this.amount = amount;
+        }
+    }
+
+    // The syntax tree, compiled for each strategy so each one gets its own indicators (shared between its rules)
+
+    private interface ExpressionNode {
+        Expression compile(Map<String, Indicator> indicators);
+    }
+
+    private interface ConditionNode {
+        Condition compile(Map<String, Indicator> indicators);
+    }
+
+    private static final class Rule {
+        final ConditionNode condition;
+        final Signal signal;
+        final int amount;
+
+        Rule(ConditionNode condition, Signal signal, int amount) {
+            this.condition = condition;
+            this.signal = signal;
+            this.amount = amount;
+        }
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Rules rules() {
+            List<Rule> rules = new ArrayList<>();
+            skipSeparators();
+            while (position < text.length()) {
+                rules.add(rule());
+                skipSpaces();
+                if (position < text.length() && !separator()) {
+                    throw error("Expected ';' or a new line");
+                }
+                skipSeparators();
+            }
+            if (rules.isEmpty()) {
+                throw error("No rule");
+            }
+            return new Rules(rules);
+        }
+
+        private Rule rule() {
+            keyword("when");
+            ConditionNode condition = or();
+            String action = identifier();
+            Signal signal;
+            if (action.equals("buy")) {
+                signal = Signal.BUY;
+            } else if (action.equals("sell")) {
+                signal = Signal.SELL;
+            } else {
+                throw error("Expected 'buy' or 'sell', found '" + action + "'");
+            }
+            skipSpaces();
+            int amount = 0;
+            if (position < text.length() && Character.isDigit(text.charAt(position))) {
+                amount = positiveInteger("amount");
+            }
+            return new Rule(condition, signal, amount);
+        }
+
+        private ConditionNode or() {
+            ConditionNode left = and();
+            while (peekKeyword("or")) {
+                keyword("or");
+                ConditionNode l = left;
+                ConditionNode r = and();
+                left = indicators -> {
+                    Condition a = l.compile(indicators);
+                    Condition b = r.compile(indicators);
+                    return tick -> a.test(tick) || b.test(tick);
+                };
+            }
+            return left;
+        }
+
+        private ConditionNode and() {
+            ConditionNode left = not();
+            while (peekKeyword("and")) {
+                keyword("and");
+                ConditionNode l = left;
+                ConditionNode r = not();
+                left = indicators -> {
+                    Condition a = l.compile(indicators);
+                    Condition b = r.compile(indicators);
+                    return tick -> a.test(tick) && b.test(tick);
+                };
+            }
+            return left;
+        }
+
+        private ConditionNode not() {
+            if (peekKeyword("not")) {
+                keyword("not");
+                ConditionNode negated = not();
+                return indicators -> {
+                    Condition c = negated.compile(indicators);
+                    return tick -> !c.test(tick);
+                };
+            }
+            return comparison();
+        }
+
+        private ConditionNode comparison() {
+            ExpressionNode left = sum();
+            skipSpaces();
+            String operator = null;
+            for (String candidate : new String[]{"<=", ">=", "==", "!=", "<", ">"}) {
+                if (text.startsWith(candidate, position)) {
+                    operator = candidate;
+                    break;
+                }
+            }
+            if (operator == null) {
+                throw error("Expected a comparison");
+            }
+            position += operator.length();
+            ExpressionNode right = sum();
+            String op = operator;
+            return indicators -> {
+                Expression a = left.compile(indicators);
+                Expression b = right.compile(indicators);
+                switch (op) {
+                    case "<=":
+                        return tick -> a.eval(tick) <= b.eval(tick);
+                    case ">=":
+                        return tick -> a.eval(tick) >= b.eval(tick);
+                    case "==":
+                        return tick -> a.eval(tick) == b.eval(tick);
+                    case "!=":
+                        return tick -> a.eval(tick) != b.eval(tick);
+                    case "<":
+                        return tick -> a.eval(tick) < b.eval(tick);
+                    default:
+                        return tick -> a.eval(tick) > b.eval(tick);
+                }
+            };
+        }
+
+        private ExpressionNode sum() {
+            ExpressionNode left = product();
+            while (true) {
+                skipSpaces();
+                if (peek('+') || peek('-')) {
+                    boolean plus = text.charAt(position++) == '+';
+                    ExpressionNode l = left;
+                    ExpressionNode r = product();
+                    left = indicators -> {
+                        Expression a = l.compile(indicators);
+                        Expression b = r.compile(indicators);
+                        return plus ? tick -> a.eval(tick) + b.eval(tick) : tick -> a.eval(tick) - b.eval(tick);
+                    };
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private ExpressionNode product() {
+            ExpressionNode left = factor();
+            while (true) {
+                skipSpaces();
+                if (peek('*') || peek('/')) {
+                    boolean times = text.charAt(position++) == '*';
+                    ExpressionNode l = left;
+                    ExpressionNode r = factor();
+                    left = indicators -> {
+                        Expression a = l.compile(indicators);
+                        Expression b = r.compile(indicators);
+                        return times ? tick -> a.eval(tick) * b.eval(tick) : tick -> a.eval(tick) / b.eval(tick);
+                    };
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private ExpressionNode factor() {
+            skipSpaces();
+            if (position >= text.length()) {
+                throw error("Unexpected end of the rules");
+            }
+            char c = text.charAt(position);
+            if (c == '-') {
+                position++;
+                ExpressionNode negated = factor();
+                return indicators -> {
+                    Expression e = negated.compile(indicators);
+                    return tick -> -e.eval(tick);
+                };
+            }
+            if (c == '(') {
+                position++;
+                ExpressionNode inner = sum();
+                expect(')');
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                double value = number();
+                return indicators -> tick -> value;
+            }
+            String name = identifier();
+            switch (name) {
+                case "bid":
+                    return indicators -> Tick::bid;
+                case "ask":
+                    return indicators -> Tick::ask;
+                case "price":
+                    return indicators -> Tick::price;
+                case "volume":
+                    return indicators -> Tick::volume;
+                case "sma":
+                    return indicator(name, period(), SimpleMovingAverage::new);
+                case "ema":
+                    return indicator(name, period(), ExponentialMovingAverage::new);
+                case "rsi":
+                    return indicator(name, period(), RelativeStrengthIndex::new);
+                case "vwap":
+                    return indicator(name, period(), VolumeWeightedAveragePrice::new);
+                case "upper":
+                case "lower":
+                    expect('(');
+                    int period = positiveInteger("period");
+                    expect(',');
+                    skipSpaces();
+                    double k = number();
+                    expect(')');
+                    boolean upper = name.equals("upper");
+                    // Both bands share the same indicator
+                    String key = "bands" + period + "," + k;
+                    return indicators -> {
+                        BollingerBands bands = (BollingerBands) indicators.computeIfAbsent(key,
+                                x -> new BollingerBands(period, k));
+                        return upper ? tick -> bands.upper() : tick -> bands.lower();
+                    };
+                default:
+                    throw error("Unknown value '" + name + "'");
+            }
+        }
+
+        private ExpressionNode indicator(String name, int period, IntFunction<Indicator> factory) {
+            String key = name + period;
+            return indicators -> {
+                Indicator indicator = indicators.computeIfAbsent(key, k -> factory.apply(period));
+                return tick -> indicator.value();
+            };
+        }
+
+        private int period() {
+            expect('(');
+            int period = positiveInteger("period");
+            expect(')');
+            return period;
+        }
+
+        private int positiveInteger(String what) {
+            skipSpaces();
+            int start = position;
+            double value = number();
+            if (value != Math.rint(value) || value <= 0 || value > Integer.MAX_VALUE) {
+                String found = text.substring(start, position);
+                position = start;
+                throw error("The " + what + " must be a positive integer, found " + found);
+            }
+            return (int) value;
+        }
+
+        private double number() {
+            int start = position;
+            while (position < text.length()
+                    && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                position++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Expected a number");
+            }
+        }
+
+        private String identifier() {
+            skipSpaces();
+            int start = position;
+            while (position < text.length() && Character.isLetter(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("Expected a name");
+            }
+            return text.substring(start, position);
+        }
+
+        private void keyword(String keyword) {
+            int start = position;
+            if (!identifier().equals(keyword)) {
+                position = start;
+                skipSpaces();
+                throw error("Expected '" + keyword + "'");
+            }
+        }
+
+        private boolean peekKeyword(String keyword) {
+            skipSpaces();
+            int end = position + keyword.length();
+            return text.startsWith(keyword, position)
+                    && (end == text.length() || !Character.isLetter(text.charAt(end)));
+        }
+
+        private boolean peek(char c) {
+            return position < text.length() && text.charAt(position) == c;
+        }
+
+        private void expect(char c) {
+            skipSpaces();
+            if (!peek(c)) {
+                throw error("Expected '" + c + "'");
+            }
+            position++;
+        }
+
+        private boolean separator() {
+            char c = text.charAt(position);
+            return c == ';' || c == '\n' || c == '\r';
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && (text.charAt(position) == ' ' || text.charAt(position) == '\t')) {
+                position++;
+            }
+        }
+
+        private void skipSeparators() {
+            while (position < text.length() && (Character.isWhitespace(text.charAt(position)) || separator())) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " in: " + text);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * The decision of a {@link Strategy} on a tick.
+ */
+public enum Signal {
+    BUY,
+    SELL,
+    HOLD
+}
@@ -0,0 +1,29 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * The average price of the last `period` ticks.
+ */
+public class SimpleMovingAverage implements Indicator {
+
+    private final DoubleRing prices;
+    private double sum;
+
+    public SimpleMovingAverage(int period) {
+        prices = new DoubleRing(period);
+    }
+
+    @Override
+    public void update(Tick tick) {
+        sum += tick.price() - prices.push(tick.price());
+    }
+
+    @Override
+    public boolean ready() {
+        return prices.full();
+    }
+
+    @Override
+    public double value() {
+        return prices.size() == 0 ? 0 : sum / prices.size();
+    }
+}
@@ -0,0 +1,183 @@
+package io.vertx.workshop.trader.strategy;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * The built-in strategies, and their creation from a configuration.
+ */
+public final class Strategies {
+
+    private Strategies() {
+        // Avoid direct instantiation
+    }
+
+    /**
+     * Creates a strategy from its configuration: the `type` entry, `random` by default, and its parameters:
+     * <ul>
+     * <li>`random`: buys or sells on every tick, as the historical compulsive traders</li>
+     * <li>`crossover`: `fast` (5) and `slow` (20) periods, `ema` to use exponential averages</li>
+     * <li>`rsi`: `period` (14), `low` (30) and `high` (70)</li>
+     * <li>`bollinger`: `period` (20) and `k` (2)</li>
+     * <li>`vwap`: `period` (20) and `threshold` (0.01), the relative distance to the VWAP</li>
+     * <li>`rules`: `rules`, the text of the {@link Rules}</li>
+     * </ul>
+     * Each call creates a new strategy, with its own indicators.
+     *
+     * @param config the configuration
+     * @return the strategy
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public static Strategy create(JsonObject config) {
+        String type = config.getString("type", "random");
+        switch (type) {
+            case "rules":
+                return Rules.parse(config.getString("rules", "")).newStrategy();
+            case "random":
+                return random();
+            case "crossover":
+                int fast = config.getInteger("fast", 5);
+                int slow = config.getInteger("slow", 20);
+                return config.getBoolean("ema", false)
+                        ? crossover(new ExponentialMovingAverage(fast), new ExponentialMovingAverage(slow))
+                        : crossover(new SimpleMovingAverage(fast), new SimpleMovingAverage(slow));
+            case "rsi":
+                return threshold(new RelativeStrengthIndex(config.getInteger("period", 14)),
+                        config.getDouble("low", 30.0), config.getDouble("high", 70.0));
+            case "bollinger":
+                return bands(new BollingerBands(config.getInteger("period", 20), config.getDouble("k", 2.0)));
+            case "vwap":
+                return distance(new VolumeWeightedAveragePrice(config.getInteger("period", 20)),
+                        config.getDouble("threshold", 0.01));
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + type);
+        }
+    }
+
+    /**
+     * Creates a factory of strategies from their configuration, see {@link #create(JsonObject)}. The configuration is
+     * validated, and the rules parsed, once.
+     *
+     * @param config the configuration
+     * @return the factory
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static Supplier<Strategy> factory(JsonObject config) {
+        if ("rules".equals(config.getString("type"))) {
+            Rules rules = Rules.parse(config.getString("rules", ""));
+            return rules::newStrategy;
+        }
+        create(config);
+        return () -> create(config);
+    }
+
+    /**
+     * @return a strategy buying or selling at random on every tick
+     */
+    public static Strategy random() {
+        return tick -> ThreadLocalRandom.current().nextBoolean() ? Signal.SELL : Signal.BUY;
+    }
+
+    /**
+     * @param fast the fast indicator
+     * @param slow the slow indicator
+     * @return a strategy buying when the fast indicator crosses above the slow one, and selling when it crosses below
+     */
+    public static Strategy crossover(Indicator fast, Indicator slow) {
+        return new Crossover(fast, slow);
+    }
+
+    /**
+     * @param indicator the indicator, an oscillator such as the {@link RelativeStrengthIndex}
+     * @param low       the value under which the strategy buys
+     * @param high      the value above which the strategy sells
+     * @return the strategy
+     */
+    public static Strategy threshold(Indicator indicator, double low, double high) {
+        return tick -> {
+            indicator.update(tick);
+            if (!indicator.ready()) {
+                return Signal.HOLD;
+            }
+            return indicator.value() < low ? Signal.BUY : indicator.value() > high ? Signal.SELL : Signal.HOLD;
+        };
+    }
+
+    /**
+     * @param bands the bands
+     * @return a strategy buying when the price goes under the lower band, and selling when it goes above the upper one
+     */
+    public static Strategy bands(BollingerBands bands) {
+        return tick -> {
+            bands.update(tick);
+            if (!bands.ready()) {
+                return Signal.HOLD;
+            }
+            return tick.price() < bands.lower() ? Signal.BUY : tick.price() > bands.upper() ? Signal.SELL : Signal.HOLD;
+        };
+    }
+
+    /**
+     * @param reference the reference price, such as the {@link VolumeWeightedAveragePrice}
+     * @param threshold the relative distance to the reference triggering a signal
+     * @return a strategy buying when the price is under the reference, and selling when it is above
+     */
+    public static Strategy distance(Indicator reference, double threshold) {
+        return tick -> {
+            reference.update(tick);
+            if (!reference.ready() || reference.value() == 0) {
+                return Signal.HOLD;
+            }
+            double distance = (tick.price() - reference.value()) / reference.value();
+            return distance < -threshold ? Signal.BUY : distance > threshold ? Signal.SELL : Signal.HOLD;
+        };
+    }
+
+    /**
+     * @param strategies the strategies
+     * @return a strategy emitting a signal only when all the given strategies agree on it
+     */
+    public static Strategy unanimous(Strategy... strategies) {
+        return tick -> {
+            Signal signal = null;
+            for (Strategy strategy : strategies) {
+                // Evaluate all of them, to update their indicators
+                Signal s = strategy.evaluate(tick);
+                signal = signal == null || signal == s ? s : Signal.HOLD;
+            }
+            return signal == null ? Signal.HOLD : signal;
+        };
+    }
+
+    private static final class Crossover implements Strategy {
+        private final Indicator fast;
+        private final Indicator slow;
+        // The sign of fast - slow on the previous tick, 0 if unknown
+        private int previous;
+
+        Crossover(Indicator fast, Indicator slow) {
+            this.fast = fast;
+            this.slow = slow;
+        }
+
+        @Override
+        public Signal evaluate(Tick tick) {
+            fast.update(tick);
+            slow.update(tick);
+            if (!fast.ready() || !slow.ready()) {
+                return Signal.HOLD;
+            }
+            int sign = (int) Math.signum(fast.value() - slow.value());
+            Signal signal = Signal.HOLD;
+            if (previous != 0 && sign != 0 && sign != previous) {
+                signal = sign > 0 ? Signal.BUY : Signal.SELL;
+            }
+            if (sign != 0) {
+                previous = sign;
+            }
+            return signal;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * A trading strategy, evaluated on each tick of a company. A strategy owns its indicators and updates them in
+ * {@link #evaluate(Tick)}, which must not allocate: a trader process runs thousands of strategies on the live ticks.
+ * See {@link Strategies} for the built-in strategies.
+ */
+@FunctionalInterface
+public interface Strategy {
+
+    /**
+     * @param tick the tick, not to keep
+     * @return the signal
+     */
+    Signal evaluate(Tick tick);
+
+    /**
+     * @return the number of shares of the order given by the last signal, 0 to let the trader choose it
+     */
+    default int amount() {
+        return 0;
+    }
+}
@@ -0,0 +1,73 @@
+package io.vertx.workshop.trader.strategy;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A market tick, read from a quote. A tick is a flyweight: the same instance is {@link #wrap(JsonObject) rewrapped}
+ * on each quote, so the strategies must not keep it.
+ */
+public final class Tick {
+
+    private String symbol;
+    private String name;
+    private double bid;
+    private double ask;
+    private double volume;
+
+    /**
+     * Reads a quote, as sent by the quote generator.
+     *
+     * @param quote the quote
+     * @return this tick
+     */
+    public Tick wrap(JsonObject quote) {
+        return set(quote.getString("symbol"), quote.getString("name"), quote.getDouble("bid"), quote.getDouble("ask"),
+                quote.getInteger("shares", 0));
+    }
+
+    /**
+     * Sets the tick values.
+     *
+     * @param symbol the company symbol
+     * @param name   the company name
+     * @param bid    the bid price
+     * @param ask    the ask price
+     * @param volume the volume (the shares available on the market)
+     * @return this tick
+     */
+    public Tick set(String symbol, String name, double bid, double ask, double volume) {
+        this.symbol = symbol;
+        this.name = name;
+        this.bid = bid;
+        this.ask = ask;
+        this.volume = volume;
+        return this;
+    }
+
+    public String symbol() {
+        return symbol;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public double bid() {
+        return bid;
+    }
+
+    public double ask() {
+        return ask;
+    }
+
+    public double volume() {
+        return volume;
+    }
+
+    /**
+     * @return the mid price
+     */
+    public double price() {
+        return (bid + ask) / 2;
+    }
+}
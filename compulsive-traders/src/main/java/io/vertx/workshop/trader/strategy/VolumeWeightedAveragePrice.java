@@ -0,0 +1,34 @@
+package io.vertx.workshop.trader.strategy;
+
+/**
+ * The volume-weighted average price of the last `period` ticks.
+ */
+public class VolumeWeightedAveragePrice implements Indicator {
+
+    private final DoubleRing notionals;
+    private final DoubleRing volumes;
+    private double notional;
+    private double volume;
+
+    public VolumeWeightedAveragePrice(int period) {
+        notionals = new DoubleRing(period);
+        volumes = new DoubleRing(period);
+    }
+
+    @Override
+    public void update(Tick tick) {
+        double n = tick.price() * tick.volume();
+        notional += n - notionals.push(n);
+        volume += tick.volume() - volumes.push(tick.volume());
+    }
+
+    @Override
+    public boolean ready() {
+        return volumes.full();
+    }
+
+    @Override
+    public double value() {
+        return volume == 0 ? 0 : notional / volume;
+    }
+}
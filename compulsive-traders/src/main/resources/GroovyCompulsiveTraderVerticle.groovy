@@ -9,12 +9,23 @@ import io.vertx.groovy.core.eventbus.MessageConsumer
 import io.vertx.groovy.servicediscovery.ServiceDiscovery
 import io.vertx.groovy.servicediscovery.types.EventBusService
 import io.vertx.groovy.servicediscovery.types.MessageSource
+import io.vertx.core.json.JsonObject
 import io.vertx.workshop.portfolio.PortfolioService
 import io.vertx.workshop.trader.impl.TraderUtils
+import io.vertx.workshop.trader.strategy.Strategies
+import io.vertx.workshop.trader.strategy.Strategy
+import io.vertx.workshop.trader.strategy.Tick
 
 def company = TraderUtils.pickACompany();
 def numberOfShares = TraderUtils.pickANumber();
 
+// The strategy from the `strategy` configuration entry, such as
+// ["type": "rules", "rules": "when price < sma(20) buy 5"]. The rules are compiled once, into Java code evaluated
+// without dynamic dispatch. Without strategy, the trader buys or sells at random.
+Map strategyConfig = vertx.getOrCreateContext().config()?.get("strategy");
+Strategy strategy = strategyConfig == null ? null : Strategies.create(new JsonObject(strategyConfig));
+Tick tick = new Tick();
+
 println("Groovy compulsive trader configured for company " + company + " and shares: " + numberOfShares);
 
 // We create the discovery service object.
@@ -40,7 +51,11 @@ CompositeFuture.all(marketFuture, portfolioFuture).setHandler({ ar ->
         // Listen the market...
         marketConsumer.handler({ message ->
             Map quote = message.body();
-            TraderUtils.dumbTradingLogic(company, numberOfShares, portfolio, quote);
+            if (strategy == null) {
+                TraderUtils.dumbTradingLogic(company, numberOfShares, portfolio, quote);
+            } else {
+                TraderUtils.strategyTradingLogic(company, numberOfShares, strategy, tick, portfolio, quote);
+            }
         });
     }
 });
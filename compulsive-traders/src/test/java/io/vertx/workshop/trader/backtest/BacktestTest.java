@@ -0,0 +1,66 @@
+package io.vertx.workshop.trader.backtest;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BacktestTest {
+
+  private TickSeries series() {
+    List<JsonObject> quotes = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      double price = 100 + 20 * Math.sin(i / 10.0);
+      quotes.add(quote("MacroHard", "MCH", price));
+      quotes.add(quote("Divinator", "DVN", 50));
+    }
+    return TickSeries.of(quotes);
+  }
+
+  private JsonObject quote(String name, String symbol, double price) {
+    return new JsonObject()
+        .put("name", name)
+        .put("symbol", symbol)
+        .put("bid", price - 1)
+        .put("ask", price + 1)
+        .put("shares", 1000);
+  }
+
+  @Test
+  public void testTheSimulatedPortfolioFollowsThePortfolioServiceRules() {
+    SimulatedPortfolio portfolio = new SimulatedPortfolio(100);
+    assertThat(portfolio.sell(1, 10)).isFalse();
+    assertThat(portfolio.buy(5, 10, 4)).isFalse();
+    assertThat(portfolio.buy(5, 10, 1000)).isTrue();
+    assertThat(portfolio.buy(6, 10, 1000)).isFalse();
+    assertThat(portfolio.sell(5, 9)).isTrue();
+    assertThat(portfolio.cash()).isEqualTo(95.0);
+    assertThat(portfolio.rejected()).isEqualTo(3);
+  }
+
+  @Test
+  public void testSweep() {
+    Backtest backtest = new Backtest(series(), "MacroHard", 5, 10000);
+    List<JsonObject> configs = Backtest.grid(new JsonObject().put("type", "crossover"),
+        new JsonObject().put("fast", new JsonArray().add(2).add(5)).put("slow", new JsonArray().add(10).add(20)));
+    configs.add(new JsonObject().put("type", "bollinger"));
+    assertThat(configs).hasSize(5);
+
+    JsonObject result = backtest.sweep(configs, new ForkJoinPool(2));
+    JsonArray results = result.getJsonArray("results");
+    assertThat(results).hasSize(5);
+    for (int i = 1; i < results.size(); i++) {
+      assertThat(results.getJsonObject(i - 1).getDouble("value"))
+          .isGreaterThanOrEqualTo(results.getJsonObject(i).getDouble("value"));
+    }
+    // Buying low and selling high on a sine wave
+    assertThat(results.getJsonObject(0).getDouble("return")).isGreaterThan(0.0);
+    assertThat(result.getJsonObject("stats").getLong("ticks")).isEqualTo(5 * 2000L);
+    assertThat(result.getJsonObject("stats").getLong("throughput")).isGreaterThan(0L);
+  }
+}
@@ -0,0 +1,122 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class OrderNettingTest {
+
+  private static final JsonObject QUOTE = new JsonObject().put("name", "MacroHard").put("ask", 10.0).put("bid", 9.0)
+      .put("shares", 1000);
+
+  private Vertx vertx;
+  private final List<Integer> amounts = new ArrayList<>();
+  private final List<Handler<AsyncResult<Portfolio>>> replies = new ArrayList<>();
+
+  /**
+   * A portfolio service recording the orders, replied by the test.
+   */
+  private final PortfolioService portfolio = new PortfolioService() {
+    @Override
+    public void getPortfolio(Handler<AsyncResult<Portfolio>> resultHandler) {
+    }
+
+    @Override
+    public void buy(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+      amounts.add(amount);
+      replies.add(resultHandler);
+    }
+
+    @Override
+    public void sell(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+      amounts.add(-amount);
+      replies.add(resultHandler);
+    }
+
+    @Override
+    public void evaluate(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getRealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getUnrealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getExposure(Handler<AsyncResult<JsonObject>> resultHandler) {
+    }
+  };
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testOrdersAreNettedPerCompany(TestContext tc) {
+    Async async = tc.async();
+    vertx.runOnContext(v -> {
+      OrderNetting netting = new OrderNetting(vertx, portfolio, 3, 20);
+      netting.submit(0, true, 5, QUOTE);
+      netting.submit(1, true, 3, QUOTE);
+      netting.submit(2, false, 4, QUOTE);
+      vertx.setTimer(100, l -> {
+        // A single buy of the net amount
+        tc.assertEquals(amounts.size(), 1);
+        tc.assertEquals(amounts.get(0), 4);
+        replies.get(0).handle(Future.succeededFuture(new Portfolio()));
+        tc.assertEquals(netting.position(0), 5);
+        tc.assertEquals(netting.position(1), 3);
+        tc.assertEquals(netting.position(2), -4);
+        tc.assertEquals(netting.metrics().getLong("crossed"), 4L);
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testTheCrossedVolumeIsFilledWhenTheNetOrderFails(TestContext tc) {
+    Async async = tc.async();
+    vertx.runOnContext(v -> {
+      OrderNetting netting = new OrderNetting(vertx, portfolio, 2, 20);
+      netting.submit(0, true, 5, QUOTE);
+      netting.submit(1, false, 2, QUOTE);
+      vertx.setTimer(100, l -> {
+        tc.assertEquals(amounts.get(0), 3);
+        // Received while the net order is in flight
+        netting.submit(1, false, 1, QUOTE);
+        replies.get(0).handle(Future.failedFuture("not enough money"));
+        tc.assertEquals(netting.position(0), 2);
+        tc.assertEquals(netting.position(1), -2);
+        tc.assertEquals(netting.metrics().getLong("rejected"), 1L);
+        vertx.setTimer(100, l2 -> {
+          tc.assertEquals(amounts.get(1), -1);
+          async.complete();
+        });
+      });
+    });
+  }
+}
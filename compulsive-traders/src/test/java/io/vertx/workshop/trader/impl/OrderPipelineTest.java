@@ -0,0 +1,92 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrderPipelineTest {
+
+  private final List<Integer> amounts = new ArrayList<>();
+  private final List<Handler<AsyncResult<Portfolio>>> replies = new ArrayList<>();
+
+  /**
+   * A portfolio service recording the orders, replied by the test.
+   */
+  private final PortfolioService portfolio = new PortfolioService() {
+    @Override
+    public void getPortfolio(Handler<AsyncResult<Portfolio>> resultHandler) {
+    }
+
+    @Override
+    public void buy(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+      amounts.add(amount);
+      replies.add(resultHandler);
+    }
+
+    @Override
+    public void sell(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+      amounts.add(-amount);
+      replies.add(resultHandler);
+    }
+
+    @Override
+    public void evaluate(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getRealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getUnrealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getExposure(Handler<AsyncResult<JsonObject>> resultHandler) {
+    }
+  };
+
+  @Test
+  public void testOrdersAreDroppedWhenTheWindowIsFull() {
+    OrderPipeline pipeline = new OrderPipeline(portfolio, 2, 1, OrderPipeline.Policy.DROP);
+    pipeline.submit(0, true, 1, new JsonObject());
+    pipeline.submit(0, true, 2, new JsonObject());
+    pipeline.submit(1, false, 3, new JsonObject());
+    assertThat(amounts).containsExactly(1, -3);
+    assertThat(pipeline.metrics(0).getLong("dropped")).isEqualTo(1L);
+
+    replies.get(0).handle(Future.failedFuture("not enough money"));
+    pipeline.submit(0, true, 4, new JsonObject());
+    assertThat(amounts).containsExactly(1, -3, 4);
+    JsonObject metrics = pipeline.metrics();
+    assertThat(metrics.getLong("sent")).isEqualTo(3L);
+    assertThat(metrics.getLong("rejected")).isEqualTo(1L);
+    assertThat(metrics.getLong("inFlight")).isEqualTo(2L);
+  }
+
+  @Test
+  public void testTheLastOrderIsSentWhenAReplyIsReceived() {
+    OrderPipeline pipeline = new OrderPipeline(portfolio, 1, 1, OrderPipeline.Policy.COALESCE);
+    pipeline.submit(0, true, 1, new JsonObject());
+    pipeline.submit(0, true, 2, new JsonObject());
+    pipeline.submit(0, false, 3, new JsonObject());
+    assertThat(amounts).containsExactly(1);
+
+    replies.get(0).handle(Future.succeededFuture(new Portfolio()));
+    assertThat(amounts).containsExactly(1, -3);
+    replies.get(1).handle(Future.succeededFuture(new Portfolio()));
+    JsonObject metrics = pipeline.metrics(0);
+    assertThat(metrics.getLong("sent")).isEqualTo(2L);
+    assertThat(metrics.getLong("coalesced")).isEqualTo(1L);
+    assertThat(metrics.getLong("inFlight")).isEqualTo(0L);
+  }
+}
@@ -0,0 +1,168 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.workshop.portfolio.Portfolio;
+import io.vertx.workshop.portfolio.PortfolioService;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PortfolioViewTest {
+
+  private final List<Handler<AsyncResult<Portfolio>>> snapshots = new ArrayList<>();
+
+  /**
+   * A portfolio service recording the snapshot requests, replied by the test.
+   */
+  private final PortfolioService portfolio = new PortfolioService() {
+    @Override
+    public void getPortfolio(Handler<AsyncResult<Portfolio>> resultHandler) {
+      snapshots.add(resultHandler);
+    }
+
+    @Override
+    public void buy(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+    }
+
+    @Override
+    public void sell(int amount, JsonObject quote, Handler<AsyncResult<Portfolio>> resultHandler) {
+    }
+
+    @Override
+    public void evaluate(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getRealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getUnrealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+    }
+
+    @Override
+    public void getExposure(Handler<AsyncResult<JsonObject>> resultHandler) {
+    }
+  };
+
+  private static Portfolio snapshot(long version, double cash, String name, int shares) {
+    return snapshot("first", version, cash, name, shares);
+  }
+
+  private static Portfolio snapshot(String epoch, long version, double cash, String name, int shares) {
+    Portfolio snapshot = new Portfolio().setCash(cash).setVersion(version).setEpoch(epoch);
+    snapshot.getShares().put(name, shares);
+    return snapshot;
+  }
+
+  private static JsonObject event(long version, String action, int amount, int owned) {
+    return event("first", version, action, amount, owned);
+  }
+
+  private static JsonObject event(String epoch, long version, String action, int amount, int owned) {
+    return new JsonObject()
+        .put("epoch", epoch)
+        .put("action", action)
+        .put("quote", new JsonObject().put("name", "Divinator").put("bid", 9.0).put("ask", 10.0))
+        .put("amount", amount)
+        .put("owned", owned)
+        .put("version", version);
+  }
+
+  @Test
+  public void testTheEventsAreAppliedOnTheSnapshot() {
+    PortfolioView view = new PortfolioView(portfolio);
+    view.open(ar -> assertThat(ar.succeeded()).isTrue());
+    assertThat(view.synced()).isFalse();
+
+    // Received while the snapshot is retrieved: the first one is already in the snapshot
+    view.onEvent(event(3, "BUY", 2, 5));
+    view.onEvent(event(4, "SELL", 1, 4));
+    snapshots.get(0).handle(Future.succeededFuture(snapshot(3, 100, "Divinator", 5)));
+
+    assertThat(view.synced()).isTrue();
+    assertThat(view.version()).isEqualTo(4);
+    assertThat(view.owned("Divinator")).isEqualTo(4);
+    assertThat(view.cash()).isEqualTo(109.0);
+
+    view.onEvent(event(5, "SELL", 4, 0));
+    view.onEvent(event(5, "SELL", 4, 0));
+    assertThat(view.owned("Divinator")).isEqualTo(0);
+    assertThat(view.cash()).isEqualTo(145.0);
+    JsonObject metrics = view.metrics();
+    assertThat(metrics.getLong("applied")).isEqualTo(2L);
+    assertThat(metrics.getLong("stale")).isEqualTo(2L);
+    assertThat(snapshots).hasSize(1);
+  }
+
+  @Test
+  public void testAMissedEventTriggersANewSnapshot() {
+    PortfolioView view = new PortfolioView(portfolio);
+    view.open(ar -> {
+    });
+    snapshots.get(0).handle(Future.succeededFuture(snapshot(1, 100, "Divinator", 1)));
+
+    // The version 2 is lost
+    view.onEvent(event(3, "BUY", 1, 3));
+    assertThat(view.synced()).isFalse();
+    assertThat(snapshots).hasSize(2);
+
+    view.onEvent(event(4, "BUY", 1, 4));
+    snapshots.get(1).handle(Future.succeededFuture(snapshot(3, 70, "Divinator", 3)));
+    assertThat(view.synced()).isTrue();
+    assertThat(view.version()).isEqualTo(4);
+    assertThat(view.owned("Divinator")).isEqualTo(4);
+    assertThat(view.cash()).isEqualTo(60.0);
+    assertThat(view.metrics().getLong("gaps")).isEqualTo(1L);
+    assertThat(view.metrics().getLong("snapshots")).isEqualTo(2L);
+  }
+
+  @Test
+  public void testARestartOfTheServiceTriggersANewSnapshot() {
+    PortfolioView view = new PortfolioView(portfolio);
+    view.open(ar -> {
+    });
+    snapshots.get(0).handle(Future.succeededFuture(snapshot(5, 100, "Divinator", 5)));
+
+    // The service restarted, its versions start again
+    view.onEvent(event("second", 1, "BUY", 1, 1));
+    assertThat(view.synced()).isFalse();
+    assertThat(snapshots).hasSize(2);
+
+    // Received while the snapshot is retrieved, from the previous epoch
+    view.onEvent(event(6, "SELL", 1, 4));
+    view.onEvent(event("second", 2, "BUY", 1, 2));
+    snapshots.get(1).handle(Future.succeededFuture(snapshot("second", 1, 90, "Divinator", 1)));
+    assertThat(view.synced()).isTrue();
+    assertThat(view.version()).isEqualTo(2);
+    assertThat(view.owned("Divinator")).isEqualTo(2);
+    assertThat(view.cash()).isEqualTo(80.0);
+    JsonObject metrics = view.metrics();
+    assertThat(metrics.getLong("restarts")).isEqualTo(1L);
+    assertThat(metrics.getLong("stale")).isEqualTo(2L);
+    assertThat(metrics.getLong("snapshots")).isEqualTo(2L);
+  }
+
+  @Test
+  public void testTheOrdersAreCheckedLocally() {
+    PortfolioView view = new PortfolioView(portfolio);
+    JsonObject quote = new JsonObject().put("name", "Divinator").put("bid", 9.0).put("ask", 10.0);
+    view.open(ar -> {
+    });
+    // Not synchronized yet, left to the portfolio service
+    assertThat(view.accepts(true, 100, quote)).isTrue();
+
+    snapshots.get(0).handle(Future.succeededFuture(snapshot(0, 100, "Divinator", 2)));
+    assertThat(view.accepts(true, 10, quote)).isTrue();
+    assertThat(view.accepts(true, 11, quote)).isFalse();
+    assertThat(view.accepts(false, 2, quote)).isTrue();
+    assertThat(view.accepts(false, 3, quote)).isFalse();
+    assertThat(view.metrics().getLong("skipped")).isEqualTo(2L);
+  }
+}
@@ -0,0 +1,27 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.workshop.trader.strategy.Strategies;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TraderPopulationTest {
+
+  @Test
+  public void testQuotesAreDispatchedToTheTradersOfTheCompany() {
+    TraderPopulation population = new TraderPopulation(100_000, Strategies::random);
+    assertThat(population.size()).isEqualTo(100_000);
+
+    int dispatched = 0;
+    for (String company : population.distribution().keySet()) {
+      for (int trader : population.tradersOf(company)) {
+        assertThat(population.company(trader)).isEqualTo(company);
+        assertThat(population.shares(trader)).isBetween(1, 6);
+        dispatched++;
+      }
+    }
+    // Each trader belongs to exactly one company
+    assertThat(dispatched).isEqualTo(population.size());
+    assertThat(population.tradersOf("Unknown")).isEmpty();
+  }
+}
@@ -0,0 +1,79 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.ServiceDiscovery;
+import io.vertx.servicediscovery.ServiceDiscoveryOptions;
+import io.vertx.servicediscovery.impl.DefaultServiceDiscoveryBackend;
+import io.vertx.servicediscovery.types.EventBusService;
+import io.vertx.servicediscovery.types.MessageSource;
+import io.vertx.workshop.portfolio.PortfolioService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@RunWith(VertxUnitRunner.class)
+public class TraderPopulationVerticleTest {
+
+  private static final JsonObject BACKEND = new JsonObject()
+      .put("backend-name", DefaultServiceDiscoveryBackend.class.getName());
+
+  private static final String[][] COMPANIES = {{"MCH", "MacroHard"}, {"DVN", "Divinator"}, {"BCT", "Black Coat"}};
+
+  private Vertx vertx;
+  private ServiceDiscovery discovery;
+
+  @Before
+  public void setUp(TestContext tc) {
+    vertx = Vertx.vertx();
+    discovery = ServiceDiscovery.create(vertx, new ServiceDiscoveryOptions().setBackendConfiguration(BACKEND));
+    JsonArray symbols = new JsonArray();
+    JsonObject names = new JsonObject();
+    for (String[] company : COMPANIES) {
+      symbols.add(company[0]);
+      names.put(company[1], company[0]);
+    }
+    discovery.publish(MessageSource.createRecord("market-data", "market", (String) null,
+        new JsonObject().put("symbols", symbols).put("names", names)), tc.asyncAssertSuccess());
+    discovery.publish(EventBusService.createRecord("portfolio", "service.portfolio", PortfolioService.class),
+        tc.asyncAssertSuccess());
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    discovery.close();
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testTheTradersOnlyConsumeTheQuotesOfTheirCompany(TestContext tc) {
+    Async async = tc.async();
+    Set<String> ordered = new HashSet<>();
+    vertx.eventBus().<JsonObject>consumer("service.portfolio", message -> {
+      ordered.add(message.body().getJsonObject("quote").getString("name"));
+      message.fail(0, "Not enough cash");
+    });
+    // A single trader, of a single company
+    vertx.deployVerticle(TraderPopulationVerticle.class.getName(), new DeploymentOptions()
+        .setConfig(BACKEND.copy().put("traders", 1)), tc.asyncAssertSuccess(id -> {
+          for (String[] company : COMPANIES) {
+            vertx.eventBus().publish("market." + company[0], new JsonObject()
+                .put("symbol", company[0]).put("name", company[1]).put("bid", 10.0).put("ask", 11.0));
+          }
+          vertx.setTimer(200, l -> {
+            // Only the quotes of the trader company are received, the random strategy buying or selling on each
+            tc.assertEquals(ordered.size(), 1);
+            async.complete();
+          });
+        }));
+  }
+}
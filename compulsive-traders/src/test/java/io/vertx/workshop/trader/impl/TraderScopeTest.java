@@ -0,0 +1,81 @@
+package io.vertx.workshop.trader.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TraderScopeTest {
+
+  private final TraderScope scope = new TraderScope();
+  private final MarketStream market = new MarketStream();
+
+  private static JsonObject quote(String name, double bid) {
+    return new JsonObject().put("name", name).put("bid", bid);
+  }
+
+  @Test
+  public void testTradersWaitForTheQuotesOfTheirCompany() {
+    List<Double> macroHard = new ArrayList<>();
+    List<Double> divinator = new ArrayList<>();
+    scope.launch(() -> scope.repeat(() -> scope.await(market.next("MacroHard"))
+        .map(quote -> macroHard.add(quote.getDouble("bid"))).mapEmpty()));
+    scope.launch(() -> scope.repeat(() -> scope.await(market.next("Divinator"))
+        .map(quote -> divinator.add(quote.getDouble("bid"))).mapEmpty()));
+    assertThat(market.waiting()).isEqualTo(2);
+
+    market.dispatch(quote("MacroHard", 1.0));
+    market.dispatch(quote("MacroHard", 2.0));
+    market.dispatch(quote("Divinator", 3.0));
+    assertThat(macroHard).containsExactly(1.0, 2.0);
+    assertThat(divinator).containsExactly(3.0);
+    assertThat(scope.metrics().getInteger("active")).isEqualTo(2);
+    assertThat(scope.metrics().getInteger("suspended")).isEqualTo(2);
+  }
+
+  @Test
+  public void testCancellationEndsTheWaitingTraders() {
+    List<Throwable> ends = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      scope.launch(() -> scope.repeat(() -> scope.await(market.next("MacroHard")).mapEmpty())
+          .recover(cause -> {
+            ends.add(cause);
+            return Future.failedFuture(cause);
+          }));
+    }
+    Future<Void> ended = scope.cancel();
+    assertThat(ended.succeeded()).isTrue();
+    assertThat(ends).hasSize(1000).allMatch(cause -> cause instanceof CancellationException);
+    assertThat(scope.metrics().getLong("failed")).isEqualTo(0L);
+
+    // No trader after the cancellation
+    scope.launch(() -> Future.future());
+    assertThat(scope.metrics().getInteger("active")).isEqualTo(0);
+  }
+
+  @Test
+  public void testCancellationWaitsForTheRunningSteps() {
+    Future<Void> order = Future.future();
+    scope.launch(() -> scope.repeat(() -> order));
+    Future<Void> ended = scope.cancel();
+    // The order is not awaited through the scope, the trader ends when it completes
+    assertThat(ended.isComplete()).isFalse();
+    order.complete();
+    assertThat(ended.succeeded()).isTrue();
+  }
+
+  @Test
+  public void testSynchronousStepsDoNotGrowTheStack() {
+    int[] steps = {0};
+    Future<Void> end = scope.repeat(() -> ++steps[0] < 1_000_000 ? Future.succeededFuture()
+        : Future.failedFuture("done"));
+    assertThat(end.failed()).isTrue();
+    assertThat(end.cause()).hasMessage("done");
+    assertThat(steps[0]).isEqualTo(1_000_000);
+  }
+}
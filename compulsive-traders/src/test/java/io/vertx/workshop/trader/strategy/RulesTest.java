@@ -0,0 +1,74 @@
+package io.vertx.workshop.trader.strategy;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class RulesTest {
+
+  private final Tick tick = new Tick();
+
+  private Tick tick(double price) {
+    return tick.set("MCH", "MacroHard", price - 1, price + 1, 100);
+  }
+
+  @Test
+  public void testRulesAreEvaluatedInOrder() {
+    Rules.RuleStrategy strategy = Rules.parse(
+        "when price < sma(3) * 0.9 buy 5;\n"
+            + "when bid > upper(3, 1) or not (ask - bid) == 2 sell\n"
+            + "when price > 1000 buy").newStrategy();
+    // Not ready
+    assertThat(strategy.evaluate(tick(100))).isEqualTo(Signal.HOLD);
+    assertThat(strategy.evaluate(tick(100))).isEqualTo(Signal.HOLD);
+    assertThat(strategy.evaluate(tick(100))).isEqualTo(Signal.HOLD);
+    // sma = 80 * 0.9 = 72 > 40
+    assertThat(strategy.evaluate(tick(40))).isEqualTo(Signal.BUY);
+    assertThat(strategy.amount()).isEqualTo(5);
+    assertThat(strategy.evaluate(tick(200))).isEqualTo(Signal.SELL);
+    assertThat(strategy.amount()).isEqualTo(0);
+    assertThat(strategy.evaluate(tick(2000))).isEqualTo(Signal.SELL);
+  }
+
+  @Test
+  public void testEachStrategyHasItsOwnIndicators() {
+    Rules rules = Rules.parse("when rsi(2) < 30 buy");
+    Strategy first = rules.newStrategy();
+    Strategy second = rules.newStrategy();
+    first.evaluate(tick(10));
+    first.evaluate(tick(9));
+    assertThat(first.evaluate(tick(8))).isEqualTo(Signal.BUY);
+    assertThat(second.evaluate(tick(8))).isEqualTo(Signal.HOLD);
+
+    Strategy configured = Strategies.factory(new JsonObject()
+        .put("type", "rules")
+        .put("rules", "when -bid < -10 buy 3")).get();
+    assertThat(configured.evaluate(tick(20))).isEqualTo(Signal.BUY);
+    // Through the strategy interface
+    assertThat(configured.amount()).isEqualTo(3);
+    assertThat(Strategies.random().amount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testInvalidRules() {
+    for (String text : new String[]{"", "when price buy", "when price < 3 hold", "when foo < 3 buy",
+        "when sma(2.5) < 3 sell", "when ema(0) < 3 sell", "when price < lower(0, 2) buy",
+        "when price < 3 buy 5 sell", "when price < 3 buy 0.5", "when price < 3 buy 5.5"}) {
+      try {
+        // Detected by the parser, not when the strategies are created
+        Rules.parse(text);
+        fail("Expected an error for: " + text);
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+    try {
+      Rules.parse("when price < 3 buy 5.5");
+      fail("Expected an error for a fractional amount");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageStartingWith("The amount must be a positive integer, found 5.5");
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package io.vertx.workshop.trader.strategy;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class StrategiesTest {
+
+  private final Tick tick = new Tick();
+
+  private Tick tick(double price, double volume) {
+    return tick.set("MCH", "MacroHard", price, price, volume);
+  }
+
+  @Test
+  public void testIndicators() {
+    SimpleMovingAverage sma = new SimpleMovingAverage(3);
+    ExponentialMovingAverage ema = new ExponentialMovingAverage(3);
+    BollingerBands bands = new BollingerBands(3, 2);
+    VolumeWeightedAveragePrice vwap = new VolumeWeightedAveragePrice(2);
+    RelativeStrengthIndex rsi = new RelativeStrengthIndex(3);
+    double[] prices = {10, 11, 12, 13, 14};
+    for (double price : prices) {
+      Tick t = tick(price, price);
+      sma.update(t);
+      ema.update(t);
+      bands.update(t);
+      vwap.update(t);
+      rsi.update(t);
+    }
+    assertThat(sma.ready()).isTrue();
+    assertThat(sma.value()).isCloseTo(13.0, within(1e-9));
+    assertThat(ema.value()).isCloseTo(13.0625, within(1e-9));
+    assertThat(bands.value()).isCloseTo(13.0, within(1e-9));
+    assertThat(bands.deviation()).isCloseTo(Math.sqrt(2.0 / 3), within(1e-9));
+    assertThat(bands.upper()).isGreaterThan(14.0);
+    // (13 * 13 + 14 * 14) / (13 + 14)
+    assertThat(vwap.value()).isCloseTo(365.0 / 27, within(1e-9));
+    // Only gains
+    assertThat(rsi.value()).isEqualTo(100.0);
+  }
+
+  @Test
+  public void testCrossover() {
+    Strategy strategy = Strategies.crossover(new SimpleMovingAverage(1), new SimpleMovingAverage(3));
+    assertThat(strategy.evaluate(tick(10, 1))).isEqualTo(Signal.HOLD);
+    assertThat(strategy.evaluate(tick(9, 1))).isEqualTo(Signal.HOLD);
+    assertThat(strategy.evaluate(tick(8, 1))).isEqualTo(Signal.HOLD);
+    // The price goes above its average
+    assertThat(strategy.evaluate(tick(12, 1))).isEqualTo(Signal.BUY);
+    assertThat(strategy.evaluate(tick(13, 1))).isEqualTo(Signal.HOLD);
+    assertThat(strategy.evaluate(tick(5, 1))).isEqualTo(Signal.SELL);
+  }
+
+  @Test
+  public void testCreation() {
+    Strategy rsi = Strategies.create(new JsonObject().put("type", "rsi").put("period", 2));
+    assertThat(rsi.evaluate(tick(10, 1))).isEqualTo(Signal.HOLD);
+    assertThat(rsi.evaluate(tick(9, 1))).isEqualTo(Signal.HOLD);
+    // Oversold
+    assertThat(rsi.evaluate(tick(8, 1))).isEqualTo(Signal.BUY);
+
+    Strategy unanimous = Strategies.unanimous(t -> Signal.BUY, t -> Signal.SELL);
+    assertThat(unanimous.evaluate(tick(1, 1))).isEqualTo(Signal.HOLD);
+
+    try {
+      Strategies.create(new JsonObject().put("type", "unknown"));
+      throw new AssertionError("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageContaining("unknown");
+    }
+  }
+}
@@ -30,6 +30,9 @@ public class PortfolioConverter {
     if (json.getValue("cash") instanceof Number) {
       obj.setCash(((Number)json.getValue("cash")).doubleValue());
     }
+    if (json.getValue("epoch") instanceof String) {
+      obj.setEpoch((String)json.getValue("epoch"));
+    }
     if (json.getValue("shares") instanceof JsonObject) {
       java.util.Map<String, java.lang.Integer> map = new java.util.LinkedHashMap<>();
       json.getJsonObject("shares").forEach(entry -> {
@@ -38,14 +41,21 @@ public class PortfolioConverter {
       });
       obj.setShares(map);
     }
+    if (json.getValue("version") instanceof Number) {
+      obj.setVersion(((Number)json.getValue("version")).longValue());
+    }
   }
 
   public static void toJson(Portfolio obj, JsonObject json) {
     json.put("cash", obj.getCash());
+    if (obj.getEpoch() != null) {
+      json.put("epoch", obj.getEpoch());
+    }
     if (obj.getShares() != null) {
       JsonObject map = new JsonObject();
       obj.getShares().forEach((key,value) -> map.put(key, value));
       json.put("shares", map);
     }
+    json.put("version", obj.getVersion());
   }
 }
\ No newline at end of file
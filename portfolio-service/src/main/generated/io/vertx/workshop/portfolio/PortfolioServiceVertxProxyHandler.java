@@ -161,6 +161,18 @@ public class PortfolioServiceVertxProxyHandler extends ProxyHandler {
           service.evaluate(createHandler(msg));
           break;
         }
+        case "getRealizedProfitAndLoss": {
+          service.getRealizedProfitAndLoss(createHandler(msg));
+          break;
+        }
+        case "getUnrealizedProfitAndLoss": {
+          service.getUnrealizedProfitAndLoss(createHandler(msg));
+          break;
+        }
+        case "getExposure": {
+          service.getExposure(createHandler(msg));
+          break;
+        }
         default: {
           throw new IllegalStateException("Invalid action: " + action);
         }
@@ -121,6 +121,57 @@
       } else throw new TypeError('function invoked with invalid arguments');
     };
 
+    /**
+     Gets the profit and loss realized by the sales, computed from the cost basis of the sold shares.
+
+     @public
+     @param resultHandler {function} the result handler with the realized P&L 
+     */
+    this.getRealizedProfitAndLoss = function(resultHandler) {
+      var __args = arguments;
+      if (__args.length === 1 && typeof __args[0] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {}, {"action":"getRealizedProfitAndLoss"}, function(err, result) { __args[0](err, result &&result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Gets the profit and loss of the owned shares against the latest known prices.
+
+     @public
+     @param resultHandler {function} the result handler with the unrealized P&L 
+     */
+    this.getUnrealizedProfitAndLoss = function(resultHandler) {
+      var __args = arguments;
+      if (__args.length === 1 && typeof __args[0] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {}, {"action":"getUnrealizedProfitAndLoss"}, function(err, result) { __args[0](err, result &&result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
+    /**
+     Gets the exposure per company: owned amount, latest price, market value, open cost and P&L.
+
+     @public
+     @param resultHandler {function} the result handler with a JSON object keyed by company name 
+     */
+    this.getExposure = function(resultHandler) {
+      var __args = arguments;
+      if (__args.length === 1 && typeof __args[0] === 'function') {
+        if (closed) {
+          throw new Error('Proxy is closed');
+        }
+        j_eb.send(j_address, {}, {"action":"getExposure"}, function(err, result) { __args[0](err, result &&result.body); });
+        return;
+      } else throw new TypeError('function invoked with invalid arguments');
+    };
+
   };
 
   if (typeof exports !== 'undefined') {
@@ -58,4 +58,25 @@ export class PortfolioService {
     this.eb.send(this.address, {}, {"action":"evaluate"}, function(err, result) { resultHandler(err, result &&result.body); });
   }
 
+  getRealizedProfitAndLoss(resultHandler: (err: any, result: any) => any) : void {
+    if (closed) {
+      throw new Error('Proxy is closed');
+    }
+    this.eb.send(this.address, {}, {"action":"getRealizedProfitAndLoss"}, function(err, result) { resultHandler(err, result &&result.body); });
+  }
+
+  getUnrealizedProfitAndLoss(resultHandler: (err: any, result: any) => any) : void {
+    if (closed) {
+      throw new Error('Proxy is closed');
+    }
+    this.eb.send(this.address, {}, {"action":"getUnrealizedProfitAndLoss"}, function(err, result) { resultHandler(err, result &&result.body); });
+  }
+
+  getExposure(resultHandler: (err: any, result: any) => any) : void {
+    if (closed) {
+      throw new Error('Proxy is closed');
+    }
+    this.eb.send(this.address, {}, {"action":"getExposure"}, function(err, result) { resultHandler(err, result &&result.body); });
+  }
+
 }
\ No newline at end of file
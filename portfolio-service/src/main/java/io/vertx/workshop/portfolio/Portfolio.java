@@ -22,6 +22,10 @@ public class Portfolio {
 
     private double cash;
 
+    private long version;
+
+    private String epoch;
+
     /**
      * Creates a new instance of {@link Portfolio}.
      */
@@ -37,6 +41,8 @@ public class Portfolio {
     public Portfolio(Portfolio other) {
         this.shares = new TreeMap<>(other.shares);
         this.cash = other.cash;
+        this.version = other.version;
+        this.epoch = other.epoch;
     }
 
     /**
@@ -94,6 +100,44 @@ public class Portfolio {
         return this;
     }
 
+    /**
+     * @return the number of operations applied to the portfolio, also sent with each event published on the
+     * {@code portfolio} address, so a copy kept from the events can tell whether it missed one.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the number of operations applied to the portfolio. Method used by the converter.
+     *
+     * @param version the version
+     * @return the current {@link Portfolio}
+     */
+    public Portfolio setVersion(long version) {
+        this.version = version;
+        return this;
+    }
+
+    /**
+     * @return the identifier of the portfolio service instance, also sent with each event: the versions start again
+     * when the service restarts, with another epoch.
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Sets the identifier of the portfolio service instance. Method used by the converter.
+     *
+     * @param epoch the epoch
+     * @return the current {@link Portfolio}
+     */
+    public Portfolio setEpoch(String epoch) {
+        this.epoch = epoch;
+        return this;
+    }
+
     // -- Additional method
 
     /**
@@ -63,4 +63,25 @@ public interface PortfolioService {
      */
     void evaluate(Handler<AsyncResult<Double>> resultHandler);
 
+    /**
+     * Gets the profit and loss realized by the sales, computed from the cost basis of the sold shares.
+     *
+     * @param resultHandler the result handler with the realized P&L
+     */
+    void getRealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler);
+
+    /**
+     * Gets the profit and loss of the owned shares against the latest known prices.
+     *
+     * @param resultHandler the result handler with the unrealized P&L
+     */
+    void getUnrealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler);
+
+    /**
+     * Gets the exposure per company: owned amount, latest price, market value, open cost and P&L.
+     *
+     * @param resultHandler the result handler with a JSON object keyed by company name
+     */
+    void getExposure(Handler<AsyncResult<JsonObject>> resultHandler);
+
 }
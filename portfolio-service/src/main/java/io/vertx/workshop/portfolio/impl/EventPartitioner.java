@@ -0,0 +1,58 @@
+package io.vertx.workshop.portfolio.impl;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Assigns the portfolio events to partitions, by symbol hash, and numbers them per partition.
+ * <p>
+ * The events of partition `k` are published on `<events address>.p<k>`, with the `source`, `partition` and `seq`
+ * entries. A consumer of a partition detects the missing and duplicated events from the `seq` of each `source`.
+ */
+class EventPartitioner {
+
+    private final int partitions;
+    private final long[] sequences;
+    private final String source;
+
+    /**
+     * @param partitions the number of partitions
+     * @param source     the identifier of the service instance
+     */
+    EventPartitioner(int partitions, String source) {
+        this.partitions = partitions;
+        this.sequences = new long[partitions];
+        this.source = source;
+    }
+
+    /**
+     * @param address the address of the events
+     * @param partition the partition
+     * @return the address of the events of the given partition
+     */
+    static String address(String address, int partition) {
+        return address + ".p" + partition;
+    }
+
+    /**
+     * @return the number of partitions
+     */
+    int partitions() {
+        return partitions;
+    }
+
+    /**
+     * Assigns an event to its partition.
+     *
+     * @param event the event, the `source`, `partition` and `seq` entries are added
+     * @return the partition
+     */
+    int assign(JsonObject event) {
+        JsonObject quote = event.getJsonObject("quote");
+        String symbol = quote.getString("symbol", quote.getString("name"));
+        int partition = Math.floorMod(symbol == null ? 0 : symbol.hashCode(), partitions);
+        event.put("source", source)
+                .put("partition", partition)
+                .put("seq", sequences[partition]++);
+        return partition;
+    }
+}
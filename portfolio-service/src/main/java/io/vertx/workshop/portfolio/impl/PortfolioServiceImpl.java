@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
@@ -31,11 +32,21 @@ public class PortfolioServiceImpl implements PortfolioService {
     private final Vertx vertx;
     private final Portfolio portfolio;
     private final ServiceDiscovery discovery;
+    private final PositionLedger ledger;
+    private final EventPartitioner partitioner;
 
     public PortfolioServiceImpl(Vertx vertx, ServiceDiscovery discovery, double initialCash) {
+        this(vertx, discovery, initialCash, PositionLedger.Method.FIFO, 0);
+    }
+
+    PortfolioServiceImpl(Vertx vertx, ServiceDiscovery discovery, double initialCash, PositionLedger.Method costBasis,
+                         int partitions) {
         this.vertx = vertx;
-        this.portfolio = new Portfolio().setCash(initialCash);
+        // The versions start again from 0 on each start, the epoch tells the instances apart
+        this.portfolio = new Portfolio().setCash(initialCash).setEpoch(UUID.randomUUID().toString());
         this.discovery = discovery;
+        this.ledger = new PositionLedger(costBasis);
+        this.partitioner = partitions > 0 ? new EventPartitioner(partitions, portfolio.getEpoch()) : null;
     }
 
     @Override
@@ -44,14 +55,51 @@ public class PortfolioServiceImpl implements PortfolioService {
     }
 
     private void sendActionOnTheEventBus(String action, int amount, JsonObject quote, int newAmount) {
+        // Numbers the events, the version of the portfolio being the number of events sent
+        portfolio.setVersion(portfolio.getVersion() + 1);
         JsonObject object = new JsonObject()
                 .put("action", action)
                 .put("quote", quote)
                 .put("date", System.currentTimeMillis())
                 .put("amount", amount)
-                .put("owned", newAmount);
-        log.info("Publish action to the event bus, address[{}]", ADDRESS);
-        vertx.eventBus().publish(ADDRESS, object);
+                .put("owned", newAmount)
+                .put("version", portfolio.getVersion())
+                .put("epoch", portfolio.getEpoch());
+        if (partitioner != null) {
+            // Also sent to the consumers of the partition of the symbol, numbered
+            int partition = partitioner.assign(object);
+            vertx.eventBus().publish(EventPartitioner.address(EVENT_ADDRESS, partition), object);
+        }
+        log.info("Publish action to the event bus, address[{}]", EVENT_ADDRESS);
+        vertx.eventBus().publish(EVENT_ADDRESS, object);
+    }
+
+    @Override
+    public void getRealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(ledger.realized()));
+    }
+
+    @Override
+    public void getUnrealizedProfitAndLoss(Handler<AsyncResult<Double>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(ledger.unrealized()));
+    }
+
+    @Override
+    public void getExposure(Handler<AsyncResult<JsonObject>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(ledger.exposure()));
+    }
+
+    /**
+     * Updates the latest price of the owned shares from a market quote, used by the unrealized P&L and exposure.
+     *
+     * @param quote the quote
+     */
+    void onQuote(JsonObject quote) {
+        String name = quote.getString("name");
+        Double bid = quote.getDouble("bid");
+        if (name != null && bid != null) {
+            ledger.mark(name, bid);
+        }
     }
 
     @Override
@@ -124,6 +172,7 @@ public class PortfolioServiceImpl implements PortfolioService {
             int current = portfolio.getAmount(name);
             int newAmount = current + amount;
             portfolio.getShares().put(name, newAmount);
+            ledger.buy(name, amount, quote.getDouble("ask"));
             this.sendActionOnTheEventBus("BUY", amount, quote, newAmount);
             resultHandler.handle(Future.succeededFuture(portfolio));
         } else {
@@ -153,6 +202,7 @@ public class PortfolioServiceImpl implements PortfolioService {
                 portfolio.getShares().put(name, newAmount);
             }
             portfolio.setCash(portfolio.getCash() + price);
+            ledger.sell(name, amount, quote.getDouble("bid"));
             this.sendActionOnTheEventBus("SELL", amount, quote, newAmount);
             resultHandler.handle(Future.succeededFuture(portfolio));
         } else {
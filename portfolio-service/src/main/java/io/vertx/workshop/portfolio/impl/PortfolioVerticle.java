@@ -1,5 +1,6 @@
 package io.vertx.workshop.portfolio.impl;
 
+import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ProxyHelper;
 import io.vertx.workshop.common.MicroServiceVerticle;
 import io.vertx.workshop.portfolio.PortfolioService;
@@ -15,12 +16,22 @@ public class PortfolioVerticle extends MicroServiceVerticle {
 
     private static final Logger log = LoggerFactory.getLogger(PortfolioVerticle.class);
 
+    /**
+     * The address on which the quote generator sends the market data.
+     */
+    private static final String MARKET_ADDRESS = "market";
+
     @Override
     public void start() {
         super.start();
 
         // Create the service object
-        PortfolioServiceImpl service = new PortfolioServiceImpl(vertx, discovery, config().getDouble("money", 10000.00));
+        int partitions = config().getInteger("partitions", 0);
+        PortfolioServiceImpl service = new PortfolioServiceImpl(vertx, discovery, config().getDouble("money", 10000.00),
+                PositionLedger.Method.valueOf(config().getString("cost-basis", "FIFO").toUpperCase()), partitions);
+
+        // Keep the latest prices of the owned shares, used by the unrealized P&L and the exposure
+        vertx.eventBus().<JsonObject>consumer(MARKET_ADDRESS, message -> service.onQuote(message.body()));
 
         // Register the service proxy on the event bus
         ProxyHelper.registerService(PortfolioService.class, vertx, service, ADDRESS);
@@ -34,7 +45,9 @@ public class PortfolioVerticle extends MicroServiceVerticle {
             }
         });
 
-        this.publishMessageSource("portfolio-events", EVENT_ADDRESS, ar -> {
+        // The number of partitions lets the consumers split the events, see EventPartitioner
+        JsonObject metadata = new JsonObject().put("partitions", partitions);
+        this.publishMessageSource("portfolio-events", EVENT_ADDRESS, metadata, ar -> {
             if (ar.failed()) {
                 log.error("Publish portfolio events service error.", ar.cause());
             } else {
@@ -0,0 +1,210 @@
+package io.vertx.workshop.portfolio.impl;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the cost basis of every holding up to date while the portfolio trades, so realized / unrealized P&L and
+ * exposure can be answered without replaying the operation history.
+ * <p>
+ * Every update is O(1) amortized: with {@link Method#FIFO} each lot is appended once and consumed once, with
+ * {@link Method#AVERAGE} a position only keeps its running open cost. The portfolio-wide totals are maintained as
+ * deltas, so reading them does not iterate over the positions either.
+ * <p>
+ * This class is not thread-safe, it is meant to be used from the event loop of the portfolio service.
+ */
+class PositionLedger {
+
+    /**
+     * The cost basis accounting method.
+     */
+    enum Method {
+        /**
+         * Sold shares are taken from the oldest lots first.
+         */
+        FIFO,
+        /**
+         * Sold shares are valued at the average cost of the position.
+         */
+        AVERAGE
+    }
+
+    private final Method method;
+    private final Map<String, Position> positions = new TreeMap<>();
+
+    private double realized;
+    private double openCost;
+    private double marketValue;
+
+    PositionLedger(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Records a purchase.
+     *
+     * @param name   the company name
+     * @param amount the number of bought shares
+     * @param price  the unit price paid (the ask)
+     */
+    void buy(String name, int amount, double price) {
+        Position position = positions.computeIfAbsent(name, n -> new Position());
+        double value = position.value();
+        if (method == Method.FIFO) {
+            position.push(amount, price);
+        }
+        position.cost += amount * price;
+        position.owned += amount;
+        position.last = price;
+        openCost += amount * price;
+        marketValue += position.value() - value;
+    }
+
+    /**
+     * Records a sale. The caller must have checked that enough shares are owned.
+     *
+     * @param name   the company name
+     * @param amount the number of sold shares
+     * @param price  the unit price received (the bid)
+     */
+    void sell(String name, int amount, double price) {
+        Position position = positions.get(name);
+        if (position == null || position.owned < amount) {
+            throw new IllegalStateException("Cannot sell " + amount + " of " + name + " - position too small");
+        }
+        double value = position.value();
+        double cost = method == Method.FIFO ? position.pop(amount) : position.cost * amount / position.owned;
+        position.cost -= cost;
+        position.owned -= amount;
+        position.realized += amount * price - cost;
+        position.last = price;
+        realized += amount * price - cost;
+        openCost -= cost;
+        marketValue += position.value() - value;
+        if (position.owned == 0) {
+            // Avoid accumulating rounding errors on closed positions.
+            openCost -= position.cost;
+            position.cost = 0.0;
+            position.clear();
+        }
+    }
+
+    /**
+     * Updates the latest known price of a held company. Companies without position are ignored.
+     *
+     * @param name  the company name
+     * @param price the latest price (the bid)
+     */
+    void mark(String name, double price) {
+        Position position = positions.get(name);
+        if (position != null) {
+            double value = position.value();
+            position.last = price;
+            marketValue += position.value() - value;
+        }
+    }
+
+    /**
+     * @return the profit and loss realized by all the sales so far
+     */
+    double realized() {
+        return realized;
+    }
+
+    /**
+     * @return the profit and loss of the open positions against the latest known prices
+     */
+    double unrealized() {
+        return marketValue - openCost;
+    }
+
+    /**
+     * @return for each company with a position, the owned amount, latest price, exposure, open cost and P&L
+     */
+    JsonObject exposure() {
+        JsonObject json = new JsonObject();
+        positions.forEach((name, position) -> json.put(name, new JsonObject()
+                .put("amount", position.owned)
+                .put("price", position.last)
+                .put("exposure", position.value())
+                .put("cost", position.cost)
+                .put("realized", position.realized)
+                .put("unrealized", position.value() - position.cost)));
+        return json;
+    }
+
+    /**
+     * The position on a single company. FIFO lots are stored in a growable ring of primitive arrays.
+     */
+    private static class Position {
+
+        private int[] lotAmounts = new int[8];
+        private double[] lotPrices = new double[8];
+        private int head;
+        private int size;
+
+        private int owned;
+        private double cost;
+        private double last;
+        private double realized;
+
+        double value() {
+            return owned * last;
+        }
+
+        void push(int amount, double price) {
+            if (size == lotAmounts.length) {
+                grow();
+            }
+            int tail = (head + size) & (lotAmounts.length - 1);
+            lotAmounts[tail] = amount;
+            lotPrices[tail] = price;
+            size++;
+        }
+
+        /**
+         * Consumes {@code amount} shares from the oldest lots.
+         *
+         * @return the cost of the consumed shares
+         */
+        double pop(int amount) {
+            double consumed = 0.0;
+            int remaining = amount;
+            while (remaining > 0 && size > 0) {
+                int lot = lotAmounts[head];
+                if (lot <= remaining) {
+                    consumed += lot * lotPrices[head];
+                    remaining -= lot;
+                    head = (head + 1) & (lotAmounts.length - 1);
+                    size--;
+                } else {
+                    consumed += remaining * lotPrices[head];
+                    lotAmounts[head] = lot - remaining;
+                    remaining = 0;
+                }
+            }
+            return consumed;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        private void grow() {
+            int capacity = lotAmounts.length;
+            int[] amounts = new int[capacity * 2];
+            double[] prices = new double[capacity * 2];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (capacity - 1);
+                amounts[i] = lotAmounts[index];
+                prices[i] = lotPrices[index];
+            }
+            lotAmounts = amounts;
+            lotPrices = prices;
+            head = 0;
+        }
+    }
+}
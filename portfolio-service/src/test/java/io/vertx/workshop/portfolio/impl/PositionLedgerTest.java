@@ -0,0 +1,63 @@
+package io.vertx.workshop.portfolio.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class PositionLedgerTest {
+
+  @Test
+  public void testFifo() {
+    PositionLedger ledger = new PositionLedger(PositionLedger.Method.FIFO);
+    ledger.buy("A", 10, 10.0);
+    ledger.buy("A", 10, 20.0);
+
+    // Consumes the first lot and half of the second one
+    ledger.sell("A", 15, 30.0);
+    assertThat(ledger.realized()).isCloseTo(15 * 30.0 - (10 * 10.0 + 5 * 20.0), within(1e-9));
+
+    // 5 remaining shares bought at 20, marked at 30
+    assertThat(ledger.unrealized()).isCloseTo(5 * 30.0 - 5 * 20.0, within(1e-9));
+
+    ledger.mark("A", 25.0);
+    assertThat(ledger.unrealized()).isCloseTo(5 * 25.0 - 5 * 20.0, within(1e-9));
+
+    JsonObject exposure = ledger.exposure().getJsonObject("A");
+    assertThat(exposure.getInteger("amount")).isEqualTo(5);
+    assertThat(exposure.getDouble("exposure")).isCloseTo(125.0, within(1e-9));
+    assertThat(exposure.getDouble("cost")).isCloseTo(100.0, within(1e-9));
+  }
+
+  @Test
+  public void testAverageCost() {
+    PositionLedger ledger = new PositionLedger(PositionLedger.Method.AVERAGE);
+    ledger.buy("A", 10, 10.0);
+    ledger.buy("A", 10, 20.0);
+
+    ledger.sell("A", 15, 30.0);
+    assertThat(ledger.realized()).isCloseTo(15 * 30.0 - 15 * 15.0, within(1e-9));
+    assertThat(ledger.unrealized()).isCloseTo(5 * 30.0 - 5 * 15.0, within(1e-9));
+  }
+
+  @Test
+  public void testManyLotsAndClosedPositions() {
+    PositionLedger ledger = new PositionLedger(PositionLedger.Method.FIFO);
+    for (int i = 0; i < 100; i++) {
+      ledger.buy("A", 1, 1.0 + i);
+      ledger.buy("B", 2, 5.0);
+    }
+    ledger.mark("C", 100.0);
+    ledger.sell("A", 100, 50.0);
+
+    // sum(1..100) = 5050
+    assertThat(ledger.realized()).isCloseTo(100 * 50.0 - 5050.0, within(1e-9));
+    assertThat(ledger.exposure().getJsonObject("A").getInteger("amount")).isEqualTo(0);
+    assertThat(ledger.exposure().containsKey("C")).isFalse();
+
+    ledger.mark("B", 6.0);
+    assertThat(ledger.unrealized()).isCloseTo(200 * 6.0 - 200 * 5.0, within(1e-9));
+  }
+
+}
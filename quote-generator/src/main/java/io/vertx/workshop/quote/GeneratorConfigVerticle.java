@@ -19,6 +19,14 @@ public class GeneratorConfigVerticle extends MicroServiceVerticle {
      */
     public static final String ADDRESS = "market";
 
+    /**
+     * @param symbol a company symbol
+     * @return the address on which the data of the given company are also sent
+     */
+    public static String address(String symbol) {
+        return ADDRESS + "." + symbol;
+    }
+
     /**
      * This method is called when the verticle is deployed.
      */
@@ -28,8 +36,13 @@ public class GeneratorConfigVerticle extends MicroServiceVerticle {
 
         // Read the configuration, and deploy a MarketDataVerticle for each company listed in the configuration.
         JsonArray quotes = this.config().getJsonArray("companies");
+        JsonArray symbols = new JsonArray();
+        JsonObject names = new JsonObject();
         for (Object quote : quotes) {
             JsonObject company = (JsonObject) quote;
+            String symbol = company.getString("symbol", company.getString("name"));
+            symbols.add(symbol);
+            names.put(company.getString("name"), symbol);
             // Deploy another verticle without configuration.
             // MarketDataVerticle 会基于配置项初始化类实例参数，同时启动一个定时任务定时计算并将信息发送到 event bus
             vertx.deployVerticle(MarketDataVerticle.class.getName(), new DeploymentOptions().setConfig(company));
@@ -39,8 +52,10 @@ public class GeneratorConfigVerticle extends MicroServiceVerticle {
         // 启动一个 HTTP 服务，监听 35000 端口用于接收 HTTP 请求
         vertx.deployVerticle(RestQuoteAPIVerticle.class.getName(), new DeploymentOptions().setConfig(this.config()));
 
-        // Publish the services in the discovery infrastructure.
-        this.publishMessageSource("market-data", ADDRESS, result -> {
+        // Publish the services in the discovery infrastructure, the metadata lists the symbols published on their own
+        // address, and the symbol of each company name.
+        JsonObject metadata = new JsonObject().put("symbols", symbols).put("names", names);
+        this.publishMessageSource("market-data", ADDRESS, metadata, result -> {
             if (!result.succeeded()) {
                 log.info("MARKET-DATA service publish error", result.cause());
             }
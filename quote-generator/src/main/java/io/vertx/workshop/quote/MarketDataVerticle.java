@@ -10,7 +10,7 @@ import java.util.Random;
 
 /**
  * A verticle simulating the evaluation of a company evaluation in a very unrealistic and irrational way.
- * It emits the new data on the `market` address on the event bus.
+ * It emits the new data on the `market` address on the event bus, and on the `market.<symbol>` address.
  */
 public class MarketDataVerticle extends AbstractVerticle {
 
@@ -74,7 +74,9 @@ public class MarketDataVerticle extends AbstractVerticle {
      */
     private void send() {
         log.debug("Timing send the market data to the event bus, address[{}]", GeneratorConfigVerticle.ADDRESS);
-        vertx.eventBus().publish(GeneratorConfigVerticle.ADDRESS, this.toJson());
+        JsonObject quote = this.toJson();
+        vertx.eventBus().publish(GeneratorConfigVerticle.ADDRESS, quote);
+        vertx.eventBus().publish(GeneratorConfigVerticle.address(symbol), quote);
     }
 
     /**
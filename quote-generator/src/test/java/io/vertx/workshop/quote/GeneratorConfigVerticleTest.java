@@ -50,11 +50,19 @@ public class GeneratorConfigVerticleTest {
       }
     });
 
+    // The quotes of a single company
+    List<JsonObject> onlyMch = new ArrayList<>();
+    vertx.eventBus().<JsonObject>consumer(GeneratorConfigVerticle.address("MCH"), message -> {
+      assertThat(message.body().getString("symbol")).isEqualTo("MCH");
+      onlyMch.add(message.body());
+    });
+
     vertx.deployVerticle(GeneratorConfigVerticle.class.getName(), new DeploymentOptions().setConfig(config));
 
     await().until(() -> mch.size() > 10);
     await().until(() -> dvn.size() > 10);
     await().until(() -> bct.size() > 10);
+    await().until(() -> onlyMch.size() > 10);
   }
 
 }
\ No newline at end of file
@@ -2,14 +2,19 @@ package io.vertx.workshop.dashboard;
 
 import io.vertx.circuitbreaker.CircuitBreaker;
 import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.handler.StaticHandler;
+import io.vertx.ext.web.handler.sockjs.BridgeEvent;
 import io.vertx.ext.web.handler.sockjs.BridgeOptions;
 import io.vertx.ext.web.handler.sockjs.PermittedOptions;
 import io.vertx.ext.web.handler.sockjs.SockJSHandler;
@@ -17,38 +22,102 @@ import io.vertx.servicediscovery.rest.ServiceDiscoveryRestEndpoint;
 import io.vertx.servicediscovery.types.HttpEndpoint;
 import io.vertx.workshop.common.MicroServiceVerticle;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * The dashboard of the micro-trader application.
+ * <p>
+ * The market data and the portfolio events are not bridged as is: they are sent to each dashboard through a
+ * {@link MarketFanout}, filtered by the dashboard watchlist and throttled to `dashboard.rate` (4) quotes per second
+ * and symbol.
+ * <p>
+ * The last `operations.window` (10) operations are retrieved once from the audit service, retried until it succeeds,
+ * then kept from the portfolio events (see {@link RecentOperations}), each new operation being pushed to the
+ * dashboards on {@link MarketFanout#OPERATIONS_ADDRESS}, in the shape returned by the audit service. Until then, the
+ * operations returned by the audit service are cached for `operations.ttl` (1000) ms, the requests received
+ * meanwhile sharing a single call (see {@link SingleFlightCache}).
+ * <p>
+ * `/snapshot` returns all the data displayed on load (last quotes, portfolio, valuation, last operations and
+ * services), retrieved in parallel and cached for `snapshot.ttl` (1000) ms.
  */
 public class DashboardVerticle extends MicroServiceVerticle {
 
   private CircuitBreaker circuit;
   private WebClient client;
+  private MarketFanout fanout;
+  private SingleFlightCache<Buffer> operations;
+  private RecentOperations recent;
+  private SingleFlightCache<Buffer> snapshot;
+  // The last quote of each company, by name
+  private final Map<String, JsonObject> quotes = new TreeMap<>();
 
   @Override
   public void start(Future<Void> future) {
+    int rate = config().getInteger("dashboard.rate", 4);
+    if (rate <= 0) {
+      future.fail("The dashboard.rate must be positive: " + rate);
+      return;
+    }
     super.start();
     Router router = Router.router(vertx);
 
+    // Market data and portfolio events, consumed once for all the dashboards
+    fanout = new MarketFanout(rate);
+    vertx.eventBus().<JsonObject>consumer("market", message -> {
+      quotes.put(message.body().getString("name"), message.body());
+      fanout.onQuote(message.body());
+    });
+    recent = new RecentOperations(config().getInteger("operations.window", 10));
+    vertx.eventBus().<JsonObject>consumer("portfolio", message -> {
+      JsonObject operation = MarketFanout.operation(message.body());
+      fanout.onPortfolioEvent(message.body());
+      recent.add(operation);
+      fanout.onOperation(operation);
+    });
+    vertx.setPeriodic(fanout.interval(), l -> fanout.flush());
+
     // Event bus bridge
     SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
     BridgeOptions options = new BridgeOptions();
     options
-        .addOutboundPermitted(new PermittedOptions().setAddress("market"))
-        .addOutboundPermitted(new PermittedOptions().setAddress("portfolio"))
+        .addOutboundPermitted(new PermittedOptions().setAddress(MarketFanout.MARKET_ADDRESS))
+        .addOutboundPermitted(new PermittedOptions().setAddress(MarketFanout.PORTFOLIO_ADDRESS))
+        .addOutboundPermitted(new PermittedOptions().setAddress(MarketFanout.OPERATIONS_ADDRESS))
+        .addInboundPermitted(new PermittedOptions().setAddress(MarketFanout.WATCH_ADDRESS))
         .addOutboundPermitted(new PermittedOptions().setAddress("service.portfolio"))
         .addInboundPermitted(new PermittedOptions().setAddress("service.portfolio"))
         .addOutboundPermitted(new PermittedOptions().setAddress("vertx.circuit-breaker"));
 
-    sockJSHandler.bridge(options);
+    sockJSHandler.bridge(options, this::onBridgeEvent);
     router.route("/eventbus/*").handler(sockJSHandler);
 
     // Discovery endpoint
     ServiceDiscoveryRestEndpoint.create(router, discovery);
 
-    // Last operations
+    // Last operations, one call to the audit service at a time whatever the number of dashboards, until the window
+    // of recent operations is loaded
+    long timeout = config().getLong("upstream.timeout", 3000L);
+    operations = new SingleFlightCache<>(vertx, config().getLong("operations.ttl", 1000L), timeout,
+        this::fetchOperations);
     router.get("/operations").handler(this::callAuditService);
 
+    // Everything displayed on load, in one round trip
+    snapshot = new SingleFlightCache<>(vertx, config().getLong("snapshot.ttl", 1000L), timeout, this::buildSnapshot);
+    router.get("/snapshot").handler(context -> snapshot.get(ar -> context.response()
+        .putHeader("content-type", "application/json")
+        .setStatusCode(ar.succeeded() ? 200 : 500)
+        .end(ar.succeeded() ? ar.result() : Buffer.buffer(new JsonObject()
+            .put("message", ar.cause().getMessage()).encode()))));
+
+    router.get("/metrics").handler(context -> context.response()
+        .putHeader("content-type", "application/json")
+        .end(new JsonObject()
+            .put("fanout", fanout.metrics())
+            .put("operations", operations.metrics())
+            .put("snapshot", snapshot.metrics())
+            .encode()));
+
     // Static content
     router.route("/*").handler(StaticHandler.create());
 
@@ -59,7 +128,7 @@ public class DashboardVerticle extends MicroServiceVerticle {
             .setFallbackOnFailure(true)
             .setResetTimeout(2000)
             .setTimeout(1000))
-        .openHandler(v -> retrieveAuditService());
+        .openHandler(v -> retrieveAuditService().setHandler(ar -> loadRecentOperations()));
 
     vertx.createHttpServer()
         .requestHandler(router::accept)
@@ -67,7 +136,7 @@ public class DashboardVerticle extends MicroServiceVerticle {
           if (ar.failed()) {
             future.fail(ar.cause());
           } else {
-            retrieveAuditService();
+            retrieveAuditService().setHandler(x -> loadRecentOperations());
             future.complete();
           }
         });
@@ -81,6 +150,30 @@ public class DashboardVerticle extends MicroServiceVerticle {
     circuit.close();
   }
 
+  private void onBridgeEvent(BridgeEvent event) {
+    JsonObject message = event.getRawMessage();
+    String address = message == null ? null : message.getString("address");
+    switch (event.type()) {
+      case REGISTER:
+        fanout.register(event.socket(), address);
+        break;
+      case UNREGISTER:
+        fanout.unregister(event.socket(), address);
+        break;
+      case SEND:
+        if (MarketFanout.WATCH_ADDRESS.equals(address)) {
+          fanout.watch(event.socket(), message.getJsonObject("body"));
+        }
+        break;
+      case SOCKET_CLOSED:
+        fanout.close(event.socket());
+        break;
+      default:
+        break;
+    }
+    event.complete(true);
+  }
+
   private Future<Void> retrieveAuditService() {
     return Future.future(future -> {
       HttpEndpoint.getWebClient(discovery, new JsonObject().put("name", "audit"), client -> {
@@ -91,22 +184,125 @@ public class DashboardVerticle extends MicroServiceVerticle {
   }
 
 
+  private void loadRecentOperations() {
+    // Retried until it succeeds, the audit service being retrieved again when missing
+    recent.load(vertx, future -> {
+      Future<Void> ready = client != null ? Future.succeededFuture() : retrieveAuditService();
+      ready.compose(v -> {
+        Future<JsonArray> last = Future.future();
+        operations.get(ar -> {
+          if (ar.failed()) {
+            last.fail(ar.cause());
+            return;
+          }
+          try {
+            last.complete(ar.result().toJsonArray());
+          } catch (DecodeException e) {
+            last.fail(e);
+          }
+        });
+        return last;
+      }).setHandler(future.completer());
+    });
+  }
+
   private void callAuditService(RoutingContext context) {
-    if (client == null) {
+    if (recent.loaded()) {
       context.response()
           .putHeader("content-type", "application/json")
           .setStatusCode(200)
-          .end(new JsonObject().put("message", "No audit service").encode());
-    } else {
-      client.get("/").send(ar -> {
-        if (ar.succeeded()) {
-          HttpResponse<Buffer> response = ar.result();
-          context.response()
-              .putHeader("content-type", "application/json")
-              .setStatusCode(200)
-              .end(response.body());
-        }
-      });
+          .end(recent.toJson().encode());
+      return;
+    }
+    loadRecentOperations();
+    operations.get(ar -> {
+      if (ar.succeeded()) {
+        context.response()
+            .putHeader("content-type", "application/json")
+            .setStatusCode(200)
+            .end(ar.result());
+      } else {
+        context.response()
+            .putHeader("content-type", "application/json")
+            .setStatusCode(200)
+            .end(new JsonObject().put("message", "No audit service").encode());
+      }
+    });
+  }
+
+  private void fetchOperations(Future<Buffer> future) {
+    if (client == null) {
+      future.fail("No audit service");
+      return;
     }
+    // Through the circuit breaker: a call without reply fails after its timeout, and the audit service is retrieved
+    // again when the circuit opens
+    WebClient audit = client;
+    circuit.<Buffer>execute(call -> audit.get("/").timeout(1000).send(ar -> {
+      if (ar.succeeded() && ar.result().statusCode() == 200) {
+        call.tryComplete(ar.result().body());
+      } else {
+        call.tryFail(ar.failed() ? ar.cause().getMessage() : "Audit service status " + ar.result().statusCode());
+      }
+    })).setHandler(future.completer());
+  }
+
+  private void buildSnapshot(Future<Buffer> future) {
+    // The upstream calls run in parallel, a failed one leaving its entry null
+    Future<Object> portfolio = callPortfolioService("getPortfolio");
+    Future<Object> value = callPortfolioService("evaluate");
+    Future<Object> last = lastOperations();
+    Future<Object> services = services();
+    JsonObject lastQuotes = new JsonObject();
+    quotes.forEach(lastQuotes::put);
+    CompositeFuture.join(portfolio, value, last, services).setHandler(ar -> {
+      JsonObject json = new JsonObject()
+          .put("date", System.currentTimeMillis())
+          .put("quotes", lastQuotes)
+          .put("portfolio", portfolio.result())
+          .put("value", value.result())
+          .put("operations", last.result())
+          .put("services", services.result());
+      future.complete(Buffer.buffer(json.encode()));
+    });
+  }
+
+  private Future<Object> callPortfolioService(String action) {
+    // The protocol of the service proxies, as used by the page
+    Future<Object> future = Future.future();
+    vertx.eventBus().send("service.portfolio", new JsonObject(),
+        new DeliveryOptions().addHeader("action", action).setSendTimeout(2000),
+        ar -> future.handle(ar.map(Message::body)));
+    return future;
+  }
+
+  private Future<Object> lastOperations() {
+    if (recent.loaded()) {
+      return Future.succeededFuture(recent.toJson());
+    }
+    loadRecentOperations();
+    Future<Object> future = Future.future();
+    operations.get(ar -> {
+      if (ar.succeeded()) {
+        try {
+          future.complete(ar.result().toJsonArray());
+        } catch (DecodeException e) {
+          future.fail(e);
+        }
+      } else {
+        future.fail(ar.cause());
+      }
+    });
+    return future;
+  }
+
+  private Future<Object> services() {
+    Future<Object> future = Future.future();
+    discovery.getRecords(new JsonObject(), ar -> future.handle(ar.map(records -> {
+      JsonArray array = new JsonArray();
+      records.forEach(record -> array.add(record.toJson()));
+      return array;
+    })));
+    return future;
   }
 }
@@ -0,0 +1,297 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.handler.sockjs.SockJSSocket;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sends the market data and the portfolio events to the dashboards connected to the event bus bridge.
+ * <p>
+ * Instead of bridging the raw addresses, the messages are consumed once and written to the SockJS socket of each
+ * session that registered {@link #MARKET_ADDRESS}, {@link #PORTFOLIO_ADDRESS} or {@link #OPERATIONS_ADDRESS}, as
+ * bridge frames:
+ * <ul>
+ * <li>a session only receives the symbols of its watchlist, sent on {@link #WATCH_ADDRESS} (all by default)</li>
+ * <li>the quotes of a symbol are sent at most `rate` times per second to a session, the quotes received meanwhile
+ * being conflated: only the last one is sent</li>
+ * <li>nothing is written to a slow socket (its write queue is full): the intermediate quotes are dropped, the last
+ * one being sent when the socket catches up</li>
+ * </ul>
+ * The portfolio events and the operations are filtered by the watchlist, but neither conflated nor dropped.
+ * <p>
+ * A message is encoded once into a frame {@link Buffer}, written as is to all the sessions it is sent to, and kept as
+ * the pending frame of the sessions that do not get it yet.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class MarketFanout {
+
+  /**
+   * The address registered by the dashboards to receive the quotes.
+   */
+  static final String MARKET_ADDRESS = "dashboard.market";
+
+  /**
+   * The address registered by the dashboards to receive the portfolio events.
+   */
+  static final String PORTFOLIO_ADDRESS = "dashboard.portfolio";
+
+  /**
+   * The address registered by the dashboards to receive the new operations, in the shape returned by the audit
+   * service (see {@link #operation(JsonObject)}).
+   */
+  static final String OPERATIONS_ADDRESS = "dashboard.operations";
+
+  /**
+   * The address on which the dashboards send their watchlist: {@code {"symbols": [...]}}.
+   */
+  static final String WATCH_ADDRESS = "dashboard.watch";
+
+  private final long interval;
+  private final Map<SockJSSocket, Session> sessions = new HashMap<>();
+
+  private long sent;
+  private long conflated;
+  private long dropped;
+
+  /**
+   * @param rate the maximum number of quotes sent per second, per symbol and session, the quotes not being throttled
+   *             above 1000
+   * @throws IllegalArgumentException if the rate is not positive
+   */
+  MarketFanout(int rate) {
+    if (rate <= 0) {
+      throw new IllegalArgumentException("The rate must be positive: " + rate);
+    }
+    this.interval = 1000L / rate;
+  }
+
+  /**
+   * @return the minimum time between 2 quotes of a symbol sent to a session, in ms, at which {@link #flush()} must
+   * be called, at least 1 ms
+   */
+  long interval() {
+    return Math.max(1, interval);
+  }
+
+  /**
+   * Called when a session registers an address.
+   *
+   * @param socket  the socket of the session
+   * @param address the address
+   */
+  void register(SockJSSocket socket, String address) {
+    if (MARKET_ADDRESS.equals(address) || PORTFOLIO_ADDRESS.equals(address) || OPERATIONS_ADDRESS.equals(address)) {
+      sessions.computeIfAbsent(socket, Session::new).addresses.add(address);
+    }
+  }
+
+  /**
+   * Called when a session unregisters an address.
+   *
+   * @param socket  the socket of the session
+   * @param address the address
+   */
+  void unregister(SockJSSocket socket, String address) {
+    Session session = sessions.get(socket);
+    if (session != null) {
+      session.addresses.remove(address);
+      if (session.addresses.isEmpty()) {
+        sessions.remove(socket);
+      }
+    }
+  }
+
+  /**
+   * Called when a session is closed.
+   *
+   * @param socket the socket of the session
+   */
+  void close(SockJSSocket socket) {
+    sessions.remove(socket);
+  }
+
+  /**
+   * Sets the watchlist of a session.
+   *
+   * @param socket the socket of the session
+   * @param body   the message sent by the session, with the `symbols` array, all the symbols being watched if
+   *               missing or empty
+   */
+  void watch(SockJSSocket socket, JsonObject body) {
+    Session session = sessions.computeIfAbsent(socket, Session::new);
+    JsonArray symbols = body == null ? null : body.getJsonArray("symbols");
+    if (symbols == null || symbols.isEmpty()) {
+      session.watchlist = null;
+    } else {
+      session.watchlist = new HashSet<>();
+      symbols.forEach(symbol -> session.watchlist.add(String.valueOf(symbol)));
+    }
+    session.slots.keySet().removeIf(symbol -> !session.watches(symbol));
+  }
+
+  /**
+   * Sends a quote to the sessions watching its symbol, or keeps it until the next {@link #flush()}.
+   *
+   * @param quote the quote
+   */
+  void onQuote(JsonObject quote) {
+    String name = quote.getString("name");
+    long now = System.currentTimeMillis();
+    Buffer frame = null;
+    for (Session session : sessions.values()) {
+      if (!session.addresses.contains(MARKET_ADDRESS) || !session.watches(name)) {
+        continue;
+      }
+      if (frame == null) {
+        frame = frame(MARKET_ADDRESS, quote);
+      }
+      Slot slot = session.slots.computeIfAbsent(name, k -> new Slot());
+      boolean slow = session.socket.writeQueueFull();
+      if (!slow && now - slot.lastSent >= interval) {
+        slot.pending = null;
+        slot.lastSent = now;
+        write(session, frame);
+      } else {
+        if (slot.pending != null) {
+          if (slow) {
+            dropped++;
+          } else {
+            conflated++;
+          }
+        }
+        slot.pending = frame;
+      }
+    }
+  }
+
+  /**
+   * Sends a portfolio event to the sessions watching the symbol of the operation.
+   *
+   * @param event the event
+   */
+  void onPortfolioEvent(JsonObject event) {
+    send(PORTFOLIO_ADDRESS, event);
+  }
+
+  /**
+   * Sends an operation to the sessions watching the symbol of the operation.
+   *
+   * @param operation the operation, as returned by {@link #operation(JsonObject)}
+   */
+  void onOperation(JsonObject operation) {
+    send(OPERATIONS_ADDRESS, operation);
+  }
+
+  /**
+   * Converts a portfolio event to an operation, as returned by the audit service: the action, the quote (symbol and
+   * name), the amount, the price (the ask for a purchase and the bid for a sale), the shares owned and the date. The
+   * operation has no id, assigned when it is stored.
+   *
+   * @param event the event sent by the portfolio service
+   * @return the operation
+   */
+  static JsonObject operation(JsonObject event) {
+    JsonObject quote = event.getJsonObject("quote", new JsonObject());
+    String action = event.getString("action");
+    String name = quote.getString("name");
+    return new JsonObject()
+        .put("action", action)
+        .put("quote", new JsonObject()
+            .put("symbol", quote.getString("symbol", name))
+            .put("name", name))
+        .put("amount", event.getInteger("amount"))
+        .put("price", quote.getDouble("SELL".equals(action) ? "bid" : "ask"))
+        .put("owned", event.getInteger("owned"))
+        .put("date", event.getLong("date", System.currentTimeMillis()));
+  }
+
+  /**
+   * Sends the conflated quotes whose interval has elapsed, to the sessions that are not slow.
+   */
+  void flush() {
+    long now = System.currentTimeMillis();
+    for (Session session : sessions.values()) {
+      if (session.socket.writeQueueFull()) {
+        continue;
+      }
+      for (Slot slot : session.slots.values()) {
+        if (slot.pending != null && now - slot.lastSent >= interval) {
+          Buffer frame = slot.pending;
+          slot.pending = null;
+          slot.lastSent = now;
+          write(session, frame);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of sessions, of messages sent, of quotes conflated, and dropped because of a slow socket
+   */
+  JsonObject metrics() {
+    return new JsonObject()
+        .put("sessions", sessions.size())
+        .put("sent", sent)
+        .put("conflated", conflated)
+        .put("dropped", dropped);
+  }
+
+  /**
+   * @param address the address
+   * @param body    the message
+   * @return a frame of the bridge, as delivered to the handlers of the address by the event bus client
+   */
+  static Buffer frame(String address, JsonObject body) {
+    return Buffer.buffer(new JsonObject().put("type", "rec").put("address", address).put("body", body).encode());
+  }
+
+  private void send(String address, JsonObject message) {
+    JsonObject quote = message.getJsonObject("quote");
+    String name = quote == null ? null : quote.getString("name");
+    Buffer frame = null;
+    for (Session session : sessions.values()) {
+      if (session.addresses.contains(address) && (name == null || session.watches(name))) {
+        if (frame == null) {
+          frame = frame(address, message);
+        }
+        write(session, frame);
+      }
+    }
+  }
+
+  private void write(Session session, Buffer frame) {
+    // The buffer is not modified by the socket, it is shared by all the sessions
+    session.socket.write(frame);
+    sent++;
+  }
+
+  private static class Session {
+    final SockJSSocket socket;
+    final Set<String> addresses = new HashSet<>();
+    final Map<String, Slot> slots = new HashMap<>();
+    Set<String> watchlist;
+
+    Session(SockJSSocket socket) {
+      this.socket = socket;
+    }
+
+    boolean watches(String symbol) {
+      return watchlist == null || watchlist.contains(symbol);
+    }
+  }
+
+  /**
+   * The state of a symbol in a session: when a quote was last sent, and the frame of the last quote not sent yet.
+   */
+  private static class Slot {
+    long lastSent = Long.MIN_VALUE / 2;
+    Buffer pending;
+  }
+}
@@ -0,0 +1,136 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The last operations shown by the dashboards, kept from the portfolio events.
+ * <p>
+ * The window is initialized once with the last operations returned by the audit service (see
+ * {@link #load(Vertx, Handler)}, retried until it succeeds), the events received before being kept on top of them
+ * (the operations already stored by the audit service being skipped), then each portfolio event is added as the most
+ * recent operation, converted with {@link MarketFanout#operation(JsonObject)}.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ */
+class RecentOperations {
+
+  /**
+   * The delay before the first retry of a failed load, doubled on each failure up to {@link #MAX_RETRY_DELAY}, in ms.
+   */
+  static final long RETRY_DELAY = 1000;
+
+  /**
+   * The maximum delay between 2 retries of a failed load, in ms.
+   */
+  static final long MAX_RETRY_DELAY = 30000;
+
+  private final int capacity;
+  // The most recent first
+  private final Deque<JsonObject> operations = new ArrayDeque<>();
+  private boolean loaded;
+  // A load is in flight, or waiting for its retry
+  private boolean loading;
+  private long retryDelay = RETRY_DELAY;
+
+  /**
+   * @param capacity the number of kept operations
+   */
+  RecentOperations(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Initializes the window with a call to the audit service, retried with an increasing delay until it succeeds.
+   * Nothing is done if the window is loaded, or a load is in flight or scheduled.
+   *
+   * @param vertx  the Vert.x instance, for the retry timers
+   * @param loader the call, completing the given future with the last operations, the most recent first
+   */
+  void load(Vertx vertx, Handler<Future<JsonArray>> loader) {
+    if (loaded || loading) {
+      return;
+    }
+    loading = true;
+    Future<JsonArray> future = Future.future();
+    future.setHandler(ar -> {
+      if (ar.succeeded()) {
+        loading = false;
+        if (!loaded) {
+          load(ar.result());
+        }
+      } else {
+        long delay = retryDelay;
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        vertx.setTimer(delay, l -> {
+          loading = false;
+          load(vertx, loader);
+        });
+      }
+    });
+    try {
+      loader.handle(future);
+    } catch (RuntimeException e) {
+      future.tryFail(e);
+    }
+  }
+
+  /**
+   * Initializes the window with the operations returned by the audit service.
+   *
+   * @param fromAudit the operations, the most recent first
+   */
+  void load(JsonArray fromAudit) {
+    Set<String> received = new HashSet<>();
+    operations.forEach(operation -> received.add(key(operation)));
+    for (int i = 0; i < fromAudit.size() && operations.size() < capacity; i++) {
+      JsonObject operation = fromAudit.getJsonObject(i);
+      if (!received.contains(key(operation))) {
+        operations.addLast(operation);
+      }
+    }
+    loaded = true;
+  }
+
+  /**
+   * @return whether the window has been initialized from the audit service
+   */
+  boolean loaded() {
+    return loaded;
+  }
+
+  /**
+   * Adds an operation.
+   *
+   * @param operation the operation, as returned by {@link MarketFanout#operation(JsonObject)}
+   */
+  void add(JsonObject operation) {
+    operations.addFirst(operation);
+    if (operations.size() > capacity) {
+      operations.removeLast();
+    }
+  }
+
+  /**
+   * @return the operations, the most recent first
+   */
+  JsonArray toJson() {
+    JsonArray array = new JsonArray();
+    operations.forEach(array::add);
+    return array;
+  }
+
+  private static String key(JsonObject operation) {
+    JsonObject quote = operation.getJsonObject("quote", new JsonObject());
+    return operation.getValue("date") + "/" + operation.getString("action") + "/" + operation.getValue("amount")
+        + "/" + quote.getString("name");
+  }
+}
@@ -0,0 +1,121 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Caches the result of an upstream call for `ttl` ms, and never runs more than one call at a time.
+ * <p>
+ * The requests received while the call is in flight wait for its result (single-flight). Once the ttl elapsed, the
+ * cached value is still served, stale, while a new call revalidates it in the background. A failed call fails the
+ * waiting requests, the previous value being kept. A call not completed within `timeout` ms is failed, so a hung
+ * upstream does not block the following requests: its late result is ignored.
+ * <p>
+ * This class is not thread-safe, it must be used from the verticle event loop.
+ *
+ * @param <T> the type of the cached value
+ */
+class SingleFlightCache<T> {
+
+  private final Vertx vertx;
+  private final long ttl;
+  private final long timeout;
+  private final Handler<Future<T>> loader;
+
+  private T value;
+  private long loadedAt;
+  private boolean loading;
+  private final List<Handler<AsyncResult<T>>> waiting = new ArrayList<>();
+
+  private long hits;
+  private long stale;
+  private long calls;
+  private long timeouts;
+
+  /**
+   * @param vertx   the Vert.x instance, for the timeout timers
+   * @param ttl     the time during which the value is fresh, in ms
+   * @param timeout the time after which a call is failed, in ms
+   * @param loader  the upstream call, completing the given future
+   */
+  SingleFlightCache(Vertx vertx, long ttl, long timeout, Handler<Future<T>> loader) {
+    this.vertx = vertx;
+    this.ttl = ttl;
+    this.timeout = timeout;
+    this.loader = loader;
+  }
+
+  /**
+   * Gets the value, from the cache or from the upstream call.
+   *
+   * @param handler called with the value
+   */
+  void get(Handler<AsyncResult<T>> handler) {
+    if (value != null) {
+      if (System.currentTimeMillis() - loadedAt < ttl) {
+        hits++;
+      } else {
+        stale++;
+        load();
+      }
+      handler.handle(Future.succeededFuture(value));
+      return;
+    }
+    waiting.add(handler);
+    load();
+  }
+
+  /**
+   * @return the requests served fresh from the cache, served stale, the upstream calls and the timed out ones
+   */
+  JsonObject metrics() {
+    return new JsonObject().put("hits", hits).put("stale", stale).put("calls", calls).put("timeouts", timeouts);
+  }
+
+  private void load() {
+    if (loading) {
+      return;
+    }
+    loading = true;
+    calls++;
+    Future<T> result = Future.future();
+    long timer = vertx.setTimer(timeout, l -> {
+      if (!result.isComplete()) {
+        timeouts++;
+        result.fail(new TimeoutException("No reply within " + timeout + " ms"));
+      }
+    });
+    result.setHandler(ar -> {
+      vertx.cancelTimer(timer);
+      loading = false;
+      if (ar.succeeded()) {
+        value = ar.result();
+        loadedAt = System.currentTimeMillis();
+      }
+      List<Handler<AsyncResult<T>>> handlers = new ArrayList<>(waiting);
+      waiting.clear();
+      handlers.forEach(h -> h.handle(ar));
+    });
+    // The loader completes its own future, which may complete after the timeout
+    Future<T> call = Future.future();
+    call.setHandler(ar -> {
+      if (ar.succeeded()) {
+        result.tryComplete(ar.result());
+      } else {
+        result.tryFail(ar.cause());
+      }
+    });
+    try {
+      loader.handle(call);
+    } catch (RuntimeException e) {
+      call.tryFail(e);
+    }
+  }
+}
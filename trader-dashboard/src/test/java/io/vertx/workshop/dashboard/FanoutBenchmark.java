@@ -0,0 +1,205 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.web.Session;
+import io.vertx.ext.web.handler.sockjs.SockJSSocket;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the CPU time per delivered message of the {@link MarketFanout}, which encodes a message once for all the
+ * sessions, against encoding it for each session as the bridge does, as the number of sessions grows.
+ * <p>
+ * The sockets only count the written bytes. Run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=io.vertx.workshop.dashboard.FanoutBenchmark \
+ *   -Dexec.classpathScope=test -Dexec.args="100000"
+ * </pre>
+ * The argument is the number of quotes sent for each number of sessions (100000 by default).
+ */
+public class FanoutBenchmark {
+
+  private static final int[] SESSIONS = {1, 10, 100, 1000};
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) {
+    int quotes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    List<JsonObject> ticks = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      ticks.add(new JsonObject()
+          .put("exchange", "vert.x stock exchange")
+          .put("symbol", "DVN")
+          .put("name", "Divinator")
+          .put("bid", 500.0 + i)
+          .put("ask", 510.0 + i)
+          .put("volume", 10000)
+          .put("open", 500.0)
+          .put("shares", 5000));
+    }
+
+    System.out.printf("%10s %22s %22s%n", "sessions", "encode once (ns/msg)", "per session (ns/msg)");
+    for (int sessions : SESSIONS) {
+      int count = Math.max(quotes / sessions, 100);
+      // Warm up, then measure
+      once(sessions, ticks, count);
+      perSession(sessions, ticks, count);
+      double once = once(sessions, ticks, count);
+      double perSession = perSession(sessions, ticks, count);
+      System.out.printf("%10d %22.1f %22.1f%n", sessions, once, perSession);
+    }
+  }
+
+  /**
+   * @return the CPU time per delivered message, in ns, through the fan-out
+   */
+  private static double once(int sessions, List<JsonObject> ticks, int count) {
+    // No conflation: every quote is sent to every session
+    MarketFanout fanout = new MarketFanout(Integer.MAX_VALUE);
+    List<CountingSocket> sockets = sockets(sessions);
+    sockets.forEach(socket -> fanout.register(socket, MarketFanout.MARKET_ADDRESS));
+    long begin = THREADS.getCurrentThreadCpuTime();
+    for (int i = 0; i < count; i++) {
+      fanout.onQuote(ticks.get(i % ticks.size()));
+    }
+    return perMessage(begin, sockets, count, sessions);
+  }
+
+  /**
+   * @return the CPU time per delivered message, in ns, when each session encodes its own frame
+   */
+  private static double perSession(int sessions, List<JsonObject> ticks, int count) {
+    List<CountingSocket> sockets = sockets(sessions);
+    long begin = THREADS.getCurrentThreadCpuTime();
+    for (int i = 0; i < count; i++) {
+      JsonObject quote = ticks.get(i % ticks.size());
+      for (CountingSocket socket : sockets) {
+        socket.write(MarketFanout.frame(MarketFanout.MARKET_ADDRESS, quote));
+      }
+    }
+    return perMessage(begin, sockets, count, sessions);
+  }
+
+  private static double perMessage(long begin, List<CountingSocket> sockets, int count, int sessions) {
+    long elapsed = THREADS.getCurrentThreadCpuTime() - begin;
+    long delivered = sockets.stream().mapToLong(socket -> socket.messages).sum();
+    if (delivered != (long) count * sessions) {
+      throw new IllegalStateException("Delivered " + delivered + " messages, expected " + count * sessions);
+    }
+    return (double) elapsed / delivered;
+  }
+
+  private static List<CountingSocket> sockets(int count) {
+    List<CountingSocket> sockets = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      sockets.add(new CountingSocket());
+    }
+    return sockets;
+  }
+
+  /**
+   * A socket counting the written messages and bytes.
+   */
+  private static class CountingSocket implements SockJSSocket {
+    long messages;
+    long bytes;
+
+    @Override
+    public SockJSSocket write(Buffer data) {
+      messages++;
+      bytes += data.length();
+      return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+      return false;
+    }
+
+    @Override
+    public SockJSSocket exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket handler(Handler<Buffer> handler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket pause() {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket resume() {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket endHandler(Handler<Void> endHandler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket setWriteQueueMaxSize(int maxSize) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket drainHandler(Handler<Void> handler) {
+      return this;
+    }
+
+    @Override
+    public String writeHandlerID() {
+      return null;
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+      return null;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+      return null;
+    }
+
+    @Override
+    public MultiMap headers() {
+      return null;
+    }
+
+    @Override
+    public String uri() {
+      return null;
+    }
+
+    @Override
+    public Session webSession() {
+      return null;
+    }
+
+    @Override
+    public User webUser() {
+      return null;
+    }
+  }
+}
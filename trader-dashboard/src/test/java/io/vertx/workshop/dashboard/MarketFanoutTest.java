@@ -0,0 +1,192 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.web.Session;
+import io.vertx.ext.web.handler.sockjs.SockJSSocket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MarketFanoutTest {
+
+  private static JsonObject quote(String name, double bid) {
+    return new JsonObject().put("name", name).put("bid", bid);
+  }
+
+  @Test
+  public void testTheRateMustBePositive() {
+    try {
+      new MarketFanout(0);
+      throw new AssertionError("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageContaining("0");
+    }
+  }
+
+  @Test
+  public void testTheQuotesAreNotThrottledAboveAThousandPerSecond() {
+    MarketFanout fanout = new MarketFanout(5000);
+    // The flush period, used for a timer
+    assertThat(fanout.interval()).isEqualTo(1L);
+
+    RecordingSocket socket = new RecordingSocket();
+    fanout.register(socket, MarketFanout.MARKET_ADDRESS);
+    for (int i = 0; i < 100; i++) {
+      fanout.onQuote(quote("Divinator", i));
+    }
+    assertThat(socket.frames).hasSize(100);
+    assertThat(fanout.metrics().getLong("conflated")).isEqualTo(0L);
+  }
+
+  @Test
+  public void testTheQuotesAreConflated() {
+    MarketFanout fanout = new MarketFanout(1);
+    assertThat(fanout.interval()).isEqualTo(1000L);
+
+    RecordingSocket socket = new RecordingSocket();
+    fanout.register(socket, MarketFanout.MARKET_ADDRESS);
+    fanout.onQuote(quote("Divinator", 1));
+    fanout.onQuote(quote("Divinator", 2));
+    fanout.onQuote(quote("Divinator", 3));
+    assertThat(socket.frames).hasSize(1);
+    assertThat(socket.frames.get(0).getJsonObject("body").getDouble("bid")).isEqualTo(1.0);
+    assertThat(fanout.metrics().getLong("conflated")).isEqualTo(1L);
+  }
+
+  @Test
+  public void testTheOperationsAreSentInTheAuditShapeToTheWatchingSessions() {
+    MarketFanout fanout = new MarketFanout(4);
+    RecordingSocket watching = new RecordingSocket();
+    RecordingSocket other = new RecordingSocket();
+    fanout.register(watching, MarketFanout.OPERATIONS_ADDRESS);
+    fanout.register(other, MarketFanout.OPERATIONS_ADDRESS);
+    fanout.watch(other, new JsonObject().put("symbols", new JsonArray().add("MacroHard")));
+
+    JsonObject operation = MarketFanout.operation(new JsonObject()
+        .put("action", "SELL")
+        .put("quote", new JsonObject().put("symbol", "DVN").put("name", "Divinator").put("bid", 9.0).put("ask", 10.0)
+            .put("volume", 1000))
+        .put("amount", 2)
+        .put("owned", 3)
+        .put("date", 42L)
+        .put("version", 7L));
+    fanout.onOperation(operation);
+
+    assertThat(other.frames).isEmpty();
+    assertThat(watching.frames).hasSize(1);
+    JsonObject frame = watching.frames.get(0);
+    assertThat(frame.getString("address")).isEqualTo(MarketFanout.OPERATIONS_ADDRESS);
+    assertThat(frame.getJsonObject("body")).isEqualTo(new JsonObject()
+        .put("action", "SELL")
+        .put("quote", new JsonObject().put("symbol", "DVN").put("name", "Divinator"))
+        .put("amount", 2)
+        .put("price", 9.0)
+        .put("owned", 3)
+        .put("date", 42L));
+  }
+
+  /**
+   * A socket recording the written frames.
+   */
+  static class RecordingSocket implements SockJSSocket {
+    final List<JsonObject> frames = new ArrayList<>();
+
+    @Override
+    public SockJSSocket write(Buffer data) {
+      frames.add(data.toJsonObject());
+      return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+      return false;
+    }
+
+    @Override
+    public SockJSSocket exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket handler(Handler<Buffer> handler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket pause() {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket resume() {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket endHandler(Handler<Void> endHandler) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket setWriteQueueMaxSize(int maxSize) {
+      return this;
+    }
+
+    @Override
+    public SockJSSocket drainHandler(Handler<Void> handler) {
+      return this;
+    }
+
+    @Override
+    public String writeHandlerID() {
+      return null;
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+      return null;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+      return null;
+    }
+
+    @Override
+    public MultiMap headers() {
+      return null;
+    }
+
+    @Override
+    public String uri() {
+      return null;
+    }
+
+    @Override
+    public Session webSession() {
+      return null;
+    }
+
+    @Override
+    public User webUser() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(VertxUnitRunner.class)
+public class RecentOperationsTest {
+
+  private static JsonObject operation(long date, int amount) {
+    return new JsonObject()
+        .put("action", "BUY")
+        .put("amount", amount)
+        .put("quote", new JsonObject().put("name", "Divinator"))
+        .put("date", date);
+  }
+
+  @Test
+  public void testTheEventsAreKeptOnTopOfTheAuditOperations() {
+    RecentOperations recent = new RecentOperations(3);
+    // Received before the audit service replied, and already stored by it
+    recent.add(operation(3, 30));
+    assertThat(recent.loaded()).isFalse();
+
+    recent.load(new JsonArray().add(operation(3, 30)).add(operation(2, 20)).add(operation(1, 10)));
+    assertThat(recent.loaded()).isTrue();
+    assertThat(recent.toJson().stream().map(o -> ((JsonObject) o).getLong("date"))).containsExactly(3L, 2L, 1L);
+
+    recent.add(operation(4, 40));
+    assertThat(recent.toJson().stream().map(o -> ((JsonObject) o).getLong("date"))).containsExactly(4L, 3L, 2L);
+  }
+
+  @Test
+  public void testAFailedLoadIsRetried(TestContext tc) {
+    Vertx vertx = Vertx.vertx();
+    Async async = tc.async();
+    RecentOperations recent = new RecentOperations(3);
+    int[] calls = {0};
+    vertx.runOnContext(v -> {
+      recent.load(vertx, future -> {
+        if (++calls[0] == 1) {
+          future.fail("No audit service");
+        } else {
+          future.complete(new JsonArray().add(operation(1, 10)));
+        }
+      });
+      tc.assertFalse(recent.loaded());
+      // The retry is scheduled, not run again
+      recent.load(vertx, future -> tc.fail("A single load at a time"));
+      vertx.setPeriodic(100, l -> {
+        if (recent.loaded()) {
+          vertx.cancelTimer(l);
+          tc.assertEquals(calls[0], 2);
+          tc.assertEquals(recent.toJson().size(), 1);
+          vertx.close(tc.asyncAssertSuccess(c -> async.complete()));
+        }
+      });
+    });
+  }
+}
@@ -0,0 +1,109 @@
+package io.vertx.workshop.dashboard;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(VertxUnitRunner.class)
+public class SingleFlightCacheTest {
+
+  private final List<Future<String>> calls = new ArrayList<>();
+  private final List<String> results = new ArrayList<>();
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testConcurrentRequestsShareOneCall() {
+    SingleFlightCache<String> cache = new SingleFlightCache<>(vertx, 60000, 60000, calls::add);
+    cache.get(ar -> results.add(ar.result()));
+    cache.get(ar -> results.add(ar.result()));
+    assertThat(calls).hasSize(1);
+    assertThat(results).isEmpty();
+
+    calls.get(0).complete("operations");
+    assertThat(results).containsExactly("operations", "operations");
+
+    // Fresh
+    cache.get(ar -> results.add(ar.result()));
+    assertThat(calls).hasSize(1);
+    assertThat(results).hasSize(3);
+    assertThat(cache.metrics().getLong("hits")).isEqualTo(1L);
+  }
+
+  @Test
+  public void testStaleValueIsServedWhileRevalidating() {
+    SingleFlightCache<String> cache = new SingleFlightCache<>(vertx, 0, 60000, calls::add);
+    cache.get(ar -> results.add(ar.result()));
+    calls.get(0).complete("v1");
+
+    cache.get(ar -> results.add(ar.result()));
+    cache.get(ar -> results.add(ar.result()));
+    assertThat(results).containsExactly("v1", "v1", "v1");
+    assertThat(calls).hasSize(2);
+
+    // A failed revalidation keeps the previous value
+    calls.get(1).fail("down");
+    cache.get(ar -> results.add(ar.result()));
+    assertThat(results).containsExactly("v1", "v1", "v1", "v1");
+    calls.get(2).complete("v2");
+    cache.get(ar -> results.add(ar.result()));
+    assertThat(results).endsWith("v2");
+    assertThat(cache.metrics().getLong("calls")).isEqualTo(4L);
+  }
+
+  @Test
+  public void testFailureIsReportedWithoutValue() {
+    SingleFlightCache<String> cache = new SingleFlightCache<>(vertx, 60000, 60000, calls::add);
+    List<Throwable> failures = new ArrayList<>();
+    cache.get(ar -> failures.add(ar.cause()));
+    calls.get(0).fail("No audit service");
+    assertThat(failures).extracting(Throwable::getMessage).containsExactly("No audit service");
+
+    cache.get(ar -> results.add(ar.result()));
+    assertThat(calls).hasSize(2);
+  }
+
+  @Test
+  public void testAHungCallTimesOut(TestContext tc) {
+    Async async = tc.async();
+    // The first call never completes
+    SingleFlightCache<String> cache = new SingleFlightCache<>(vertx, 60000, 100, calls::add);
+    vertx.runOnContext(v -> {
+      cache.get(first -> {
+        tc.assertTrue(first.failed());
+        tc.assertEquals(cache.metrics().getLong("timeouts"), 1L);
+        // The next request makes a new call, a late reply of the hung one being ignored
+        cache.get(second -> {
+          tc.assertEquals(second.result(), "operations");
+          calls.get(0).complete("late");
+          cache.get(third -> {
+            tc.assertEquals(third.result(), "operations");
+            tc.assertEquals(cache.metrics().getLong("calls"), 2L);
+            async.complete();
+          });
+        });
+        calls.get(1).complete("operations");
+      });
+    });
+  }
+}
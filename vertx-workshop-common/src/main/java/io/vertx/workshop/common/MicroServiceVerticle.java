@@ -6,7 +6,11 @@ import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Verticle;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.impl.ConcurrentHashSet;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.servicediscovery.Record;
 import io.vertx.servicediscovery.ServiceDiscovery;
 import io.vertx.servicediscovery.ServiceDiscoveryOptions;
@@ -17,6 +21,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -58,6 +65,13 @@ public class MicroServiceVerticle extends AbstractVerticle {
         this.publish(record, completionHandler);
     }
 
+    public void publishMessageSource(
+            String name, String address, JsonObject metadata, Handler<AsyncResult<Void>> completionHandler) {
+        log.info("Publish message source, name[{}], address[{}], metadata[{}]", name, address, metadata);
+        Record record = MessageSource.createRecord(name, address, (String) null, metadata);
+        this.publish(record, completionHandler);
+    }
+
     public void publishEventBusService(
             String name, String address, Class<?> serviceClass, Handler<AsyncResult<Void>> completionHandler) {
         log.info("Publish event bus service, name[{}], address[{}]", name, address);
@@ -65,6 +79,54 @@ public class MicroServiceVerticle extends AbstractVerticle {
         this.publish(record, completionHandler);
     }
 
+    /**
+     * Subscribes to the messages of a message source about the given companies only, each one being given by its
+     * symbol or its name. When the record metadata lists the `symbols` published on their own `<address>.<symbol>`
+     * address, a consumer is registered on the address of each requested company, the names being resolved with the
+     * `names` metadata (name to symbol). Otherwise the messages sent on the main address are filtered on their `symbol`
+     * and `name` fields.
+     *
+     * @param name              the name of the message source
+     * @param symbols           the symbols or names of the companies
+     * @param handler           the handler of the messages
+     * @param completionHandler called with the registered consumers, to unregister them
+     */
+    public void subscribeToSymbols(String name, Collection<String> symbols, Handler<Message<JsonObject>> handler,
+                                   Handler<AsyncResult<List<MessageConsumer<JsonObject>>>> completionHandler) {
+        discovery.getRecord(new JsonObject().put("name", name), ar -> {
+            if (ar.failed() || ar.result() == null) {
+                completionHandler.handle(Future.failedFuture(ar.failed() ? ar.cause()
+                        : new IllegalStateException("No message source named " + name)));
+                return;
+            }
+            String address = ar.result().getLocation().getString(Record.ENDPOINT);
+            JsonArray available = ar.result().getMetadata().getJsonArray("symbols");
+            JsonObject names = ar.result().getMetadata().getJsonObject("names", new JsonObject());
+            List<MessageConsumer<JsonObject>> consumers = new ArrayList<>();
+            if (available == null) {
+                Set<String> subscribed = new HashSet<>(symbols);
+                consumers.add(vertx.eventBus().<JsonObject>consumer(address, message -> {
+                    if (subscribed.contains(message.body().getString("symbol"))
+                            || subscribed.contains(message.body().getString("name"))) {
+                        handler.handle(message);
+                    }
+                }));
+            } else {
+                // A company subscribed by symbol and by name is consumed once
+                Set<String> resolved = new LinkedHashSet<>();
+                symbols.forEach(symbol -> resolved.add(names.getString(symbol, symbol)));
+                for (String symbol : resolved) {
+                    if (!available.contains(symbol)) {
+                        log.warn("The symbol {} is not published by {}", symbol, name);
+                    }
+                    consumers.add(vertx.eventBus().consumer(address + "." + symbol, handler));
+                }
+            }
+            log.info("Subscribed to the symbols {} of {}, address[{}]", symbols, name, address);
+            completionHandler.handle(Future.succeededFuture(consumers));
+        });
+    }
+
     protected void publish(Record record, Handler<AsyncResult<Void>> completionHandler) {
         if (discovery == null) {
             try {
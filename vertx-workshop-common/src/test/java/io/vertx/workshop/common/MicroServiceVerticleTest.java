@@ -0,0 +1,88 @@
+package io.vertx.workshop.common;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.servicediscovery.impl.DefaultServiceDiscoveryBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class MicroServiceVerticleTest {
+
+  private Vertx vertx;
+  private MicroServiceVerticle verticle;
+
+  @Before
+  public void setUp(TestContext tc) {
+    vertx = Vertx.vertx();
+    verticle = new MicroServiceVerticle();
+    vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(new JsonObject()
+        .put("backend-name", DefaultServiceDiscoveryBackend.class.getName())), tc.asyncAssertSuccess());
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testTheSymbolsAreConsumedOnTheirOwnAddress(TestContext tc) {
+    Async async = tc.async();
+    JsonObject metadata = new JsonObject()
+        .put("symbols", new JsonArray().add("MCH").add("DVN"))
+        .put("names", new JsonObject().put("MacroHard", "MCH").put("Divinator", "DVN"));
+    List<String> received = new ArrayList<>();
+    verticle.publishMessageSource("market-data", "market", metadata, tc.asyncAssertSuccess(v ->
+        // By name and by symbol, consumed once
+        verticle.subscribeToSymbols("market-data", Arrays.asList("MacroHard", "MCH"),
+            message -> received.add(message.body().getString("symbol")), tc.asyncAssertSuccess(consumers -> {
+              tc.assertEquals(consumers.size(), 1);
+              // Not consumed from the main address
+              vertx.eventBus().publish("market", quote("MCH", "MacroHard"));
+              vertx.eventBus().publish("market.DVN", quote("DVN", "Divinator"));
+              vertx.eventBus().publish("market.MCH", quote("MCH", "MacroHard"));
+              vertx.setTimer(100, l -> {
+                tc.assertEquals(received, Arrays.asList("MCH"));
+                async.complete();
+              });
+            }))));
+  }
+
+  @Test
+  public void testTheMainAddressIsFilteredWithoutSymbolAddresses(TestContext tc) {
+    Async async = tc.async();
+    List<String> received = new ArrayList<>();
+    verticle.publishMessageSource("market-data", "market", tc.asyncAssertSuccess(v ->
+        verticle.subscribeToSymbols("market-data", Arrays.asList("MacroHard", "DVN"),
+            message -> received.add(message.body().getString("symbol")), tc.asyncAssertSuccess(consumers -> {
+              vertx.eventBus().publish("market", quote("MCH", "MacroHard"));
+              vertx.eventBus().publish("market", quote("DVN", "Divinator"));
+              vertx.eventBus().publish("market", quote("BCT", "Black Coat"));
+              vertx.setTimer(100, l -> {
+                tc.assertEquals(received, Arrays.asList("MCH", "DVN"));
+                async.complete();
+              });
+            }))));
+  }
+
+  @Test
+  public void testAnUnknownSourceFails(TestContext tc) {
+    verticle.subscribeToSymbols("market-data", Arrays.asList("MCH"), message -> tc.fail("Unexpected message"),
+        tc.asyncAssertFailure());
+  }
+
+  private static JsonObject quote(String symbol, String name) {
+    return new JsonObject().put("symbol", symbol).put("name", name);
+  }
+}